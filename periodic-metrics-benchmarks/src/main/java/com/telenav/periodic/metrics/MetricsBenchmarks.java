@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmarks jar. The contended add benchmarks are run at
+ * 1, 2, 4, 8, 16, 32 and 64 threads (unless a thread count is passed with
+ * <code>-t</code>), and the GC profiler is always enabled, so allocation
+ * rates per operation are reported alongside timings. Any other JMH
+ * command-line options, such as a benchmark name pattern, are passed through.
+ */
+public final class MetricsBenchmarks {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final String CONTENDED = "(MetricsSinkBenchmark\\.(onMetric|metaSink).*"
+            + "|OperationStatsMetricBenchmark\\.add.*)";
+
+    private MetricsBenchmarks() {
+        throw new AssertionError();
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+        if (cli.getThreads().hasValue()) {
+            results.addAll(new Runner(options(cli).build()).run());
+        } else {
+            for (int threads : THREADS) {
+                ChainedOptionsBuilder opts = options(cli).threads(threads);
+                if (cli.getIncludes().isEmpty()) {
+                    opts = opts.include(CONTENDED);
+                }
+                results.addAll(new Runner(opts.build()).run());
+            }
+            if (cli.getIncludes().isEmpty()) {
+                // Everything else is single-threaded by nature
+                results.addAll(new Runner(options(cli)
+                        .include("(MetricsSinkBenchmark\\.harvest|OperationStatsMetricBenchmark\\.emit"
+                                + "|PercentileMethodBenchmark\\..*)")
+                        .build()).run());
+            }
+        }
+        System.out.println(results.size() + " benchmark results");
+    }
+
+    private static ChainedOptionsBuilder options(CommandLineOptions cli) {
+        return new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+    }
+}
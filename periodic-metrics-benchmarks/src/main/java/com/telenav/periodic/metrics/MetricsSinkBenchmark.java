@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contended writes to SimpleMetricsSink, directly and through the
+ * MetaMetricsSink fan-out to one sink per period, plus the cost of harvesting
+ * a period's values; run with several thread counts by MetricsBenchmarks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsSinkBenchmark {
+
+    /**
+     * The number of sinks behind the MetaMetricsSink - the standard
+     * configuration has one per period.
+     */
+    @Param({"1", "4"})
+    public int subsinks;
+    private SimpleMetricsSink sink;
+    private MetaMetricsSink meta;
+    private long[] harvested;
+    private int slot;
+
+    @Setup
+    public void setup() {
+        List<Metric> metrics = Arrays.asList(BuiltInMetrics.values());
+        sink = new SimpleMetricsSink("bench", metrics);
+        meta = new MetaMetricsSink();
+        for (int i = 0; i < subsinks; i++) {
+            meta.add(new SimpleMetricsSink("bench-" + i, metrics));
+        }
+        harvested = new long[sink.tableSize()];
+        slot = BuiltInMetrics.REQUESTS.slot();
+    }
+
+    @Benchmark
+    public void onMetricBySlot() {
+        sink.onMetric(slot, 1);
+    }
+
+    @Benchmark
+    public void onMetricByMetric() {
+        sink.onMetric(BuiltInMetrics.HTTP_BYTES_WRITTEN, 1024);
+    }
+
+    @Benchmark
+    public void metaSinkFanOut() {
+        meta.onMetric(slot, 1);
+    }
+
+    @Benchmark
+    public long[] harvest() {
+        sink.harvest(harvested);
+        return harvested;
+    }
+}
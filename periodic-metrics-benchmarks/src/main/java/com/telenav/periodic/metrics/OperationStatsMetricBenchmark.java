@@ -0,0 +1,132 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Timing collection in OperationStatsMetric and HistogramStatsMetric:
+ * contended adds (run with several thread counts by MetricsBenchmarks), and
+ * the cost of emitting a period's statistics at realistic sample counts.
+ */
+public class OperationStatsMetricBenchmark {
+
+    enum Op {
+        BENCH
+    }
+
+    @State(Scope.Benchmark)
+    public static class Adding {
+
+        private OperationStatsMetric<Op> stats;
+        private HistogramStatsMetric<Op> histogram;
+
+        @Setup
+        public void setup() {
+            stats = new OperationStatsMetric<>(Op.BENCH, 1_000_000, null, PercentileMethod.NEAREST);
+            histogram = new HistogramStatsMetric<>(Op.BENCH);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Timings {
+
+        private long next = 17;
+
+        long next() {
+            // Cheap, deterministic pseudo-random timings between 0 and 4095
+            next = next * 6364136223846793005L + 1442695040888963407L;
+            return (next >>> 52);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public void addOperationStats(Adding state, Timings timings) {
+        state.stats.add(timings.next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public void addHistogramStats(Adding state, Timings timings) {
+        state.histogram.add(timings.next());
+    }
+
+    @State(Scope.Thread)
+    public static class Emitting {
+
+        @Param({"1000", "100000", "1000000"})
+        public int samples;
+        @Param({"NEAREST", "INTERPOLATED", "SPLINE_INTERPOLATION", "HISTOGRAM"})
+        public String method;
+        private MultiMetric<Long> metric;
+        private final Timings timings = new Timings();
+
+        @Setup(Level.Trial)
+        public void create() {
+            if ("HISTOGRAM".equals(method)) {
+                metric = new HistogramStatsMetric<>(Op.BENCH);
+            } else {
+                metric = new OperationStatsMetric<>(Op.BENCH, samples, null,
+                        PercentileMethod.valueOf(method));
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void fill() {
+            // Emitting resets the metric, so every invocation needs a full
+            // period's worth of samples
+            for (int i = 0; i < samples; i++) {
+                metric.add(timings.next());
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    @Threads(1)
+    public boolean emit(Emitting state, Blackhole bh) {
+        BiConsumer<Metric, Long> c = (metric, value) -> bh.consume(value);
+        return state.metric.get(c);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.mastfrog.util.collections.LongList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Computing the default four percentiles over a sorted series with each
+ * PercentileMethod. A new series is created for every invocation, as happens
+ * when a period is emitted, so SPLINE_INTERPOLATION pays for building its
+ * spline rather than finding it in its cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class PercentileMethodBenchmark {
+
+    @Param({"100", "10000", "2000000"})
+    public int size;
+    @Param({"NEAREST", "INTERPOLATED", "SPLINE_INTERPOLATION"})
+    public PercentileMethod method;
+    private long[] sorted;
+    private LongList series;
+    private long invocation;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        Random rnd = new Random(size);
+        sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = (long) Math.abs(rnd.nextGaussian() * 200) + 1;
+        }
+        Arrays.sort(sorted);
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() {
+        series = LongList.create(size);
+        // Vary the first element so no two series are equal
+        series.add(-(++invocation));
+        for (int i = 1; i < size; i++) {
+            series.add(sorted[i]);
+        }
+    }
+
+    @Benchmark
+    public void percentiles(Blackhole bh) {
+        bh.consume(method.value(0.1, series));
+        bh.consume(method.value(0.5, series));
+        bh.consume(method.value(0.9, series));
+        bh.consume(method.value(0.99, series));
+    }
+}
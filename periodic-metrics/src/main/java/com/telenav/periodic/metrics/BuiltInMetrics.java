@@ -67,7 +67,22 @@ public enum BuiltInMetrics implements Metric {
     HTTP_NON_ERROR_RESPONSES,
     HTTP_CLIENT_ERROR_RESPONSES,
     HTTP_SERVER_ERROR_RESPONSES,
-    HEAP_IN_USE;
+    HEAP_IN_USE,
+    HTTP_REQUESTS_IN_FLIGHT,
+    HTTP_CLIENT_REQUESTS,
+    HTTP_CLIENT_RESPONSES,
+    HTTP_CLIENT_RESETS,
+    CLIENT_REQUESTS_QUEUED,
+    POOL_TASKS_SUBMITTED,
+    POOL_TASKS_REJECTED,
+    POOL_TASKS_COMPLETED,
+    POOL_TASKS_FAILED,
+    POOL_TASKS_IN_USE,
+    POOL_TASKS_QUEUED,
+    EVENT_LOOP_OVERDUE_MILLIS,
+    PROBE_EVENTS_QUEUED,
+    PROBE_EVENTS_DROPPED,
+    PROBE_EVENTS_SUPPRESSED;
 
     public static final Set<BuiltInMetrics> INCREMENTAL;
 
@@ -81,6 +96,11 @@ public enum BuiltInMetrics implements Metric {
         INCREMENTAL = unmodifiableSet(result);
     }
 
+    @Override
+    public int slot() {
+        return ordinal();
+    }
+
     @Override
     public boolean isOnDemand() {
         switch (this) {
@@ -100,12 +120,25 @@ public enum BuiltInMetrics implements Metric {
             case NON_HEAP_TOTAL_MEMORY:
             case NON_HEAP_USED_MEMORY:
             case HEAP_IN_USE:
+            case HTTP_REQUESTS_IN_FLIGHT:
+            case CLIENT_REQUESTS_QUEUED:
+            case POOL_TASKS_IN_USE:
+            case POOL_TASKS_QUEUED:
+            case EVENT_LOOP_OVERDUE_MILLIS:
+            case PROBE_EVENTS_QUEUED:
+            case PROBE_EVENTS_DROPPED:
+            case PROBE_EVENTS_SUPPRESSED:
                 return true;
             default:
                 return false;
         }
     }
 
+    @Override
+    public boolean isCumulative() {
+        return this == PROBE_EVENTS_DROPPED || this == PROBE_EVENTS_SUPPRESSED;
+    }
+
     @Override
     public boolean omitIfZero() {
         switch (this) {
@@ -126,6 +159,12 @@ public enum BuiltInMetrics implements Metric {
             case HTTP_SERVER_ERROR_RESPONSES:
             case HTTP_RESPONSES_COMPLETED:
             case HTTP_CLIENT_ERROR_RESPONSES:
+            case HTTP_REQUESTS_IN_FLIGHT:
+            case CLIENT_REQUESTS_QUEUED:
+            case POOL_TASKS_IN_USE:
+            case POOL_TASKS_QUEUED:
+            case EVENT_LOOP_OVERDUE_MILLIS:
+            case PROBE_EVENTS_QUEUED:
                 return false;
             default:
                 return true;
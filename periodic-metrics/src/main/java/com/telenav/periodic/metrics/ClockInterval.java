@@ -25,7 +25,6 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoField;
 import static java.time.temporal.ChronoField.DAY_OF_YEAR;
 import static java.time.temporal.ChronoField.HOUR_OF_DAY;
-import static java.time.temporal.ChronoField.MILLI_OF_DAY;
 import static java.time.temporal.ChronoField.MILLI_OF_SECOND;
 import static java.time.temporal.ChronoField.MINUTE_OF_HOUR;
 import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
@@ -93,7 +92,7 @@ final class ClockInterval<T> implements Delayed, Supplier<T> {
         started = isStarted();
     }
 
-    private boolean started() {
+    boolean started() {
         return started;
     }
 
@@ -186,7 +185,7 @@ final class ClockInterval<T> implements Delayed, Supplier<T> {
             case MINUTE_OF_HOUR:
                 return asList(SECOND_OF_MINUTE, MILLI_OF_SECOND);
             case SECOND_OF_MINUTE:
-                return asList(MILLI_OF_DAY);
+                return asList(MILLI_OF_SECOND);
             case MILLI_OF_SECOND:
                 return emptyList();
             default:
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A MetricsPeriod which is not one of the standard ones.
+ */
+final class CustomMetricsPeriod implements MetricsPeriod {
+
+    private final IntervalSpec interval;
+
+    CustomMetricsPeriod(IntervalSpec interval) {
+        switch (interval.unit()) {
+            case SECONDS:
+            case MINUTES:
+            case HOURS:
+            case DAYS:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported unit for a metrics period: "
+                        + interval.unit());
+        }
+        this.interval = interval;
+    }
+
+    IntervalSpec interval() {
+        return interval;
+    }
+
+    @Override
+    public String loggingName() {
+        String unitName = interval.unit().name().toLowerCase();
+        return interval.amount() + "-" + unitName.substring(0, unitName.length() - 1);
+    }
+
+    @Override
+    public Duration toDuration() {
+        return interval.duration();
+    }
+
+    @Override
+    public ChronoUnit unit() {
+        return interval.unit();
+    }
+
+    @Override
+    public int amount() {
+        return interval.amount();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof CustomMetricsPeriod
+                && ((CustomMetricsPeriod) o).interval.equals(interval));
+    }
+
+    @Override
+    public int hashCode() {
+        return interval.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return loggingName();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.time.Instant;
+
+/**
+ * A sample value together with an opaque object identifying where it came
+ * from - typically the request id of one of the slowest requests in a period -
+ * so that a spike in a percentile can be traced back to individual requests.
+ */
+public final class Exemplar {
+
+    private final long value;
+    private final Object exemplar;
+    private final long capturedAt;
+
+    Exemplar(long value, Object exemplar, long capturedAt) {
+        this.value = value;
+        this.exemplar = exemplar;
+        this.capturedAt = capturedAt;
+    }
+
+    /**
+     * The sample value, such as a request duration in milliseconds.
+     *
+     * @return The value
+     */
+    public long value() {
+        return value;
+    }
+
+    /**
+     * The object that identifies the source of the sample, whose
+     * <code>toString()</code> is what gets logged.
+     *
+     * @return The exemplar
+     */
+    public Object exemplar() {
+        return exemplar;
+    }
+
+    /**
+     * When the sample was captured.
+     *
+     * @return An instant
+     */
+    public Instant capturedAt() {
+        return Instant.ofEpochMilli(capturedAt);
+    }
+
+    @Override
+    public String toString() {
+        return exemplar + "=" + value;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A consumer of metric values which can also accept exemplars. An
+ * OutboundMetricsSink which can record exemplars passes an implementation of
+ * this interface to the consumer it is given in <code>batch()</code>;
+ * MultiMetrics which capture exemplars, such as OperationStatsMetric, test
+ * whether the consumer they are passed implements it, and if so pass their
+ * exemplars after the values they relate to.
+ */
+public interface ExemplarConsumer extends BiConsumer<Metric, Long> {
+
+    /**
+     * Accept an exemplar for a metric emitted in the same batch.
+     *
+     * @param metric The metric, such as the p99 of an operation
+     * @param exemplar The exemplar
+     */
+    void exemplar(Metric metric, Exemplar exemplar);
+}
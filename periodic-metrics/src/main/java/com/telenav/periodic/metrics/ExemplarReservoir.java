@@ -0,0 +1,127 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free, fixed-size collection of the exemplars with the highest values
+ * offered to it. Once full, it maintains a threshold - the lowest value it
+ * holds - so the common case of a value which would not make the cut costs a
+ * single comparison; only values above the threshold scan the (small) set of
+ * slots and CAS in a replacement for the lowest.
+ */
+final class ExemplarReservoir {
+
+    private final AtomicReferenceArray<Exemplar> slots;
+    private final AtomicLong threshold = new AtomicLong(Long.MIN_VALUE);
+
+    ExemplarReservoir(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be > 0: " + size);
+        }
+        slots = new AtomicReferenceArray<>(size);
+    }
+
+    int size() {
+        return slots.length();
+    }
+
+    boolean offer(long value, Object exemplar) {
+        if (value <= threshold.get()) {
+            return false;
+        }
+        Exemplar ex = null;
+        for (;;) {
+            int lowestIndex = -1;
+            Exemplar lowest = null;
+            for (int i = 0; i < slots.length(); i++) {
+                Exemplar e = slots.get(i);
+                if (e == null) {
+                    lowestIndex = i;
+                    lowest = null;
+                    break;
+                }
+                if (lowest == null || e.value() < lowest.value()) {
+                    lowest = e;
+                    lowestIndex = i;
+                }
+            }
+            if (lowest != null && value <= lowest.value()) {
+                raiseThreshold(lowest.value());
+                return false;
+            }
+            if (ex == null) {
+                ex = new Exemplar(value, exemplar, System.currentTimeMillis());
+            }
+            if (slots.compareAndSet(lowestIndex, lowest, ex)) {
+                if (lowest != null) {
+                    updateThreshold();
+                }
+                return true;
+            }
+        }
+    }
+
+    private void updateThreshold() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < slots.length(); i++) {
+            Exemplar e = slots.get(i);
+            if (e == null) {
+                return;
+            }
+            min = Math.min(min, e.value());
+        }
+        raiseThreshold(min);
+    }
+
+    private void raiseThreshold(long to) {
+        long old = threshold.get();
+        while (to > old && !threshold.compareAndSet(old, to)) {
+            old = threshold.get();
+        }
+    }
+
+    /**
+     * Pass the contents to a consumer, highest value first.
+     *
+     * @param c A consumer
+     */
+    void forEach(Consumer<? super Exemplar> c) {
+        Exemplar[] all = new Exemplar[slots.length()];
+        int count = 0;
+        for (int i = 0; i < all.length; i++) {
+            Exemplar e = slots.get(i);
+            if (e != null) {
+                all[count++] = e;
+            }
+        }
+        Arrays.sort(all, 0, count, (a, b) -> Long.compare(b.value(), a.value()));
+        for (int i = 0; i < count; i++) {
+            c.accept(all[i]);
+        }
+    }
+
+    void reset() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+        threshold.set(Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.mastfrog.concurrent.FlipFlop;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import static java.util.Collections.emptyList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * MultiMetric which collects request timings into a LogLinearHistogram, and
+ * emits the same statistics as OperationStatsMetric - by default p10, median,
+ * p90, p99, min, max, mean, count. Unlike OperationStatsMetric, memory use is fixed and
+ * independent of request volume, no samples are discarded, and nothing is
+ * sorted when emitting; the trade-off is that percentiles carry a bounded
+ * relative error (under 0.4% at the default precision), while min, max, mean
+ * and count are exact.
+ * <p>
+ * Histograms are mergeable, so rollups for longer periods can be computed from
+ * the snapshots taken for the shortest one. That also makes this the better
+ * choice for extreme tail percentiles such as P999 and P9999, whose cost here
+ * is the same as any other percentile, where OperationStatsMetric needs enough
+ * retained samples for them to be meaningful.
+ * </p>
+ */
+public final class HistogramStatsMetric<Op extends Enum<Op>> implements MergeableMultiMetric<Long> {
+
+    private final Op operation;
+    private final Enum<?> qualifier;
+    private final int precisionBits;
+    private final FlipFlop<LogLinearHistogram> histograms;
+    private final Metric min;
+    private final Metric max;
+    private final Metric mean;
+    private final Metric count;
+    private final Set<StatisticalMetrics> percentileSet;
+    private final double[] percentiles;
+    private final Metric[] percentileMetrics;
+
+    /**
+     * Create a metric using the default histogram precision.
+     *
+     * @param operation The operation
+     */
+    public HistogramStatsMetric(Op operation) {
+        this(operation, LogLinearHistogram.DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * Create a HistogramStatsMetric for a given operation.
+     *
+     * @param operation The operation
+     * @param precisionBits The number of bits of precision the histograms
+     * should use
+     */
+    public HistogramStatsMetric(Op operation, int precisionBits) {
+        this(operation, precisionBits, StatisticalMetrics.DEFAULT_PERCENTILES);
+    }
+
+    /**
+     * Create a HistogramStatsMetric for a given operation which emits a
+     * specific set of percentiles.
+     *
+     * @param operation The operation
+     * @param precisionBits The number of bits of precision the histograms
+     * should use
+     * @param percentiles The percentiles to emit - members of the set which
+     * are not percentiles are ignored
+     */
+    public HistogramStatsMetric(Op operation, int precisionBits, Set<StatisticalMetrics> percentiles) {
+        this(operation, null, precisionBits, percentiles);
+    }
+
+    /**
+     * Create a HistogramStatsMetric for one of several values measured for
+     * an operation, such as request or response size, whose metrics are
+     * named <code>operation.qualifier.statistic</code>.
+     *
+     * @param operation The operation
+     * @param qualifier What is measured, or null
+     * @param precisionBits The number of bits of precision the histograms
+     * should use
+     * @param percentiles The percentiles to emit - members of the set which
+     * are not percentiles are ignored
+     */
+    public HistogramStatsMetric(Op operation, Enum<?> qualifier, int precisionBits,
+            Set<StatisticalMetrics> percentiles) {
+        this.operation = operation;
+        this.qualifier = qualifier;
+        this.precisionBits = precisionBits;
+        histograms = new FlipFlop<>(
+                new LogLinearHistogram(precisionBits, LogLinearHistogram.DEFAULT_MAX_VALUE),
+                new LogLinearHistogram(precisionBits, LogLinearHistogram.DEFAULT_MAX_VALUE),
+                LogLinearHistogram::reset);
+        min = Metric.operationMetric(operation, qualifier, StatisticalMetrics.MIN);
+        max = Metric.operationMetric(operation, qualifier, StatisticalMetrics.MAX);
+        mean = Metric.operationMetric(operation, qualifier, StatisticalMetrics.MEAN);
+        count = Metric.operationMetric(operation, qualifier, BuiltInMetrics.REQUESTS);
+        percentileSet = percentiles;
+        StatisticalMetrics[] sorted = StatisticalMetrics.sortedPercentiles(percentiles);
+        this.percentiles = new double[sorted.length];
+        percentileMetrics = new Metric[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.percentiles[i] = sorted[i].percentile().get();
+            percentileMetrics[i] = Metric.operationMetric(operation, qualifier, sorted[i]);
+        }
+    }
+
+    public Op operation() {
+        return operation;
+    }
+
+    public static <O extends Enum<O>> Set<HistogramStatsMetric<O>> forEnum(Class<O> opEnumType, int precisionBits) {
+        return forEnum(opEnumType, precisionBits, StatisticalMetrics.DEFAULT_PERCENTILES);
+    }
+
+    public static <O extends Enum<O>> Set<HistogramStatsMetric<O>> forEnum(Class<O> opEnumType, int precisionBits,
+            Set<StatisticalMetrics> percentiles) {
+        Set<HistogramStatsMetric<O>> result = new HashSet<>();
+        for (O o : opEnumType.getEnumConstants()) {
+            result.add(new HistogramStatsMetric<>(o, precisionBits, percentiles));
+        }
+        return result;
+    }
+
+    @Override
+    public void add(long millis) {
+        histograms.get().add(millis);
+    }
+
+    @Override
+    public HistogramStatsMetric<Op> newRollup() {
+        return new HistogramStatsMetric<>(operation, qualifier, precisionBits, percentileSet);
+    }
+
+    @Override
+    public boolean get(BiConsumer<Metric, Long> c) {
+        return get(c, emptyList());
+    }
+
+    @Override
+    public boolean get(BiConsumer<Metric, Long> c, Collection<? extends MergeableMultiMetric<Long>> rollups) {
+        LogLinearHistogram hist = histograms.flip();
+        for (MergeableMultiMetric<Long> rollup : rollups) {
+            if (!(rollup instanceof HistogramStatsMetric<?>)) {
+                throw new IllegalArgumentException("Cannot merge into " + rollup);
+            }
+            ((HistogramStatsMetric<?>) rollup).histograms.get().addAll(hist);
+        }
+        long ct = hist.count();
+        c.accept(this.count, ct);
+        if (ct == 0) {
+            return false;
+        }
+        c.accept(min, hist.min());
+        c.accept(max, hist.max());
+        c.accept(mean, hist.mean());
+        for (int i = 0; i < percentiles.length; i++) {
+            c.accept(percentileMetrics[i], hist.valueAtPercentile(percentiles[i]));
+        }
+        return true;
+    }
+
+    public Collection<? extends Metric> metrics() {
+        Set<Metric> result = new HashSet<>(Arrays.asList(percentileMetrics));
+        Collections.addAll(result, min, max, mean, count);
+        return Collections.unmodifiableSet(result);
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramStats(" + operation + (qualifier == null ? "" : "." + qualifier)
+                + " " + precisionBits + ")";
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+/**
+ * Counters for HTTP responses by the first digit of their status code, which
+ * can be used alone for server-wide counts, or combined with an operation
+ * enum using <code>Metric.operationMetric()</code> for per-operation counts.
+ * Omitted from output when zero, so unused classes of response cost nothing to
+ * emit.
+ */
+public enum HttpStatusClass implements Metric {
+    STATUS_1XX,
+    STATUS_2XX,
+    STATUS_3XX,
+    STATUS_4XX,
+    STATUS_5XX;
+
+    private static final HttpStatusClass[] VALUES = values();
+
+    /**
+     * Get the status class for an HTTP status code.
+     *
+     * @param status A status code
+     * @return A status class, or null if the code is not between 100 and
+     * 599
+     */
+    public static HttpStatusClass forStatus(int status) {
+        int ix = (status / 100) - 1;
+        return status < 100 || ix >= VALUES.length ? null : VALUES[ix];
+    }
+
+    @Override
+    public boolean omitIfZero() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return loggingName();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, HDR-style log-linear histogram of non-negative long values,
+ * which can answer percentile queries with bounded relative error, in constant
+ * memory, without retaining or sorting individual samples.
+ * <p>
+ * Values are grouped by their highest set bit into power-of-two ranges, and
+ * each range is split linearly into <code>2^precisionBits</code> buckets - so
+ * values below <code>2^(precisionBits + 1)</code> are recorded exactly, and the
+ * value reported for any larger value is within
+ * <code>1 / 2^(precisionBits + 1)</code> of the original. With the default
+ * precision of 7 bits that is under 0.4%, and a histogram able to hold values
+ * up to 2^32 occupies 3328 longs (~26Kb), regardless of how many values are
+ * added to it.
+ * </p>
+ * <p>
+ * Adding a value is lock-free - an atomic increment of one bucket, plus
+ * LongAdder updates of the count and sum; the minimum and maximum are only
+ * compare-and-set when a new extreme is encountered. The minimum, maximum,
+ * count and mean are exact; only percentiles are approximate. Histograms with
+ * the same precision and maximum are mergeable, so the contents of several
+ * (for example, consecutive one-minute periods) can be combined into one.
+ * </p>
+ * <p>
+ * Reading percentiles while values are being concurrently added is safe, but
+ * will not be an atomic snapshot; callers which need one (such as
+ * HistogramStatsMetric) should alternate between two instances and only read
+ * the one not currently being written to.
+ * </p>
+ */
+public final class LogLinearHistogram {
+
+    /**
+     * The default number of bits of precision (sub-buckets per power of two).
+     */
+    public static final int DEFAULT_PRECISION_BITS = 7;
+    /**
+     * The default maximum value which can be distinguished from larger ones -
+     * the maximum value of an unsigned int, which is the same limit imposed on
+     * timings stored by OperationStatsMetric.
+     */
+    public static final long DEFAULT_MAX_VALUE = 0xFFFF_FFFFL;
+    /**
+     * The maximum supported number of bits of precision - above this, memory
+     * requirements grow quickly for no practical benefit.
+     */
+    public static final int MAX_PRECISION_BITS = 14;
+    private final int precisionBits;
+    private final long maxValue;
+    private final AtomicLongArray counts;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Create a histogram with the default precision and maximum value.
+     */
+    public LogLinearHistogram() {
+        this(DEFAULT_PRECISION_BITS, DEFAULT_MAX_VALUE);
+    }
+
+    /**
+     * Create a histogram.
+     *
+     * @param precisionBits The number of bits of precision, from 1 to 14 -
+     * higher values use more memory and have lower relative error
+     * @param maxValue The largest value which should be distinguishable -
+     * larger values are counted, and included in the minimum, maximum, mean and
+     * count, but are treated as equal to this value when computing percentiles
+     */
+    public LogLinearHistogram(int precisionBits, long maxValue) {
+        if (precisionBits < 1 || precisionBits > MAX_PRECISION_BITS) {
+            throw new IllegalArgumentException("Precision bits must be between 1 and "
+                    + MAX_PRECISION_BITS + " but got " + precisionBits);
+        }
+        if (maxValue < 1) {
+            throw new IllegalArgumentException("Max value must be greater than zero "
+                    + "but got " + maxValue);
+        }
+        this.precisionBits = precisionBits;
+        this.maxValue = maxValue;
+        counts = new AtomicLongArray(indexFor(maxValue, precisionBits) + 1);
+    }
+
+    /**
+     * Create a new, empty histogram with the same precision and maximum value
+     * as this one, which can be merged with it.
+     *
+     * @return A histogram
+     */
+    public LogLinearHistogram newEmptyCopy() {
+        return new LogLinearHistogram(precisionBits, maxValue);
+    }
+
+    public int precisionBits() {
+        return precisionBits;
+    }
+
+    public long maxValue() {
+        return maxValue;
+    }
+
+    /**
+     * The number of buckets this histogram allocated.
+     *
+     * @return the bucket count
+     */
+    public int bucketCount() {
+        return counts.length();
+    }
+
+    static int indexFor(long value, int precisionBits) {
+        // Values below 2^(precisionBits + 1) get a bucket of their own;
+        // above that, the bucket index is the number of bits shifted off
+        // to reduce the value to precisionBits + 1 significant bits, times
+        // the number of sub-buckets, plus the remaining significant bits.
+        int shift = Math.max(0, (63 - Long.numberOfLeadingZeros(value)) - precisionBits);
+        return (int) ((((long) shift) << precisionBits) + (value >>> shift));
+    }
+
+    private long lowestValueAt(int index) {
+        int shift = Math.max(0, (index >>> precisionBits) - 1);
+        return ((long) index - (((long) shift) << precisionBits)) << shift;
+    }
+
+    private long widthAt(int index) {
+        return 1L << Math.max(0, (index >>> precisionBits) - 1);
+    }
+
+    /**
+     * Add a value. Negative values are ignored.
+     *
+     * @param value A value
+     */
+    public void add(long value) {
+        if (value < 0) {
+            return;
+        }
+        counts.incrementAndGet(indexFor(Math.min(value, maxValue), precisionBits));
+        count.increment();
+        sum.add(value);
+        long oldMin = min.get();
+        while (value < oldMin && !min.compareAndSet(oldMin, value)) {
+            oldMin = min.get();
+        }
+        long oldMax = max.get();
+        while (value > oldMax && !max.compareAndSet(oldMax, value)) {
+            oldMax = max.get();
+        }
+    }
+
+    /**
+     * Add the contents of another histogram to this one.
+     *
+     * @param other Another histogram with the same precision and maximum value
+     * @return this
+     */
+    public LogLinearHistogram addAll(LogLinearHistogram other) {
+        if (other.precisionBits != precisionBits || other.maxValue != maxValue) {
+            throw new IllegalArgumentException("Cannot merge a histogram with "
+                    + other.precisionBits + " bits precision and max " + other.maxValue
+                    + " into one with " + precisionBits + " bits and max " + maxValue);
+        }
+        long otherCount = other.count();
+        if (otherCount == 0) {
+            return this;
+        }
+        long otherMin = other.min.get();
+        long otherMax = other.max.get();
+        int first = indexFor(Math.min(otherMin, maxValue), precisionBits);
+        int last = indexFor(Math.min(otherMax, maxValue), precisionBits);
+        for (int i = first; i <= last; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        count.add(otherCount);
+        sum.add(other.sum());
+        long oldMin = min.get();
+        while (otherMin < oldMin && !min.compareAndSet(oldMin, otherMin)) {
+            oldMin = min.get();
+        }
+        long oldMax = max.get();
+        while (otherMax > oldMax && !max.compareAndSet(oldMax, otherMax)) {
+            oldMax = max.get();
+        }
+        return this;
+    }
+
+    /**
+     * Clear this histogram. Only the range of buckets between the minimum and
+     * maximum are touched, so this is cheap for histograms holding a narrow
+     * range of values.
+     */
+    public void reset() {
+        long oldMin = min.getAndSet(Long.MAX_VALUE);
+        long oldMax = max.getAndSet(Long.MIN_VALUE);
+        if (oldMin <= oldMax) {
+            int first = indexFor(Math.min(oldMin, maxValue), precisionBits);
+            int last = indexFor(Math.min(oldMax, maxValue), precisionBits);
+            for (int i = first; i <= last; i++) {
+                counts.set(i, 0);
+            }
+        }
+        count.reset();
+        sum.reset();
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public boolean isEmpty() {
+        return count.sum() == 0;
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * The exact minimum value added, or zero if empty.
+     *
+     * @return The minimum
+     */
+    public long min() {
+        long result = min.get();
+        return result == Long.MAX_VALUE ? 0 : result;
+    }
+
+    /**
+     * The exact maximum value added, or zero if empty.
+     *
+     * @return The maximum
+     */
+    public long max() {
+        long result = max.get();
+        return result == Long.MIN_VALUE ? 0 : result;
+    }
+
+    /**
+     * The mean of all values added, or zero if empty.
+     *
+     * @return The mean
+     */
+    public long mean() {
+        long ct = count.sum();
+        return ct == 0 ? 0 : sum.sum() / ct;
+    }
+
+    /**
+     * Compute the value at a given percentile, using the nearest-rank method,
+     * without sorting anything - the cost is proportional to the number of
+     * buckets between the minimum and maximum values.
+     *
+     * @param percentile A percentile between 0 and 1
+     * @return The midpoint of the bucket the value at that rank falls into,
+     * constrained to the minimum and maximum, or zero if empty
+     */
+    public long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: "
+                    + percentile);
+        }
+        long ct = count.sum();
+        if (ct == 0) {
+            return 0;
+        }
+        long minimum = min();
+        long maximum = max();
+        long rank = Math.max(1, Math.min(ct, (long) Math.ceil(percentile * ct)));
+        int first = indexFor(Math.min(minimum, maxValue), precisionBits);
+        int last = indexFor(Math.min(maximum, maxValue), precisionBits);
+        long cumulative = 0;
+        for (int i = first; i <= last; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                long value = lowestValueAt(i) + (widthAt(i) >>> 1);
+                return Math.max(minimum, Math.min(maximum, value));
+            }
+        }
+        // Concurrently modified while we were reading
+        return maximum;
+    }
+
+    /**
+     * Compute the value at a percentile over several histograms of the same
+     * shape, as though they had been merged, without merging them or
+     * allocating anything.
+     *
+     * @param percentile A percentile between 0 and 1
+     * @param histograms Up to 64 histograms with the same precision and
+     * maximum value
+     * @param mask A bit mask - bit <i>n</i> is set to include the
+     * <i>n</i>th histogram
+     * @return The value, or zero if the included histograms are empty
+     */
+    static long valueAtPercentile(double percentile, LogLinearHistogram[] histograms, long mask) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 1: "
+                    + percentile);
+        }
+        long ct = 0;
+        long minimum = Long.MAX_VALUE;
+        long maximum = Long.MIN_VALUE;
+        for (int h = 0; h < histograms.length; h++) {
+            if ((mask & (1L << h)) != 0) {
+                LogLinearHistogram hist = histograms[h];
+                long hc = hist.count();
+                if (hc > 0) {
+                    ct += hc;
+                    minimum = Math.min(minimum, hist.min());
+                    maximum = Math.max(maximum, hist.max());
+                }
+            }
+        }
+        if (ct == 0) {
+            return 0;
+        }
+        LogLinearHistogram shape = histograms[0];
+        long rank = Math.max(1, Math.min(ct, (long) Math.ceil(percentile * ct)));
+        int first = indexFor(Math.min(minimum, shape.maxValue), shape.precisionBits);
+        int last = indexFor(Math.min(maximum, shape.maxValue), shape.precisionBits);
+        long cumulative = 0;
+        for (int i = first; i <= last; i++) {
+            for (int h = 0; h < histograms.length; h++) {
+                if ((mask & (1L << h)) != 0) {
+                    cumulative += histograms[h].counts.get(i);
+                }
+            }
+            if (cumulative >= rank) {
+                long value = shape.lowestValueAt(i) + (shape.widthAt(i) >>> 1);
+                return Math.max(minimum, Math.min(maximum, value));
+            }
+        }
+        return maximum;
+    }
+
+    @Override
+    public String toString() {
+        return "LogLinearHistogram(" + precisionBits + " bits, max " + maxValue
+                + ", " + counts.length() + " buckets, count " + count() + ")";
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.Collection;
+import java.util.function.BiConsumer;
+
+/**
+ * A MultiMetric whose snapshots can be merged into another instance, so that
+ * metrics for longer periods can be derived from the snapshots taken for the
+ * shortest period, rather than by collecting every sample once per period.
+ * When hierarchical metrics are enabled, only the one-minute instance of a
+ * MergeableMultiMetric is written to on the request path; five-minute, hourly
+ * and four-hour values are computed from rollups created with
+ * <code>newRollup()</code>.
+ */
+public interface MergeableMultiMetric<N extends Number> extends MultiMetric<N> {
+
+    /**
+     * Create a new, empty instance which emits the same metrics as this one,
+     * and can be passed to <code>get(BiConsumer, Collection)</code> to have
+     * this instance's snapshots merged into it.
+     *
+     * @return A new metric
+     */
+    MergeableMultiMetric<N> newRollup();
+
+    /**
+     * Take a snapshot, emit metrics from it as <code>get(BiConsumer)</code>
+     * would, and merge its contents into each of the passed rollups.
+     *
+     * @param c A consumer to accept the values
+     * @param rollups Rollups created by <code>newRollup()</code> on this
+     * instance
+     * @return whether or not any metrics were emitted.
+     */
+    boolean get(BiConsumer<Metric, N> c, Collection<? extends MergeableMultiMetric<N>> rollups);
+}
@@ -48,6 +48,13 @@ final class MetaMetricsSink implements MetricsSink {
             sub.onMetric(kind, amount);
         }
     }
+
+    @Override
+    public void onMetric(int slot, long amount) {
+        for (MetricsSink sub : subsinks) {
+            sub.onMetric(slot, amount);
+        }
+    }
     
     @Override
     public String toString() {
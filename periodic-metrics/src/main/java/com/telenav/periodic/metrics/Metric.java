@@ -70,6 +70,19 @@ public interface Metric extends Serializable {
         return false;
     }
 
+    /**
+     * If true, the value of this metric is a running total since startup
+     * which never decreases, such as a count of records dropped, rather than
+     * a count over one period or a measurement; such metrics are exposed to
+     * pull-based collectors as counters. The default implementation returns
+     * false.
+     *
+     * @return Whether the value is cumulative
+     */
+    default boolean isCumulative() {
+        return false;
+    }
+
     /**
      * The name to use when logging - these are typically implemented over enums
      * with all-caps names; the default behavior is to convert name() to
@@ -85,6 +98,20 @@ public interface Metric extends Serializable {
         return false;
     }
 
+    /**
+     * A small integer, unique to this metric's name for the life of the JVM,
+     * which sinks use to store values in arrays rather than looking metrics up
+     * in hash maps; pass it to <code>MetricsSink.onMetric(int, long)</code> to
+     * skip resolving it on every call. The default implementation looks the
+     * slot up (assigning one if necessary) on every call, so implementations
+     * should cache it.
+     *
+     * @return A slot, zero or greater
+     */
+    default int slot() {
+        return MetricSlots.slotOf(this);
+    }
+
     /**
      * Metric cannot extend Comparable&lt;Metric&gt; or it will conflict with
      * the inherent implementation of Comparable on enums, so this method serves
@@ -131,4 +158,21 @@ public interface Metric extends Serializable {
             operationMetric(Op operation, M metric) {
         return new OperationMetric<>(operation, metric);
     }
+
+    /**
+     * Create an operation-specific metric for one of several things measured
+     * for each operation, such as request size, which is named and labeled
+     * as <code>operation.qualifier.metric</code>.
+     *
+     * @param <Op> The operation enum type
+     * @param <M> The metric enum type
+     * @param operation An operation
+     * @param qualifier What is measured
+     * @param metric A metric
+     * @return A metric
+     */
+    public static <Op extends Enum<Op>, M extends Enum<M> & Metric> OperationMetric<Op, M>
+            operationMetric(Op operation, Enum<?> qualifier, M metric) {
+        return new OperationMetric<>(operation, qualifier, metric);
+    }
 }
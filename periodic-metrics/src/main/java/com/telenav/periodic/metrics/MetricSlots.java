@@ -0,0 +1,91 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns every distinct metric (by name, per the contract of Metric) a small,
+ * dense integer slot for the life of the JVM, so sinks can store values in
+ * arrays indexed by slot rather than hash maps keyed by metric. BuiltInMetrics
+ * occupy the slots matching their ordinals; everything else is assigned the
+ * next free slot the first time it is asked for.
+ */
+final class MetricSlots {
+
+    private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+    private static volatile Metric[] metrics;
+
+    static {
+        BuiltInMetrics[] builtIn = BuiltInMetrics.values();
+        Metric[] all = new Metric[builtIn.length + 64];
+        for (BuiltInMetrics m : builtIn) {
+            SLOTS.put(m.name(), m.ordinal());
+            all[m.ordinal()] = m;
+        }
+        metrics = all;
+    }
+
+    private MetricSlots() {
+        throw new AssertionError();
+    }
+
+    static int slotOf(Metric metric) {
+        Integer result = SLOTS.get(metric.name());
+        if (result != null) {
+            return result;
+        }
+        return assign(metric);
+    }
+
+    private static synchronized int assign(Metric metric) {
+        Integer result = SLOTS.get(metric.name());
+        if (result != null) {
+            return result;
+        }
+        int slot = SLOTS.size();
+        Metric[] all = metrics;
+        if (slot >= all.length) {
+            all = Arrays.copyOf(all, all.length * 2);
+        }
+        all[slot] = metric;
+        metrics = all;
+        SLOTS.put(metric.name(), slot);
+        return slot;
+    }
+
+    /**
+     * Get the metric assigned a slot.
+     *
+     * @param slot A slot
+     * @return The metric or null if the slot is unassigned
+     */
+    static Metric metricFor(int slot) {
+        Metric[] all = metrics;
+        return slot < 0 || slot >= all.length ? null : all[slot];
+    }
+
+    /**
+     * The number of slots assigned so far.
+     *
+     * @return A count
+     */
+    static int slotCount() {
+        return SLOTS.size();
+    }
+}
@@ -21,7 +21,10 @@ import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 import com.mastfrog.giulius.annotations.Setting;
 import static com.mastfrog.giulius.annotations.Setting.ValueType.BOOLEAN;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.INTEGER;
+import static java.util.Collections.emptySet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
@@ -38,8 +41,41 @@ public class MetricsModule implements Module {
     @Setting(type = BOOLEAN, value = "If true, do not include JMX garbage "
             + "collection metrics in emitted metrics.", defaultValue = "false")
     public static final String SETTINGS_KEY_OMIT_GC_METRICS = "omit.gc.metrics";
+    @Setting(type = BOOLEAN, value = "If true, only one-minute metrics are collected on the "
+            + "request path, and five-minute, hourly and four-hour metrics are computed by summing "
+            + "and merging one-minute snapshots as they are emitted. Multi-metrics which are not "
+            + "mergeable (such as sample-based timing statistics) are only emitted for the "
+            + "one-minute period in this mode.", defaultValue = "false")
+    public static final String SETTINGS_KEY_HIERARCHICAL_METRICS = "metrics.hierarchical";
+    @Setting(value = "Prefix prepended (with an underscore) to the name of every metric "
+            + "rendered by OpenMetricsRenderer, to keep this application's metrics distinct "
+            + "from others scraped by the same collector.", defaultValue = "")
+    public static final String SETTINGS_KEY_OPENMETRICS_PREFIX = "openmetrics.prefix";
+    @Setting(value = "Host of the StatsD agent StatsdOutboundMetricsSink sends metrics to.",
+            defaultValue = "127.0.0.1")
+    public static final String SETTINGS_KEY_STATSD_HOST = "statsd.host";
+    @Setting(value = "UDP port of the StatsD agent StatsdOutboundMetricsSink sends metrics to.",
+            type = INTEGER, defaultValue = "8125")
+    public static final String SETTINGS_KEY_STATSD_PORT = "statsd.port";
+    @Setting(value = "Maximum size in bytes of a datagram sent by StatsdOutboundMetricsSink; "
+            + "the default fits within a standard ethernet MTU. Use 8932 for a local agent on "
+            + "a jumbo-frame or loopback interface.", type = INTEGER, defaultValue = "1432")
+    public static final String SETTINGS_KEY_STATSD_MAX_PACKET_SIZE = "statsd.max.packet";
+    @Setting(value = "Prefix prepended (with a dot) to the name of every metric sent by "
+            + "StatsdOutboundMetricsSink.", defaultValue = "")
+    public static final String SETTINGS_KEY_STATSD_PREFIX = "statsd.prefix";
+    @Setting(type = BOOLEAN, value = "If true, StatsdOutboundMetricsSink sends the period and "
+            + "operation of each metric as DogStatsD tags rather than as part of the metric "
+            + "name.", defaultValue = "false")
+    public static final String SETTINGS_KEY_STATSD_DOGSTATSD_TAGS = "statsd.dogstatsd.tags";
+    @Setting(value = "Comma-delimited list of additional periods to collect and emit metrics for, "
+            + "alongside the standard one-minute, five-minute, hourly and four-hour ones, in the "
+            + "format unit:count - for example, seconds:1,seconds:10 for one and ten second "
+            + "resolution metrics.", defaultValue = "")
+    public static final String SETTINGS_KEY_CUSTOM_METRICS_PERIODS = "metrics.custom.periods";
     private Class<? extends OutboundMetricsSink> outbound;
     private final Set<Class<? extends MetricsRegistry>> registries = new HashSet<>();
+    private final Set<MetricsPeriod> customPeriods = new LinkedHashSet<>();
 
     /**
      * Set the outbound message sink to use.
@@ -56,6 +92,32 @@ public class MetricsModule implements Module {
         return this;
     }
 
+    /**
+     * Send metrics to a StatsD-compatible agent over UDP, using
+     * StatsdOutboundMetricsSink.
+     *
+     * @return this
+     */
+    public MetricsModule withStatsdOutboundMetricsSink() {
+        return withOutboundMetricsSink(StatsdOutboundMetricsSink.class);
+    }
+
+    /**
+     * Collect and emit metrics over an additional period, such as every ten
+     * seconds, alongside the standard periods.  Short periods are useful
+     * during load tests and incident response, but each one adds a set of
+     * counters and timing statistics which every request writes to.
+     *
+     * @param period A period
+     * @return this
+     */
+    public MetricsModule withMetricsPeriod(MetricsPeriod period) {
+        if (!(period instanceof StandardMetricsPeriods)) {
+            customPeriods.add(period);
+        }
+        return this;
+    }
+
     /**
      * Add a metrics registry which should be initialized on startup.
      *
@@ -86,7 +148,7 @@ public class MetricsModule implements Module {
     }
 
     private static final class LastValuesLookupProvider implements
-            Provider<Function<? super StandardMetricsPeriods, ? extends Map<Metric, Long>>> {
+            Provider<Function<? super MetricsPeriod, ? extends Map<Metric, Long>>> {
 
         private final MetricsSinks sinks;
 
@@ -96,7 +158,7 @@ public class MetricsModule implements Module {
         }
 
         @Override
-        public Function<? super StandardMetricsPeriods, ? extends Map<Metric, Long>> get() {
+        public Function<? super MetricsPeriod, ? extends Map<Metric, Long>> get() {
             return sinks;
         }
     }
@@ -110,9 +172,26 @@ public class MetricsModule implements Module {
         registries.forEach(reg -> binder.bind(reg).asEagerSingleton());
         binder.bind(new TypeLiteral<Function<? super StandardMetricsPeriods, ? extends Map<Metric, Long>>>() {
         }).toProvider(LastValuesLookupProvider.class);
+        binder.bind(new TypeLiteral<Function<? super MetricsPeriod, ? extends Map<Metric, Long>>>() {
+        }).toProvider(LastValuesLookupProvider.class);
+        binder.bind(CustomPeriods.class).toInstance(new CustomPeriods(customPeriods));
         binder.bind(MetricsInit.class).asEagerSingleton();
     }
 
+    static final class CustomPeriods {
+
+        final Set<MetricsPeriod> periods;
+
+        @Inject
+        CustomPeriods() {
+            this(emptySet());
+        }
+
+        CustomPeriods(Set<MetricsPeriod> periods) {
+            this.periods = new LinkedHashSet<>(periods);
+        }
+    }
+
     static class MetricsInit {
 
         @Inject
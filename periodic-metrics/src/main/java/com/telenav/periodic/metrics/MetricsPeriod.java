@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A period over which metrics are collected and emitted - either one of the
+ * StandardMetricsPeriods, or a custom period, such as every ten seconds,
+ * created with <code>MetricsPeriod.of()</code> and registered with
+ * <code>MetricsModule.withMetricsPeriod()</code> or the
+ * <code>metrics.custom.periods</code> setting.
+ * <p>
+ * Like standard periods, custom periods are aligned to round numbers on the
+ * clock - a ten second period expires at 0, 10, 20... seconds past the minute.
+ * </p>
+ */
+public interface MetricsPeriod {
+
+    /**
+     * The name used for this period in emitted metrics, such as
+     * <code>one-minute</code> or <code>10-second</code>.
+     *
+     * @return A name
+     */
+    String loggingName();
+
+    /**
+     * The length of this period.
+     *
+     * @return A duration
+     */
+    Duration toDuration();
+
+    /**
+     * The unit this period is measured in.
+     *
+     * @return A unit
+     */
+    ChronoUnit unit();
+
+    /**
+     * The number of units in this period.
+     *
+     * @return A count greater than zero
+     */
+    int amount();
+
+    /**
+     * Get a period of some number of seconds, minutes, hours or days; if the
+     * result matches one of the StandardMetricsPeriods, that is returned.
+     *
+     * @param amount The number of units
+     * @param unit The unit - one of SECONDS, MINUTES, HOURS or DAYS
+     * @return A period
+     */
+    static MetricsPeriod of(int amount, ChronoUnit unit) {
+        return StandardMetricsPeriods.valueFor(new IntervalSpec(unit, amount));
+    }
+
+    /**
+     * Parse a period from a string in the format "unit:N", such as
+     * <code>seconds:10</code>.
+     *
+     * @param spec A string
+     * @return A period
+     */
+    static MetricsPeriod parse(String spec) {
+        IntervalSpec interval = new IntervalSpec(spec);
+        return of(interval.amount(), interval.unit());
+    }
+}
@@ -16,10 +16,14 @@
 package com.telenav.periodic.metrics;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.unmodifiableSet;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import javax.inject.Singleton;
@@ -79,6 +83,18 @@ public abstract class MetricsRegistry {
         return emptySet();
     }
 
+    /**
+     * Return any sliding window metrics which should be queryable at any time
+     * from <code>SlidingWindows</code>; counts written to the MetricsSink for
+     * their metrics are added to them. Unlike <code>multiMetrics()</code>,
+     * this is called once.
+     *
+     * @return A collection of sliding window metrics
+     */
+    public Collection<? extends SlidingWindowMetric> slidingWindowMetrics() {
+        return emptySet();
+    }
+
     /**
      * Registrar for metrics which should be emitted periodically.
      */
@@ -86,9 +102,23 @@ public abstract class MetricsRegistry {
     public static class MetricsRegistrar {
 
         private final Set<MetricsRegistry> all = new HashSet<>();
+        private final Map<MetricsRegistry, Collection<? extends SlidingWindowMetric>> windows
+                = new IdentityHashMap<>();
+        private volatile int registrations;
 
-        void register(MetricsRegistry reg) {
+        synchronized void register(MetricsRegistry reg) {
             all.add(reg);
+            registrations++;
+        }
+
+        /**
+         * The number of registries registered so far, so consumers can tell
+         * when to look for newly registered metrics.
+         *
+         * @return A count
+         */
+        int registrations() {
+            return registrations;
         }
 
         Collection<? extends Metric> metrics() {
@@ -97,6 +127,11 @@ public abstract class MetricsRegistry {
             for (MetricsRegistry reg : all) {
                 result.addAll(reg.incrementalMetrics());
             }
+            // Assign slots up front, so sinks can size their tables and the
+            // first request does not pay for it
+            for (Metric m : result) {
+                m.slot();
+            }
             return unmodifiableSet(result);
         }
 
@@ -109,6 +144,42 @@ public abstract class MetricsRegistry {
             return result;
         }
 
+        /**
+         * Collect the sliding windows of all registries into the passed
+         * collection, asking each registry only once. A registry which
+         * registered itself in its superclass constructor and has not
+         * finished being constructed - its <code>slidingWindowMetrics()</code>
+         * returns null or throws a NullPointerException - is skipped and
+         * asked again next time. A registry which fails any other way is
+         * logged once and treated as having no sliding windows.
+         *
+         * @param into A collection to add to
+         * @return false if any registry was not yet constructed
+         */
+        synchronized boolean slidingWindowMetrics(Collection<? super SlidingWindowMetric> into) {
+            boolean complete = true;
+            for (MetricsRegistry reg : all) {
+                Collection<? extends SlidingWindowMetric> regWindows = windows.get(reg);
+                if (regWindows == null) {
+                    try {
+                        regWindows = reg.slidingWindowMetrics();
+                    } catch (NullPointerException ex) {
+                        regWindows = null;
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace(System.err);
+                        regWindows = emptySet();
+                    }
+                    if (regWindows == null) {
+                        complete = false;
+                        continue;
+                    }
+                    windows.put(reg, regWindows);
+                }
+                into.addAll(regWindows);
+            }
+            return complete;
+        }
+
         Collection<? extends MultiMetric<Long>> multiMetrics(Duration period) {
             Set<MultiMetric<Long>> result = new HashSet<>();
             for (MetricsRegistry reg : all) {
@@ -51,6 +51,31 @@ public interface MetricsSink {
         onMetric(kind, 1L);
     }
 
+    /**
+     * Add a new metric value into this sink by the metric's slot, avoiding
+     * any lookup of the metric on the hot path in sinks that store values by
+     * slot. The default implementation resolves the metric and calls
+     * <code>onMetric(Metric, long)</code>.
+     *
+     * @param slot The value of <code>slot()</code> for the metric in question
+     * @param amount The value to append
+     */
+    default void onMetric(int slot, long amount) {
+        Metric kind = MetricSlots.metricFor(slot);
+        if (kind != null) {
+            onMetric(kind, amount);
+        }
+    }
+
+    /**
+     * Calls onMetric with a value of 1L.
+     *
+     * @param slot The value of <code>slot()</code> for the metric in question
+     */
+    default void onIncrement(int slot) {
+        onMetric(slot, 1L);
+    }
+
     /**
      * Wrap a bunch of metrics sinks in a single one that emits into all of
      * them.
@@ -17,21 +17,28 @@ package com.telenav.periodic.metrics;
 
 import com.mastfrog.settings.Settings;
 import com.mastfrog.shutdown.hooks.ShutdownHookRegistry;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_CUSTOM_METRICS_PERIODS;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_HIERARCHICAL_METRICS;
 import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_OMIT_GC_METRICS;
 import com.telenav.periodic.metrics.MetricsRegistry.MetricsRegistrar;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Collection;
+import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
+import static java.util.Collections.unmodifiableList;
 import static java.util.Collections.unmodifiableMap;
-import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Supplier;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -42,33 +49,63 @@ import javax.inject.Singleton;
  * @author Tim Boudreau
  */
 @Singleton
-public class MetricsSinks implements MetricsSink, Function<StandardMetricsPeriods, Map<Metric, Long>> {
+public class MetricsSinks implements MetricsSink, Function<MetricsPeriod, Map<Metric, Long>> {
 
     private final MetaMetricsSink all = new MetaMetricsSink();
     private final ShutdownHookRegistry hooks;
     private final OutboundMetricsSink out;
     private final List<OnDemandMetric<Long>> onDemand = new ArrayList<>();
-    private final Map<StandardMetricsPeriods, AtomicReference<Map<Metric, Long>>> lastValues = newLastValuesMap();
+    private final List<MetricsPeriod> periods;
+    private final SlidingWindows windows;
+    private final Map<MetricsPeriod, LastValues> lastValues;
     private final AtomicBoolean initialized = new AtomicBoolean();
     private final MetricsRegistrar registrar;
     private final boolean omitGcMetrics;
+    private final boolean hierarchical;
+    private final List<ClockInterval<SimpleMetricsSink>> rollups = new ArrayList<>(3);
+    private final Map<ClockInterval<SimpleMetricsSink>, Emission> emissions
+            = new IdentityHashMap<>();
+    private ClockInterval<SimpleMetricsSink> base;
     private ClockInterval.PeriodicQueue<SimpleMetricsSink> q;
 
     @Inject
-    MetricsSinks(ShutdownHookRegistry hooks, OutboundMetricsSink out, Settings settings, MetricsRegistrar registrar) {
+    MetricsSinks(ShutdownHookRegistry hooks, OutboundMetricsSink out, Settings settings,
+            MetricsRegistrar registrar, MetricsModule.CustomPeriods customPeriods,
+            SlidingWindows windows) {
         this.hooks = hooks;
+        this.windows = windows;
         this.out = out;
         this.registrar = registrar;
         omitGcMetrics = settings.getBoolean(SETTINGS_KEY_OMIT_GC_METRICS, false);
+        hierarchical = settings.getBoolean(SETTINGS_KEY_HIERARCHICAL_METRICS, false);
+        periods = periods(customPeriods.periods, settings.getString(SETTINGS_KEY_CUSTOM_METRICS_PERIODS, ""));
+        Map<MetricsPeriod, LastValues> last = new LinkedHashMap<>();
+        for (MetricsPeriod p : periods) {
+            last.put(p, new LastValues());
+        }
+        lastValues = unmodifiableMap(last);
     }
 
-    private static Map<StandardMetricsPeriods, AtomicReference<Map<Metric, Long>>> newLastValuesMap() {
-        Map<StandardMetricsPeriods, AtomicReference<Map<Metric, Long>>> result
-                = new EnumMap<>(StandardMetricsPeriods.class);
-        for (StandardMetricsPeriods p : StandardMetricsPeriods.values()) {
-            result.put(p, new AtomicReference<>(emptyMap()));
+    private static List<MetricsPeriod> periods(Set<MetricsPeriod> custom, String customSetting) {
+        Set<MetricsPeriod> result = new LinkedHashSet<>(asList(StandardMetricsPeriods.values()));
+        result.addAll(custom);
+        for (String spec : customSetting.split(",")) {
+            spec = spec.trim();
+            if (!spec.isEmpty()) {
+                result.add(MetricsPeriod.parse(spec));
+            }
         }
-        return result;
+        return unmodifiableList(new ArrayList<>(result));
+    }
+
+    /**
+     * The periods metrics are collected for - the standard ones followed by
+     * any custom periods.
+     *
+     * @return A list of periods
+     */
+    public List<MetricsPeriod> periods() {
+        return periods;
     }
 
     public void checkInit() {
@@ -78,14 +115,34 @@ public class MetricsSinks implements MetricsSink, Function<StandardMetricsPeriod
     }
 
     private void init() {
-        Map<StandardMetricsPeriods, ClockInterval<SimpleMetricsSink>> intervals
-                = new EnumMap<>(StandardMetricsPeriods.class);
-        for (StandardMetricsPeriods p : StandardMetricsPeriods.values()) {
-            ClockInterval<SimpleMetricsSink> mx = p.create(registrar, omitGcMetrics);
-            all.add(mx.get());
-            intervals.put(p, mx);
-        }
-        q = new ClockInterval.PeriodicQueue<>(hooks, intervals.values(), this::onExpiry);
+        List<ClockInterval<SimpleMetricsSink>> intervals = new ArrayList<>(periods.size());
+        if (hierarchical) {
+            // Only the shortest standard period is written to by request threads
+            // and lives in the queue; the rest are fed from it in onExpiry()
+            StandardMetricsPeriods basePeriod = StandardMetricsPeriods.ONE_MINUTE;
+            base = basePeriod.create(registrar, omitGcMetrics);
+            all.add(base.get());
+            intervals.add(base);
+            emissions.put(base, new Emission(basePeriod, base.get()));
+            for (StandardMetricsPeriods p : StandardMetricsPeriods.values()) {
+                if (p != basePeriod) {
+                    ClockInterval<SimpleMetricsSink> rollup = p.createRollup(base.get(), registrar, omitGcMetrics);
+                    rollups.add(rollup);
+                    emissions.put(rollup, new Emission(p, rollup.get()));
+                }
+            }
+        }
+        for (MetricsPeriod p : periods) {
+            // Custom periods are always collected directly, since they may
+            // be shorter than any standard one
+            if (!hierarchical || !(p instanceof StandardMetricsPeriods)) {
+                ClockInterval<SimpleMetricsSink> mx = StandardMetricsPeriods.create(p, registrar, omitGcMetrics);
+                all.add(mx.get());
+                intervals.add(mx);
+                emissions.put(mx, new Emission(p, mx.get()));
+            }
+        }
+        q = new ClockInterval.PeriodicQueue<>(hooks, intervals, this::onExpiry);
         for (OnDemandMetric<Long> m : registrar.onDemandMetrics()) {
             if (m.isValid()) {
                 onDemand.add(m);
@@ -96,75 +153,209 @@ public class MetricsSinks implements MetricsSink, Function<StandardMetricsPeriod
         }
     }
 
-    static class MetricsMapFactory implements Supplier<Map<Metric, LongAdder>> {
+    /**
+     * Get the values most recently emitted for a period.
+     *
+     * @param t A period
+     * @return An immutable map, sorted by metric name, which is empty if the
+     * period has not been emitted yet
+     */
+    @Override
+    public Map<Metric, Long> apply(MetricsPeriod t) {
+        LastValues result = lastValues.get(t);
+        return result == null ? emptyMap() : result.copy();
+    }
 
-        private final Collection<? extends Metric> metrix;
+    private void onExpiry(ClockInterval<SimpleMetricsSink> iv, boolean wasStarted) {
+        emissions.get(iv).emit(wasStarted);
+        if (iv == base) {
+            emitExpiredRollups();
+        }
+    }
 
-        public MetricsMapFactory(Collection<? extends Metric> metrix) {
-            this.metrix = metrix;
+    private void emitExpiredRollups() {
+        // Called on the queue thread after the base period has been emitted
+        // and its contents absorbed into the rollups, so a rollup whose
+        // deadline has passed now contains everything up to that deadline
+        for (ClockInterval<SimpleMetricsSink> rollup : rollups) {
+            if (rollup.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                try {
+                    onExpiry(rollup, rollup.started());
+                } catch (Exception | Error e) {
+                    e.printStackTrace(System.err);
+                } finally {
+                    rollup.resetDeadline();
+                }
+            }
         }
+    }
 
-        @Override
-        public Map<Metric, LongAdder> get() {
-            return Metric.newMap(metrix);
+    @Override
+    public void onMetric(Metric kind, long amount) {
+//        checkInit();
+        windows.onMetric(kind.slot(), amount);
+        if (out instanceof NoOpOutboundMessageSink) {
+            return;
         }
+        all.onMetric(kind, amount);
     }
 
     @Override
-    public Map<Metric, Long> apply(StandardMetricsPeriods t) {
-        return unmodifiableMap(lastValues.get(t).get());
+    public void onMetric(int slot, long amount) {
+        windows.onMetric(slot, amount);
+        if (out instanceof NoOpOutboundMessageSink) {
+            return;
+        }
+        all.onMetric(slot, amount);
     }
 
-    private void onExpiry(ClockInterval<SimpleMetricsSink> iv, boolean wasStarted) {
-        SimpleMetricsSink sink = iv.get();
-        Map<Metric, LongAdder> collectedMetrics = sink.reset();
-        Map<Metric, Long> values = new TreeMap<>(Metric::compare);
-        StandardMetricsPeriods period = StandardMetricsPeriods.valueFor(iv.spec());
-        // Use no-op log for unstarted logs so we do reset cumulations, but
-        // we do not actually emit any log record for unstarted logs (otherwise
-        // we would emit an empty log record with just the name, which is confusing
-        out.batch(period.toDuration(), sink.name() + "-metrics", wasStarted, bcc -> {
-            collectedMetrics.forEach((kind, action) -> {
-                long val = action.sum();
+    @Override
+    public String toString() {
+        return "MetricsSinks(" + all + ")";
+    }
+
+    /**
+     * The last values emitted for a period, published as one of the reused
+     * snapshots of its Emission; since a snapshot is reset when the second
+     * emission after the one that published it starts, copies are checked
+     * against the number of emissions started, as a sequence lock.
+     */
+    private static final class LastValues {
+
+        private volatile MetricsSnapshot snapshot;
+        private volatile long started;
+
+        void beforeReuse(long emission) {
+            started = emission;
+            // Keep the snapshot's reset from being reordered before the above
+            VarHandle.storeStoreFence();
+        }
+
+        void publish(MetricsSnapshot snapshot, long emission) {
+            snapshot.generation = emission;
+            this.snapshot = snapshot;
+        }
+
+        Map<Metric, Long> copy() {
+            for (;;) {
+                MetricsSnapshot snap = snapshot;
+                if (snap == null) {
+                    return emptyMap();
+                }
+                Map<Metric, Long> result = new LinkedHashMap<>(snap);
+                VarHandle.loadLoadFence();
+                if (started <= snap.generation + 1) {
+                    return unmodifiableMap(result);
+                }
+                // Overwritten while copying - a newer snapshot is published
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Preallocated state for emitting one period, so that the metrics thread
+     * creates no garbage of its own per period: counter values are harvested
+     * into a reused long array, and recorded into whichever of two reused
+     * snapshots is not the one currently published as the last values.
+     */
+    private final class Emission implements Consumer<BiConsumer<Metric, Long>>, ExemplarConsumer {
+
+        private final Duration duration;
+        private final String batchName;
+        private final SimpleMetricsSink sink;
+        private final long[] harvested;
+        private final MetricsSnapshot[] snapshots;
+        private final LastValues last;
+        private MetricsSnapshot snapshot;
+        private long emissions;
+        private BiConsumer<Metric, Long> bcc;
+
+        Emission(MetricsPeriod period, SimpleMetricsSink sink) {
+            this.sink = sink;
+            duration = period.toDuration();
+            batchName = sink.name() + "-metrics";
+            harvested = new long[sink.tableSize()];
+            last = lastValues.get(period);
+            int slots = MetricSlots.slotCount();
+            snapshots = new MetricsSnapshot[]{new MetricsSnapshot(slots), new MetricsSnapshot(slots)};
+            snapshot = snapshots[0];
+        }
+
+        void emit(boolean wasStarted) {
+            long emission = ++emissions;
+            last.beforeReuse(emission);
+            snapshot = snapshot == snapshots[0] ? snapshots[1] : snapshots[0];
+            snapshot.reset();
+            sink.harvest(harvested);
+            rollUp();
+            sink.mergeRollups();
+            // Use no-op log for unstarted logs so we do reset cumulations, but
+            // we do not actually emit any log record for unstarted logs (otherwise
+            // we would emit an empty log record with just the name, which is confusing
+            try {
+                out.batch(duration, batchName, wasStarted, this);
+            } finally {
+                bcc = null;
+                sink.discardMerged();
+            }
+            last.publish(snapshot.seal(), emission);
+        }
+
+        private void rollUp() {
+            // Not done while the batch is consumed, since an OutboundMetricsSink
+            // may not consume it (for example, when its log level is disabled);
+            // mergeable multi-metrics are merged by sink.mergeRollups() for the
+            // same reason
+            for (Metric kind : sink.metrics()) {
+                long val = harvested[kind.slot()];
+                if (val != 0L) {
+                    sink.rollUp(kind, val);
+                }
+            }
+        }
+
+        @Override
+        public void accept(BiConsumer<Metric, Long> bcc) {
+            this.bcc = bcc;
+            for (Metric kind : sink.metrics()) {
+                long val = harvested[kind.slot()];
                 if (val == 0L && kind.omitIfZero()) {
-                    return;
+                    continue;
                 }
-                values.put(kind, val);
+                snapshot.put(kind, val);
                 bcc.accept(kind, val);
-            });
-            for (OnDemandMetric<Long> odm : onDemand) {
+            }
+            for (int i = 0; i < onDemand.size(); i++) {
+                OnDemandMetric<Long> odm = onDemand.get(i);
                 if (odm.isValid()) {
                     long val = odm.get();
                     Metric kind = odm.kind();
                     if (val == 0L && kind.omitIfZero()) {
                         continue;
                     }
-                    bcc.accept(odm.kind(), val);
-                    values.put(odm.kind(), val);
+                    bcc.accept(kind, val);
+                    snapshot.put(kind, val);
                 }
             }
-            sink.additionalMetrics((m, val) -> {
-                if ((val == 0L && m.omitIfZero()) || val < 0 && m.omitIfNegative()) {
-                    return;
-                }
-                bcc.accept(m, val);
-                values.put(m, val);
-            });
-        });
-        lastValues.get(period).set(values);
-    }
+            sink.additionalMetrics(this);
+        }
 
-    @Override
-    public void onMetric(Metric kind, long amount) {
-//        checkInit();
-        if (out instanceof NoOpOutboundMessageSink) {
-            return;
+        @Override
+        public void accept(Metric m, Long val) {
+            // Values from the sink's on-demand and multi-metrics
+            if ((val == 0L && m.omitIfZero()) || val < 0 && m.omitIfNegative()) {
+                return;
+            }
+            bcc.accept(m, val);
+            snapshot.put(m, val);
         }
-        all.onMetric(kind, amount);
-    }
 
-    @Override
-    public String toString() {
-        return "MetricsSinks(" + all + ")";
+        @Override
+        public void exemplar(Metric metric, Exemplar exemplar) {
+            if (bcc instanceof ExemplarConsumer) {
+                ((ExemplarConsumer) bcc).exemplar(metric, exemplar);
+            }
+        }
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The values emitted for one period, stored as primitive longs indexed by
+ * metric slot, and exposed as a read-only, name-sorted Map view without
+ * boxing anything until it is read.
+ * <p>
+ * Instances are reused: MetricsSinks keeps two per period and alternates
+ * between them, so a snapshot remains valid until the period after next is
+ * emitted; the last values lookup returns copies, checked against the
+ * generation a snapshot was published for.
+ * </p>
+ */
+final class MetricsSnapshot extends AbstractMap<Metric, Long> {
+
+    private final BitSet present = new BitSet();
+    private final BitSet known = new BitSet();
+    private final Entries entries = new Entries();
+    private long[] values;
+    private int[] order = new int[0];
+    private boolean orderStale;
+    // The emission this snapshot was last published for
+    long generation;
+
+    MetricsSnapshot(int initialSlots) {
+        values = new long[Math.max(1, initialSlots)];
+    }
+
+    /**
+     * Remove all values, prior to reuse.
+     */
+    void reset() {
+        present.clear();
+    }
+
+    void put(Metric metric, long value) {
+        int slot = metric.slot();
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, values.length * 2));
+        }
+        values[slot] = value;
+        present.set(slot);
+        if (!known.get(slot)) {
+            known.set(slot);
+            orderStale = true;
+        }
+    }
+
+    /**
+     * Called after all values have been put and before the snapshot is
+     * published; recomputes the sort order only if a metric which has never
+     * been seen before was added.
+     *
+     * @return this
+     */
+    MetricsSnapshot seal() {
+        if (orderStale) {
+            order = known.stream().boxed()
+                    .sorted((a, b) -> Metric.compare(MetricSlots.metricFor(a), MetricSlots.metricFor(b)))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            orderStale = false;
+        }
+        return this;
+    }
+
+    @Override
+    public Long get(Object key) {
+        if (!(key instanceof Metric)) {
+            return null;
+        }
+        int slot = ((Metric) key).slot();
+        return slot >= 0 && present.get(slot) ? values[slot] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Metric && present.get(((Metric) key).slot());
+    }
+
+    @Override
+    public int size() {
+        return present.cardinality();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return present.isEmpty();
+    }
+
+    @Override
+    public Set<Entry<Metric, Long>> entrySet() {
+        return entries;
+    }
+
+    private final class Entries extends AbstractSet<Entry<Metric, Long>> {
+
+        @Override
+        public Iterator<Entry<Metric, Long>> iterator() {
+            return new It(order, values);
+        }
+
+        @Override
+        public int size() {
+            return MetricsSnapshot.this.size();
+        }
+    }
+
+    private final class It implements Iterator<Entry<Metric, Long>> {
+
+        private final int[] order;
+        private final long[] values;
+        private int ix = -1;
+
+        It(int[] order, long[] values) {
+            this.order = order;
+            this.values = values;
+            advance();
+        }
+
+        private void advance() {
+            do {
+                ix++;
+            } while (ix < order.length && !present.get(order[ix]));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ix < order.length;
+        }
+
+        @Override
+        public Entry<Metric, Long> next() {
+            if (ix >= order.length) {
+                throw new NoSuchElementException();
+            }
+            int slot = order[ix];
+            advance();
+            return new SimpleImmutableEntry<>(MetricSlots.metricFor(slot), values[slot]);
+        }
+    }
+}
@@ -41,4 +41,21 @@ public interface MultiMetric<N extends Number> {
     default void addTime(Duration time) {
         add(time.toMillis());
     }
+
+    /**
+     * Add a value along with an opaque object identifying its source, such
+     * as a request id, which implementations that capture exemplars may
+     * retain and pass to an ExemplarConsumer; the default implementation
+     * ignores the exemplar.
+     *
+     * @param value A value
+     * @param exemplar An exemplar, or null
+     */
+    default void add(long value, Object exemplar) {
+        add(value);
+    }
+
+    default void addTime(Duration time, Object exemplar) {
+        add(time.toMillis(), exemplar);
+    }
 }
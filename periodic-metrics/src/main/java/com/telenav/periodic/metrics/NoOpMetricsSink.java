@@ -27,4 +27,9 @@ final class NoOpMetricsSink implements MetricsSink {
         // do nothing
     }
 
+    @Override
+    public void onMetric(int slot, long amount) {
+        // do nothing
+    }
+
 }
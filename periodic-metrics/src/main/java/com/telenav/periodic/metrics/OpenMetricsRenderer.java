@@ -0,0 +1,265 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.mastfrog.settings.Settings;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_OPENMETRICS_PREFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Renders the most recently emitted values of every metrics period in
+ * OpenMetrics (Prometheus) text format, for pull-based collection.
+ * <p>
+ * Each metric's family name is its logging name (prefixed with the value of
+ * <code>openmetrics.prefix</code> if set), with an <code>operation</code>
+ * label for OperationMetrics. Metrics which are <code>isCumulative()</code>
+ * are counters, rendered once as <code>name_total</code> with the most recent
+ * value; all others, including counts of events, which are reset at the end of
+ * each period and so are not monotonic, are gauges with a <code>period</code>
+ * label.
+ * </p>
+ * <p>
+ * Rendering reads immutable copies of each period's last values, so it
+ * allocates in proportion to the number of metrics, and should not be done on
+ * an event loop; the bytes of each series' name and labels are computed once
+ * and cached, and output is written into a reused buffer which is copied for
+ * each call.
+ * </p>
+ * <p>
+ * Values are only available for periods which have been emitted, which
+ * requires that an OutboundMetricsSink other than the default no-op one be
+ * bound.
+ * </p>
+ */
+@Singleton
+public final class OpenMetricsRenderer {
+
+    /**
+     * The content type of the rendered output.
+     */
+    public static final String CONTENT_TYPE
+            = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final byte[] EOF = "# EOF\n".getBytes(UTF_8);
+    private static final byte[] TYPE = "# TYPE ".getBytes(UTF_8);
+    private static final byte[] GAUGE = " gauge\n".getBytes(UTF_8);
+    private static final byte[] COUNTER = " counter\n".getBytes(UTF_8);
+    private final Function<? super MetricsPeriod, ? extends Map<Metric, Long>> lastValues;
+    private final MetricsPeriod[] periods;
+    private final String prefix;
+    private final Map<Metric, Series> seriesByMetric = new HashMap<>();
+    private final Map<String, byte[]> families = new HashMap<>();
+    private final List<Series> series = new ArrayList<>();
+    private byte[] buffer = new byte[16384];
+    private int length;
+
+    @Inject
+    OpenMetricsRenderer(MetricsSinks sinks, Settings settings) {
+        this(sinks, sinks.periods(), settings.getString(SETTINGS_KEY_OPENMETRICS_PREFIX, ""));
+    }
+
+    OpenMetricsRenderer(Function<? super MetricsPeriod, ? extends Map<Metric, Long>> lastValues,
+            List<? extends MetricsPeriod> periods, String prefix) {
+        this.lastValues = lastValues;
+        this.periods = periods.toArray(MetricsPeriod[]::new);
+        this.prefix = prefix == null || prefix.isEmpty() ? "" : sanitize(prefix) + "_";
+    }
+
+    /**
+     * Render the current values.
+     *
+     * @return The bytes of an OpenMetrics text document
+     */
+    public synchronized byte[] render() {
+        boolean added = false;
+        for (Series s : series) {
+            s.clear();
+        }
+        for (int i = 0; i < periods.length; i++) {
+            for (Map.Entry<Metric, Long> e : lastValues.apply(periods[i]).entrySet()) {
+                Series s = seriesByMetric.get(e.getKey());
+                if (s == null) {
+                    s = new Series(e.getKey());
+                    seriesByMetric.put(e.getKey(), s);
+                    series.add(s);
+                    added = true;
+                }
+                s.set(i, e.getValue());
+            }
+        }
+        if (added) {
+            // Samples of a family must be contiguous
+            series.sort(Series::compareTo);
+        }
+        length = 0;
+        byte[] lastFamily = null;
+        for (Series s : series) {
+            if (!s.isEmpty()) {
+                if (s.family != lastFamily) {
+                    write(TYPE);
+                    write(s.family);
+                    write(s.counter ? COUNTER : GAUGE);
+                    lastFamily = s.family;
+                }
+                s.writeTo(this);
+            }
+        }
+        write(EOF);
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private void ensureCapacity(int additional) {
+        if (length + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + additional));
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void write(long value) {
+        ensureCapacity(21);
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value).getBytes(UTF_8));
+            return;
+        }
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private byte[] family(String name) {
+        return families.computeIfAbsent(prefix + sanitize(name), nm -> nm.getBytes(UTF_8));
+    }
+
+    static String sanitize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '_' || c == ':' || (i > 0 && c >= '0' && c <= '9');
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private final class Series implements Comparable<Series> {
+
+        private final String name;
+        private final byte[] family;
+        private final boolean counter;
+        private final byte[][] linePrefixes = new byte[periods.length][];
+        private final long[] values = new long[periods.length];
+        private final boolean[] present = new boolean[periods.length];
+
+        Series(Metric metric) {
+            String labels;
+            if (metric instanceof OperationMetric<?, ?> om) {
+                family = family(om.metricLoggingName());
+                labels = "operation=\"" + escapeLabelValue(om.operation().name()
+                        .toLowerCase().replace('_', '-')) + "\",";
+            } else {
+                family = family(metric.loggingName());
+                labels = "";
+            }
+            counter = metric.isCumulative();
+            String familyName = new String(family, UTF_8);
+            name = familyName + "{" + labels;
+            if (counter) {
+                // The same running total, whichever period it was emitted for
+                String line = labels.isEmpty() ? familyName + "_total "
+                        : familyName + "_total{" + labels.substring(0, labels.length() - 1) + "} ";
+                linePrefixes[0] = line.getBytes(UTF_8);
+            } else {
+                for (int i = 0; i < periods.length; i++) {
+                    linePrefixes[i] = (name + "period=\"" + periods[i].loggingName() + "\"} ")
+                            .getBytes(UTF_8);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(present, false);
+        }
+
+        void set(int periodIndex, long value) {
+            values[periodIndex] = value;
+            present[periodIndex] = true;
+        }
+
+        boolean isEmpty() {
+            for (boolean p : present) {
+                if (p) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void writeTo(OpenMetricsRenderer renderer) {
+            if (counter) {
+                long max = Long.MIN_VALUE;
+                for (int i = 0; i < present.length; i++) {
+                    if (present[i]) {
+                        max = Math.max(max, values[i]);
+                    }
+                }
+                renderer.write(linePrefixes[0]);
+                renderer.write(max);
+                renderer.ensureCapacity(1);
+                renderer.buffer[renderer.length++] = '\n';
+                return;
+            }
+            for (int i = 0; i < present.length; i++) {
+                if (present[i]) {
+                    renderer.write(linePrefixes[i]);
+                    renderer.write(values[i]);
+                    renderer.ensureCapacity(1);
+                    renderer.buffer[renderer.length++] = '\n';
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Series o) {
+            return name.compareTo(o.name);
+        }
+    }
+}
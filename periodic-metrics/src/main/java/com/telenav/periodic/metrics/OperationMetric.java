@@ -28,12 +28,23 @@ public final class OperationMetric<Op extends Enum<Op>, M extends Enum<M> & Metr
 
     private final Op operation;
     private final M metric;
+    private final Enum<?> qualifier;
     private final String name;
+    // Slots are per-JVM, so not serialized; stored as slot + 1 so the
+    // default value of zero means unassigned
+    private transient int slotPlusOne;
 
     OperationMetric(Op operation, M metric) {
+        this(operation, null, metric);
+    }
+
+    OperationMetric(Op operation, Enum<?> qualifier, M metric) {
         this.operation = operation;
+        this.qualifier = qualifier;
         this.metric = metric;
-        name = operation.name() + "." + metric.name();
+        name = qualifier == null
+                ? operation.name() + "." + metric.name()
+                : operation.name() + "." + qualifier.name() + "." + metric.name();
     }
 
     /**
@@ -57,11 +68,33 @@ public final class OperationMetric<Op extends Enum<Op>, M extends Enum<M> & Metr
         return metric;
     }
 
+    /**
+     * The logging name of the metric without the operation, including the
+     * qualifier if there is one - what sinks which report the operation
+     * separately, as a tag or label, name the metric.
+     *
+     * @return A name
+     */
+    public String metricLoggingName() {
+        return qualifier == null ? metric.loggingName()
+                : qualifier.name().toLowerCase().replace('_', '-') + "." + metric.loggingName();
+    }
+
     @Override
     public String name() {
         return name;
     }
 
+    @Override
+    public int slot() {
+        // Benign race - every thread computes the same value
+        int result = slotPlusOne;
+        if (result == 0) {
+            slotPlusOne = result = MetricSlots.slotOf(this) + 1;
+        }
+        return result - 1;
+    }
+
     @Override
     public boolean omitIfNegative() {
         return metric.omitIfNegative();
@@ -77,6 +110,11 @@ public final class OperationMetric<Op extends Enum<Op>, M extends Enum<M> & Metr
         return false;
     }
 
+    @Override
+    public boolean isCumulative() {
+        return metric.isCumulative();
+    }
+
     @Override
     public String toString() {
         return loggingName();
@@ -94,7 +132,7 @@ public final class OperationMetric<Op extends Enum<Op>, M extends Enum<M> & Metr
         } else if (o == null || !(o instanceof Metric)) {
             return false;
         } else if (o instanceof OperationMetric om) {
-            return om.metric == metric && om.operation == operation;
+            return om.metric == metric && om.operation == operation && om.qualifier == qualifier;
         }
         Metric other = (Metric) o;
         return name().equals(other.name());
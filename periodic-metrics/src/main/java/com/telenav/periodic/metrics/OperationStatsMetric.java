@@ -18,11 +18,13 @@ package com.telenav.periodic.metrics;
 import com.mastfrog.concurrent.FlipFlop;
 import com.mastfrog.concurrent.random.SampleProbability;
 import com.mastfrog.concurrent.stats.LongStatisticCollector;
-import static com.mastfrog.util.collections.CollectionUtils.immutableSetOf;
 import com.mastfrog.util.collections.LongList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
 import java.util.function.BooleanSupplier;
 import javax.annotation.Nullable;
@@ -30,7 +32,23 @@ import javax.annotation.Nullable;
 /**
  * MultiMetric which collects request timings and emits computed statistics from
  * all of the timings taken for a period. Emits standard statistical metrics
- * such as p10, median, p90, p99, min, max, mean, count.
+ * such as p10, median, p90, p99, min, max, mean, count; the set of percentiles
+ * emitted can be specified in the constructor.
+ * <p>
+ * Optionally, the metric can also keep the slowest few samples of each period
+ * together with an exemplar such as the request id passed to
+ * <code>add(long, Object)</code>; these are passed after the highest
+ * percentile's value to consumers which implement ExemplarConsumer, so an
+ * outlier in the p99 can be traced to the requests responsible for it.
+ * </p>
+ * <p>
+ * Metrics created with a SampleBudget size themselves adaptively: the number
+ * of samples is only a starting point, and at the end of each period the
+ * metric grows to hold the number of timings it actually saw (plus some
+ * headroom), or shrinks by up to half if it saw far fewer, taking samples from
+ * or returning them to the budget. If the budget cannot cover the traffic, the
+ * next period randomly samples timings at a rate which fits.
+ * </p>
  *
  * @author Tim Boudreau
  */
@@ -38,19 +56,21 @@ public final class OperationStatsMetric<Op extends Enum<Op>> implements MultiMet
 
     public static final int DEFAULT_SAMPLES = 2048;
     private final Op operation;
-    private final FlipFlop<LongStatisticCollector> collector;
-    private final int samples;
-    private final Metric median;
+    private volatile FlipFlop<LongStatisticCollector> collector;
+    private volatile int samples;
     private final Metric min;
     private final Metric max;
     private final Metric mean;
-    private final Metric p90;
-    private final Metric p10;
-    private final Metric p99;
     private final Metric count;
+    private final double[] percentiles;
+    private final Metric[] percentileMetrics;
+    private final Metric exemplarMetric;
     private final PercentileMethod percentileMethod;
     private final LongList list;
-    private final boolean isSampled;
+    private final FlipFlop<ExemplarReservoir> exemplars;
+    private final SampleBudget budget;
+    private final LongAdder observed;
+    private SampleProbability probability;
 
     /**
      * Create a metric using DEFAULT_SAMPLES samples.
@@ -80,20 +100,97 @@ public final class OperationStatsMetric<Op extends Enum<Op>> implements MultiMet
      */
     public OperationStatsMetric(Op operation, int samples, @Nullable SampleProbability probability,
             PercentileMethod percentileCalculation) {
+        this(operation, samples, probability, percentileCalculation, 0);
+    }
+
+    /**
+     * Create an OperationStatsMetric for a given operation which captures
+     * exemplars for the slowest samples in each period.
+     *
+     * @param operation The operation
+     * @param samples The number of samples to keep between polls
+     * @param probability - the probability of taking a sample, given input
+     * @param percentileCalculation The algorithm to use to compute percentile
+     * values
+     * @param exemplars The number of slowest samples to retain exemplars for
+     * in each period - if zero, exemplars are ignored
+     */
+    public OperationStatsMetric(Op operation, int samples, @Nullable SampleProbability probability,
+            PercentileMethod percentileCalculation, int exemplars) {
+        this(operation, samples, probability, percentileCalculation, exemplars,
+                StatisticalMetrics.DEFAULT_PERCENTILES);
+    }
+
+    /**
+     * Create an OperationStatsMetric for a given operation which emits a
+     * specific set of percentiles.
+     *
+     * @param operation The operation
+     * @param samples The number of samples to keep between polls
+     * @param probability - the probability of taking a sample, given input
+     * @param percentileCalculation The algorithm to use to compute percentile
+     * values
+     * @param exemplars The number of slowest samples to retain exemplars for
+     * in each period - if zero, exemplars are ignored
+     * @param percentiles The percentiles to emit - members of the set which
+     * are not percentiles, such as MIN, are ignored (min, max and mean are
+     * always emitted)
+     */
+    public OperationStatsMetric(Op operation, int samples, @Nullable SampleProbability probability,
+            PercentileMethod percentileCalculation, int exemplars, Set<StatisticalMetrics> percentiles) {
+        this(operation, samples, probability, null, percentileCalculation, exemplars, percentiles);
+    }
+
+    /**
+     * Create an OperationStatsMetric whose number of samples adapts to the
+     * traffic observed in each period, within a budget shared with other
+     * metrics.
+     *
+     * @param operation The operation
+     * @param budget The budget
+     * @param initialSamples The number of samples to start with, which are
+     * taken from the budget, if available
+     * @param percentileCalculation The algorithm to use to compute percentile
+     * values
+     * @param exemplars The number of slowest samples to retain exemplars for
+     * in each period - if zero, exemplars are ignored
+     * @param percentiles The percentiles to emit
+     */
+    public OperationStatsMetric(Op operation, SampleBudget budget, int initialSamples,
+            PercentileMethod percentileCalculation, int exemplars, Set<StatisticalMetrics> percentiles) {
+        this(operation, budget.resize(0, initialSamples), null, budget, percentileCalculation,
+                exemplars, percentiles);
+    }
+
+    private OperationStatsMetric(Op operation, int samples, @Nullable SampleProbability probability,
+            @Nullable SampleBudget budget, PercentileMethod percentileCalculation, int exemplars,
+            Set<StatisticalMetrics> percentiles) {
+        if (exemplars < 0) {
+            throw new IllegalArgumentException("Negative exemplar count " + exemplars);
+        }
         this.operation = operation;
         this.samples = samples;
-        this.isSampled = probability != null;
+        this.probability = probability;
+        this.budget = budget;
+        this.observed = budget == null ? null : new LongAdder();
         this.percentileMethod = percentileCalculation == null ? PercentileMethod.INTERPOLATED : percentileCalculation;
         collector = statisticCollectorFlipFlop(samples, probability);
         list = LongList.create(samples);
-        median = Metric.operationMetric(operation, StatisticalMetrics.MEDIAN);
         min = Metric.operationMetric(operation, StatisticalMetrics.MIN);
         max = Metric.operationMetric(operation, StatisticalMetrics.MAX);
         mean = Metric.operationMetric(operation, StatisticalMetrics.MEAN);
-        p90 = Metric.operationMetric(operation, StatisticalMetrics.P90);
-        p10 = Metric.operationMetric(operation, StatisticalMetrics.P10);
-        p99 = Metric.operationMetric(operation, StatisticalMetrics.P99);
         count = Metric.operationMetric(operation, BuiltInMetrics.REQUESTS);
+        StatisticalMetrics[] sorted = StatisticalMetrics.sortedPercentiles(percentiles);
+        this.percentiles = new double[sorted.length];
+        percentileMetrics = new Metric[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.percentiles[i] = sorted[i].percentile().get();
+            percentileMetrics[i] = Metric.operationMetric(operation, sorted[i]);
+        }
+        exemplarMetric = sorted.length == 0 ? max : percentileMetrics[sorted.length - 1];
+        this.exemplars = exemplars == 0 ? null
+                : new FlipFlop<>(new ExemplarReservoir(exemplars),
+                        new ExemplarReservoir(exemplars), ExemplarReservoir::reset);
     }
 
     public Op operation() {
@@ -106,21 +203,64 @@ public final class OperationStatsMetric<Op extends Enum<Op>> implements MultiMet
 
     public static <O extends Enum<O>> Set<OperationStatsMetric<O>> forEnum(Class<O> opEnumType, int samples,
             @Nullable SampleProbability randomlySample, PercentileMethod percentileCalculation) {
+        return forEnum(opEnumType, samples, randomlySample, percentileCalculation, 0);
+    }
+
+    public static <O extends Enum<O>> Set<OperationStatsMetric<O>> forEnum(Class<O> opEnumType, int samples,
+            @Nullable SampleProbability randomlySample, PercentileMethod percentileCalculation,
+            int exemplars) {
+        return forEnum(opEnumType, samples, randomlySample, percentileCalculation, exemplars,
+                StatisticalMetrics.DEFAULT_PERCENTILES);
+    }
+
+    public static <O extends Enum<O>> Set<OperationStatsMetric<O>> forEnum(Class<O> opEnumType, int samples,
+            @Nullable SampleProbability randomlySample, PercentileMethod percentileCalculation,
+            int exemplars, Set<StatisticalMetrics> percentiles) {
         Set<OperationStatsMetric<O>> result = new HashSet<>();
         for (O o : opEnumType.getEnumConstants()) {
-            result.add(new OperationStatsMetric<>(o, samples, randomlySample, percentileCalculation));
+            result.add(new OperationStatsMetric<>(o, samples, randomlySample, percentileCalculation,
+                    exemplars, percentiles));
         }
         return result;
     }
 
+    /**
+     * The number of samples currently held.
+     *
+     * @return The number of samples
+     */
+    public int samples() {
+        return samples;
+    }
+
     @Override
     public void add(long millis) {
         collector.get().accept(millis);
+        if (observed != null) {
+            observed.increment();
+        }
+    }
+
+    @Override
+    public void add(long millis, Object exemplar) {
+        add(millis);
+        if (exemplars != null && exemplar != null) {
+            exemplars.get().offer(millis, exemplar);
+        }
     }
 
     @Override
     public boolean get(BiConsumer<Metric, Long> c) {
-        LongStatisticCollector stats = collector.flip();
+        FlipFlop<LongStatisticCollector> current = collector;
+        long seen = -1;
+        if (budget != null) {
+            // Swap in resized collectors for the next period before flipping
+            // the current ones, so nothing is written to the collector which
+            // would have become active while we read the other
+            seen = observed.sumThenReset();
+            adapt(seen);
+        }
+        LongStatisticCollector stats = current.flip();
         LongList values = list;
         list.clear();
         boolean result = result = stats.withStatsAndValues(values::add, (minimum, maximum, sum, count) -> {
@@ -128,87 +268,68 @@ public final class OperationStatsMetric<Op extends Enum<Op>> implements MultiMet
             c.accept(max, maximum);
             c.accept(mean, sum / count);
         });
-        c.accept(this.count, (long) values.size());
+        // If timings were randomly sampled, the values are only the sample,
+        // so report the number actually seen
+        c.accept(this.count, seen >= 0 ? seen : (long) values.size());
         if (!values.isEmpty()) {
             values.sort();
-            switch (values.size()) {
-                case 0:
-                    c.accept(this.count, 0L);
-                    break;
-                case 1:
-                    long only = values.getAsLong(0);
-                    c.accept(this.p10, only);
-                    c.accept(this.median, only);
-                    c.accept(this.p90, only);
-                    c.accept(this.p99, only);
-                    break;
-                case 2:
-                    long first = values.getAsLong(0);
-                    long sec = values.getAsLong(1);
-                    c.accept(this.p10, first);
-                    c.accept(this.median, (first + sec / 2));
-                    c.accept(this.p90, sec);
-                    c.accept(this.p99, sec);
-                    break;
-                case 3:
-                    long second = values.getAsLong(1);
-                    c.accept(this.p10, values.getAsLong(0));
-                    c.accept(this.median, second);
-                    c.accept(this.p90, values.getAsLong(2));
-                    c.accept(this.p99, values.getAsLong(2));
-                    break;
-                case 4:
-                    long p90avg = (values.last() + values.getAsLong(values.size() - 2)) / 2;
-                    long midavg = (values.get(1) + values.get(2)) / 2;
-                    c.accept(this.p10, values.get(0));
-                    c.accept(this.median, midavg);
-                    c.accept(this.p90, p90avg);
-                    c.accept(this.p99, values.last());
-                    break;
-                case 5:
-                    long p90avg5 = (values.last() + values.getAsLong(values.size() - 2)) / 2;
-                    c.accept(this.p10, values.get(0));
-                    c.accept(this.median, values.get(2));
-                    c.accept(this.p90, p90avg5);
-                    c.accept(this.p99, values.get(4));
-                    break;
-                case 10:
-                    c.accept(this.p10, values.get(0));
-                    c.accept(this.median, values.get(4));
-                    c.accept(this.p90, values.get(8));
-                    c.accept(this.p99, values.get(9));
-                    break;
-                case 100:
-                    c.accept(this.p10, values.get(9));
-                    c.accept(this.median, values.get(49));
-                    c.accept(this.p90, values.get(89));
-                    c.accept(this.p99, values.get(99));
-                    break;
-                case 200:
-                    c.accept(this.p10, values.get(9 * 2));
-                    c.accept(this.median, values.get(49 * 2));
-                    c.accept(this.p90, values.get(89 * 2));
-                    c.accept(this.p99, values.get(99 * 2));
-                    break;
-                case 1000:
-                    c.accept(this.p10, values.get(99));
-                    c.accept(this.median, values.get(499));
-                    c.accept(this.p90, values.get(890));
-                    c.accept(this.p99, values.get(990));
-                    break;
-                default:
-                    c.accept(this.p10, percentileMethod.value(0.1, values));
-                    c.accept(this.median, percentileMethod.value(0.5, values));
-                    c.accept(this.p90, percentileMethod.value(0.9, values));
-                    c.accept(this.p99, percentileMethod.value(0.99, values));
-                    break;
+            // Spline interpolation needs at least three points, and there is
+            // nothing to interpolate between with fewer
+            PercentileMethod method = values.size() < 3 ? PercentileMethod.NEAREST : percentileMethod;
+            for (int i = 0; i < percentiles.length; i++) {
+                c.accept(percentileMetrics[i], method.value(percentiles[i], values));
+            }
+        }
+        if (exemplars != null) {
+            // Always flip, so the next period starts with an empty reservoir
+            ExemplarReservoir res = exemplars.flip();
+            if (c instanceof ExemplarConsumer && !values.isEmpty()) {
+                ExemplarConsumer ec = (ExemplarConsumer) c;
+                res.forEach(ex -> ec.exemplar(exemplarMetric, ex));
             }
         }
         return result;
     }
 
+    private void adapt(long seen) {
+        int current = samples;
+        int size = budget.resize(current, desiredSamples(current, seen));
+        SampleProbability prob = size < seen
+                ? SampleProbability.nearest((double) size / seen)
+                : null;
+        if (size != current || prob != probability) {
+            samples = size;
+            probability = prob;
+            collector = statisticCollectorFlipFlop(size, prob);
+        }
+    }
+
+    /**
+     * Compute the number of samples to hold in the next period: enough for
+     * the number of timings seen in the last one plus a quarter, if it
+     * overflowed; otherwise shrink by at most half when less than half are
+     * needed, so a single quiet period does not throw away most of the
+     * capacity a busy operation needs.
+     *
+     * @param current The current number of samples
+     * @param seen The number of timings seen in the last period
+     * @return A number of samples
+     */
+    static int desiredSamples(int current, long seen) {
+        long wanted = Math.min(Integer.MAX_VALUE - 8, seen + (seen >> 2));
+        if (seen > current) {
+            return (int) wanted;
+        }
+        if (wanted < current / 2) {
+            return Math.max(SampleBudget.MIN_SAMPLES, Math.max((int) wanted, current / 2));
+        }
+        return current;
+    }
+
     public Collection<? extends Metric> metrics() {
-        return immutableSetOf(median, min, max, mean, p90, count, p10, p99);
+        Set<Metric> result = new HashSet<>(Arrays.asList(percentileMetrics));
+        Collections.addAll(result, min, max, mean, count);
+        return Collections.unmodifiableSet(result);
     }
 
     /**
@@ -102,7 +102,7 @@ public enum PercentileMethod {
 
     private long valueNearest(double percentile, LongList series) {
         int index = (int) Math.round(series.size() * percentile);
-        return series.get(index - 1);
+        return series.get(Math.max(0, Math.min(series.size() - 1, index - 1)));
     }
 
     private long valueInterpolated(double percentile, LongList series) {
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A global limit on the number of timing samples which adaptively sized
+ * OperationStatsMetrics may hold, shared across all of the operations (and
+ * periods) which use it, so that rarely used operations give up memory to
+ * busy ones, and the total stays bounded however traffic is distributed.
+ * <p>
+ * Each metric is always granted at least MIN_SAMPLES, even if the budget is
+ * exhausted; the limit applies to growth beyond that. Each sample occupies a
+ * slot in each of the two collectors a metric alternates between.
+ * </p>
+ */
+public final class SampleBudget {
+
+    /**
+     * The minimum number of samples any metric is granted.
+     */
+    public static final int MIN_SAMPLES = 32;
+    private final long limit;
+    private final AtomicLong allocated = new AtomicLong();
+
+    /**
+     * Create a budget.
+     *
+     * @param limit The total number of samples which may be allocated
+     */
+    public SampleBudget(long limit) {
+        if (limit < MIN_SAMPLES) {
+            throw new IllegalArgumentException("Budget must be at least " + MIN_SAMPLES
+                    + " but got " + limit);
+        }
+        this.limit = limit;
+    }
+
+    public long limit() {
+        return limit;
+    }
+
+    public long allocated() {
+        return allocated.get();
+    }
+
+    public long available() {
+        return Math.max(0, limit - allocated.get());
+    }
+
+    /**
+     * Change the number of samples a metric holds, giving back samples if
+     * shrinking, and taking as many as are available, up to the number
+     * wanted, if growing.
+     *
+     * @param current The number of samples the caller currently holds from
+     * this budget
+     * @param wanted The number it would like to hold
+     * @return The number it now holds
+     */
+    int resize(int current, int wanted) {
+        wanted = Math.max(MIN_SAMPLES, wanted);
+        if (wanted <= current) {
+            allocated.addAndGet(wanted - current);
+            return wanted;
+        }
+        for (;;) {
+            long old = allocated.get();
+            long grant = Math.min(wanted - current, Math.max(0, limit - old));
+            grant = Math.max(grant, MIN_SAMPLES - current);
+            if (allocated.compareAndSet(old, old + grant)) {
+                return current + (int) grant;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SampleBudget(" + allocated() + " of " + limit + ")";
+    }
+}
@@ -17,31 +17,68 @@ package com.telenav.periodic.metrics;
 
 import com.mastfrog.util.strings.Strings;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.function.BiConsumer;
-import java.util.function.Supplier;
 
 /**
- * A simple map based metrics sink.
+ * A simple metrics sink which stores incremental metrics in an array of
+ * LongAdders indexed by Metric.slot(). Two such tables are allocated up front
+ * and alternated between, so emitting a period's values allocates nothing.
  *
  * @author Tim Boudreau
  */
 final class SimpleMetricsSink implements MetricsSink {
 
-    private final AtomicReference<Map<Metric, LongAdder>> metrics;
+    private final AtomicReference<LongAdder[]> table;
+    private final LongAdder[][] tables;
+    private final Metric[] metrics;
+    private final int tableSize;
     private final List<OnDemandMetric<Long>> onDemandMetrics = new ArrayList<>(12);
     private final String name;
-    private final Supplier<Map<Metric, LongAdder>> mapFactory;
     private final List<MultiMetric<Long>> multiMetrics = new ArrayList<>(32);
+    private final Map<MergeableMultiMetric<Long>, List<MergeableMultiMetric<Long>>> rollups
+            = new IdentityHashMap<>();
+    private final List<SimpleMetricsSink> rollupSinks = new ArrayList<>(3);
+    // Values emitted by mergeable multi-metrics in mergeRollups(), replayed
+    // in order by additionalMetrics(); mergedEnds holds, for each entry in
+    // multiMetrics, the offset just past the last value it emitted
+    private final BiConsumer<Metric, Long> mergedCollector = this::collectMerged;
+    private Metric[] mergedKinds = new Metric[32];
+    private long[] mergedValues = new long[32];
+    private int[] mergedEnds = new int[0];
+    private int mergedCount;
+    private boolean merged;
 
-    SimpleMetricsSink(String name, Supplier<Map<Metric, LongAdder>> mapFactory) {
+    SimpleMetricsSink(String name, Collection<? extends Metric> metrics) {
         this.name = name;
-        this.mapFactory = mapFactory;
-        metrics = new AtomicReference<>(mapFactory.get());
+        List<Metric> incremental = new ArrayList<>(metrics.size());
+        int maxSlot = -1;
+        for (Metric m : metrics) {
+            if (!m.isOnDemand()) {
+                incremental.add(m);
+                maxSlot = Math.max(maxSlot, m.slot());
+            }
+        }
+        // Sort once here, so emitted values are always in a stable order
+        incremental.sort(Metric::compare);
+        this.metrics = incremental.toArray(Metric[]::new);
+        this.tableSize = maxSlot + 1;
+        tables = new LongAdder[][]{newTable(), newTable()};
+        table = new AtomicReference<>(tables[0]);
+    }
+
+    private LongAdder[] newTable() {
+        LongAdder[] result = new LongAdder[tableSize];
+        for (Metric m : metrics) {
+            result[m.slot()] = new LongAdder();
+        }
+        return result;
     }
 
     SimpleMetricsSink addMultiMetrics(Collection<? extends MultiMetric<Long>> c) {
@@ -54,25 +91,141 @@ final class SimpleMetricsSink implements MetricsSink {
         return this;
     }
 
+    /**
+     * Make the passed sink a rollup of this one - counter values reset from
+     * this sink will be passed to <code>rollUp()</code> and added to it, and
+     * any mergeable multi-metrics in this sink get a rollup in the target
+     * sink which their snapshots are merged into.
+     *
+     * @param target A sink for a longer period
+     * @return this
+     */
+    @SuppressWarnings("unchecked")
+    SimpleMetricsSink rollUpInto(SimpleMetricsSink target) {
+        for (MultiMetric<Long> m : multiMetrics) {
+            if (m instanceof MergeableMultiMetric<?>) {
+                MergeableMultiMetric<Long> mm = (MergeableMultiMetric<Long>) m;
+                MergeableMultiMetric<Long> rollup = mm.newRollup();
+                rollups.computeIfAbsent(mm, x -> new ArrayList<>(3)).add(rollup);
+                target.multiMetrics.add(rollup);
+            }
+        }
+        rollupSinks.add(target);
+        return this;
+    }
+
+    void rollUp(Metric kind, long amount) {
+        int slot = kind.slot();
+        for (int i = 0; i < rollupSinks.size(); i++) {
+            rollupSinks.get(i).onMetric(slot, amount);
+        }
+    }
+
+    /**
+     * Snapshot each mergeable multi-metric which has rollups, merging its
+     * snapshot into them, and hold the values it emitted for the next call to
+     * <code>additionalMetrics()</code>. Called before a period's batch is
+     * handed to an OutboundMetricsSink, so rollups get their values whether
+     * or not it consumes the batch. Values are kept in arrays reused from
+     * period to period.
+     */
+    @SuppressWarnings("unchecked")
+    void mergeRollups() {
+        if (rollups.isEmpty()) {
+            return;
+        }
+        if (mergedEnds.length < multiMetrics.size()) {
+            mergedEnds = new int[multiMetrics.size()];
+        }
+        mergedCount = 0;
+        for (int i = 0; i < multiMetrics.size(); i++) {
+            MultiMetric<Long> m = multiMetrics.get(i);
+            List<MergeableMultiMetric<Long>> targets = rollups.get(m);
+            if (targets != null) {
+                ((MergeableMultiMetric<Long>) m).get(mergedCollector, targets);
+            }
+            mergedEnds[i] = mergedCount;
+        }
+        merged = true;
+    }
+
+    /**
+     * Discard any values held by <code>mergeRollups()</code> which were not
+     * consumed, so a later call to <code>additionalMetrics()</code> takes
+     * fresh snapshots.
+     */
+    void discardMerged() {
+        merged = false;
+    }
+
+    private void collectMerged(Metric kind, Long val) {
+        if (mergedCount == mergedKinds.length) {
+            mergedKinds = Arrays.copyOf(mergedKinds, mergedCount * 2);
+            mergedValues = Arrays.copyOf(mergedValues, mergedCount * 2);
+        }
+        mergedKinds[mergedCount] = kind;
+        mergedValues[mergedCount++] = val;
+    }
+
     public String name() {
         return name;
     }
 
     @Override
     public void onMetric(Metric kind, long amount) {
-        LongAdder adder = metrics.get().get(kind);
-        if (adder == null) {
-            return;
+        onMetric(kind.slot(), amount);
+    }
+
+    @Override
+    public void onMetric(int slot, long amount) {
+        LongAdder[] adders = table.get();
+        if (slot >= 0 && slot < adders.length) {
+            LongAdder adder = adders[slot];
+            if (adder != null) {
+                adder.add(amount);
+            }
         }
-        metrics.get().get(kind).add(amount);
     }
 
-    public Map<Metric, LongAdder> reset() {
-        return metrics.getAndSet(mapFactory.get());
+    /**
+     * The incremental metrics this sink collects, sorted by name.
+     *
+     * @return An array which must not be modified
+     */
+    Metric[] metrics() {
+        return metrics;
+    }
+
+    /**
+     * The size of the array needed to harvest values from this sink.
+     *
+     * @return A size
+     */
+    int tableSize() {
+        return tableSize;
     }
 
+    /**
+     * Switch writers to the other table, and collect the sum of every metric
+     * in the one that was current into the passed array, indexed by slot,
+     * resetting it in place for its next turn. A write which loses the race
+     * with the switch is not lost, but counted in the period after next.
+     *
+     * @param into An array of at least <code>tableSize()</code> elements
+     */
+    void harvest(long[] into) {
+        LongAdder[] old = table.get();
+        table.set(old == tables[0] ? tables[1] : tables[0]);
+        for (Metric m : metrics) {
+            int slot = m.slot();
+            into[slot] = old[slot].sumThenReset();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
     public void additionalMetrics(BiConsumer<Metric, Long> c) {
-        for (OnDemandMetric<Long> odm : onDemandMetrics) {
+        for (int i = 0; i < onDemandMetrics.size(); i++) {
+            OnDemandMetric<Long> odm = onDemandMetrics.get(i);
             long val = odm.get();
             Metric k = odm.kind();
             if (val == 0L && k.omitIfZero()) {
@@ -80,13 +233,29 @@ final class SimpleMetricsSink implements MetricsSink {
             }
             c.accept(k, val);
         }
-        for (MultiMetric<Long> m : multiMetrics) {
-            m.get(c);
+        boolean replay = merged;
+        merged = false;
+        int start = 0;
+        for (int i = 0; i < multiMetrics.size(); i++) {
+            MultiMetric<Long> m = multiMetrics.get(i);
+            List<MergeableMultiMetric<Long>> targets = rollups.get(m);
+            if (targets == null) {
+                m.get(c);
+            } else if (replay) {
+                for (int j = start; j < mergedEnds[i]; j++) {
+                    c.accept(mergedKinds[j], mergedValues[j]);
+                }
+            } else {
+                ((MergeableMultiMetric<Long>) m).get(c, targets);
+            }
+            if (replay) {
+                start = mergedEnds[i];
+            }
         }
     }
 
     @Override
     public String toString() {
-        return name + " with [" + Strings.join(',', metrics.get().keySet()) + "]";
+        return name + " with [" + Strings.join(',', Arrays.asList(metrics)) + "]";
     }
 }
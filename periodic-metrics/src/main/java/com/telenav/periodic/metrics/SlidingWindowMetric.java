@@ -0,0 +1,246 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import static com.mastfrog.util.preconditions.Checks.greaterThanZero;
+import static com.mastfrog.util.preconditions.Checks.notNull;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A metric whose recent values can be read at any moment, rather than only
+ * when a metrics period expires - for example, to read requests per second
+ * over the last ten seconds, or p99 latency over the last thirty, to make
+ * load-shedding decisions on the request path.
+ * <p>
+ * The span of time covered is divided into a ring of sub-windows, each with a
+ * counter and (optionally) a LogLinearHistogram of timings; writes go to the
+ * sub-window for the current time, which is lazily cleared when the ring
+ * wraps around to it, and reads combine the most recent sub-windows covering
+ * the requested duration, so the cost of a read is proportional to the number
+ * of sub-windows, and neither reads nor writes take a lock. Values are
+ * approximate at sub-window granularity: a query over ten seconds of a ring of
+ * one second sub-windows covers the nine previous whole seconds plus however
+ * much of the current second has elapsed.
+ * </p>
+ * <p>
+ * Register instances by returning them from
+ * <code>MetricsRegistry.slidingWindowMetrics()</code>; counts of the metric
+ * passed to the constructor which are written to the MetricsSink are then
+ * added automatically, and the metric can be looked up from the injectable
+ * <code>SlidingWindows</code>. Timings must be added by whatever code measures
+ * them, with <code>addTime()</code>.
+ * </p>
+ */
+public final class SlidingWindowMetric {
+
+    /**
+     * The maximum number of sub-windows.
+     */
+    public static final int MAX_SUB_WINDOWS = 64;
+    private final Metric metric;
+    private final long widthMillis;
+    private final int windows;
+    private final AtomicLongArray stamps;
+    private final LongAdder[] counts;
+    private final LogLinearHistogram[] timings;
+    private final LongSupplier clock;
+
+    /**
+     * Create a sliding window metric.
+     *
+     * @param metric The metric whose counts should be recorded
+     * @param span The total span of time covered, which is the longest
+     * duration which can be queried
+     * @param subWindows The number of sub-windows to divide the span into,
+     * which determines the granularity of reads
+     * @param recordTimings If true, allocate histograms for timings passed to
+     * <code>addTime()</code>
+     */
+    public SlidingWindowMetric(Metric metric, Duration span, int subWindows, boolean recordTimings) {
+        this(metric, span, subWindows, recordTimings, System::currentTimeMillis);
+    }
+
+    SlidingWindowMetric(Metric metric, Duration span, int subWindows, boolean recordTimings,
+            LongSupplier clock) {
+        this.metric = notNull("metric", metric);
+        this.clock = clock;
+        windows = greaterThanZero("subWindows", subWindows);
+        if (subWindows > MAX_SUB_WINDOWS) {
+            throw new IllegalArgumentException("At most " + MAX_SUB_WINDOWS
+                    + " sub-windows supported, but got " + subWindows);
+        }
+        widthMillis = span.toMillis() / subWindows;
+        if (widthMillis <= 0) {
+            throw new IllegalArgumentException("Span " + span + " too short for "
+                    + subWindows + " sub-windows");
+        }
+        stamps = new AtomicLongArray(subWindows);
+        counts = new LongAdder[subWindows];
+        timings = recordTimings ? new LogLinearHistogram[subWindows] : null;
+        for (int i = 0; i < subWindows; i++) {
+            stamps.set(i, -1);
+            counts[i] = new LongAdder();
+            if (recordTimings) {
+                timings[i] = new LogLinearHistogram();
+            }
+        }
+    }
+
+    /**
+     * The metric this window counts.
+     *
+     * @return A metric
+     */
+    public Metric metric() {
+        return metric;
+    }
+
+    /**
+     * The longest duration which can be queried.
+     *
+     * @return A duration
+     */
+    public Duration span() {
+        return Duration.ofMillis(widthMillis * windows);
+    }
+
+    /**
+     * Whether this window records timings and can be queried for percentiles.
+     *
+     * @return true if timings are recorded
+     */
+    public boolean recordsTimings() {
+        return timings != null;
+    }
+
+    /**
+     * Add to the count for the current sub-window.
+     *
+     * @param amount An amount
+     */
+    public void add(long amount) {
+        counts[current()].add(amount);
+    }
+
+    /**
+     * Record a timing in the current sub-window; this does not affect the
+     * count.
+     *
+     * @param millis A duration in milliseconds
+     */
+    public void addTime(long millis) {
+        if (timings != null) {
+            timings[current()].add(millis);
+        }
+    }
+
+    private int current() {
+        long epoch = clock.getAsLong() / widthMillis;
+        int ix = (int) (epoch % windows);
+        long stamp = stamps.get(ix);
+        // The first writer into a sub-window after the ring wraps around to
+        // it clears it; a write racing with the clear may be lost
+        if (stamp < epoch && stamps.compareAndSet(ix, stamp, epoch)) {
+            counts[ix].reset();
+            if (timings != null) {
+                timings[ix].reset();
+            }
+        }
+        return ix;
+    }
+
+    private int windowsFor(Duration over) {
+        long millis = over.toMillis();
+        long result = (millis + widthMillis - 1) / widthMillis;
+        return (int) Math.max(1, Math.min(windows, result));
+    }
+
+    private long mask(long epoch, int count) {
+        long result = 0;
+        for (int i = 0; i < count; i++) {
+            long e = epoch - i;
+            int ix = (int) Math.floorMod(e, (long) windows);
+            if (stamps.get(ix) == e) {
+                result |= 1L << ix;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the total count over a recent duration.
+     *
+     * @param over A duration, no longer than the span
+     * @return A count
+     */
+    public long count(Duration over) {
+        long mask = mask(clock.getAsLong() / widthMillis, windowsFor(over));
+        long result = 0;
+        for (int i = 0; i < windows; i++) {
+            if ((mask & (1L << i)) != 0) {
+                result += counts[i].sum();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the rate per second over a recent duration, based on the time
+     * actually elapsed in the sub-windows that cover it.
+     *
+     * @param over A duration, no longer than the span
+     * @return A rate
+     */
+    public double ratePerSecond(Duration over) {
+        long now = clock.getAsLong();
+        long epoch = now / widthMillis;
+        int count = windowsFor(over);
+        long mask = mask(epoch, count);
+        long total = 0;
+        for (int i = 0; i < windows; i++) {
+            if ((mask & (1L << i)) != 0) {
+                total += counts[i].sum();
+            }
+        }
+        long elapsed = ((count - 1) * widthMillis) + (now % widthMillis) + 1;
+        return (total * 1000D) / elapsed;
+    }
+
+    /**
+     * Get the value at a percentile of the timings recorded over a recent
+     * duration.
+     *
+     * @param percentile A percentile between 0 and 1
+     * @param over A duration, no longer than the span
+     * @return A value, or zero if no timings were recorded
+     * @throws IllegalStateException if this window does not record timings
+     */
+    public long valueAtPercentile(double percentile, Duration over) {
+        if (timings == null) {
+            throw new IllegalStateException(this + " does not record timings");
+        }
+        long mask = mask(clock.getAsLong() / widthMillis, windowsFor(over));
+        return LogLinearHistogram.valueAtPercentile(percentile, timings, mask);
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindow(" + metric + " " + windows + " x " + widthMillis + "ms)";
+    }
+}
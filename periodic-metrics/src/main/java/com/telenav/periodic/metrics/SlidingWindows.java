@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.telenav.periodic.metrics.MetricsRegistry.MetricsRegistrar;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Injectable lookup for the SlidingWindowMetrics registered by
+ * MetricsRegistries, which can be queried from any thread at any time - for
+ * example, to shed load when the request rate or tail latency over the last
+ * few seconds exceeds some threshold.
+ */
+@Singleton
+public final class SlidingWindows {
+
+    private static final Table NONE = new Table(-1, new SlidingWindowMetric[0]);
+    private final MetricsRegistrar registrar;
+    private volatile Table table = NONE;
+
+    @Inject
+    SlidingWindows(MetricsRegistrar registrar) {
+        this.registrar = registrar;
+    }
+
+    private SlidingWindowMetric[] bySlot() {
+        // Registries register themselves as they are constructed, which may
+        // be after the first use, so rebuild the table when more have been
+        int registrations = registrar.registrations();
+        Table result = table;
+        if (result.registrations != registrations) {
+            synchronized (this) {
+                result = table;
+                if (result.registrations != registrations) {
+                    result = build(registrations);
+                }
+            }
+        }
+        return result.bySlot;
+    }
+
+    private Table build(int registrations) {
+        List<SlidingWindowMetric> windows = new ArrayList<>();
+        if (!registrar.slidingWindowMetrics(windows)) {
+            // A registry registered in its superclass constructor has not
+            // finished initializing; use what is there and try again later
+            registrations = -1;
+        }
+        SlidingWindowMetric[] result = NONE.bySlot;
+        for (SlidingWindowMetric w : windows) {
+            int slot = w.metric().slot();
+            if (slot >= result.length) {
+                result = Arrays.copyOf(result, slot + 1);
+            }
+            if (result[slot] == null) {
+                result[slot] = w;
+            }
+        }
+        Table built = new Table(registrations, result);
+        table = built;
+        return built;
+    }
+
+    private static final class Table {
+
+        private final int registrations;
+        private final SlidingWindowMetric[] bySlot;
+
+        Table(int registrations, SlidingWindowMetric[] bySlot) {
+            this.registrations = registrations;
+            this.bySlot = bySlot;
+        }
+    }
+
+    /**
+     * Get the sliding window registered for a metric, if any.
+     *
+     * @param metric A metric
+     * @return A sliding window metric, if one is registered
+     */
+    public Optional<SlidingWindowMetric> forMetric(Metric metric) {
+        return Optional.ofNullable(get(metric.slot()));
+    }
+
+    /**
+     * Get the rate per second of a metric over a recent duration.
+     *
+     * @param metric A metric
+     * @param over A duration
+     * @return The rate, or zero if no sliding window is registered for the
+     * metric
+     */
+    public double ratePerSecond(Metric metric, Duration over) {
+        SlidingWindowMetric w = get(metric.slot());
+        return w == null ? 0 : w.ratePerSecond(over);
+    }
+
+    /**
+     * Get the value at some percentile of the timings recorded for a metric
+     * over a recent duration.
+     *
+     * @param metric A metric
+     * @param percentile A percentile between 0 and 1
+     * @param over A duration
+     * @return The value, or zero if no sliding window which records timings
+     * is registered for the metric
+     */
+    public long valueAtPercentile(Metric metric, double percentile, Duration over) {
+        SlidingWindowMetric w = get(metric.slot());
+        return w == null || !w.recordsTimings() ? 0 : w.valueAtPercentile(percentile, over);
+    }
+
+    private SlidingWindowMetric get(int slot) {
+        SlidingWindowMetric[] all = bySlot();
+        return slot >= 0 && slot < all.length ? all[slot] : null;
+    }
+
+    void onMetric(int slot, long amount) {
+        SlidingWindowMetric w = get(slot);
+        if (w != null) {
+            w.add(amount);
+        }
+    }
+}
@@ -19,17 +19,34 @@ import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 
 /**
- * The set of supported metrics emission periods.
+ * The set of standard metrics emission periods.  Additional periods can be
+ * registered as {@link MetricsPeriod}s.
  *
  * @author Tim Boudreau
  */
-public enum StandardMetricsPeriods {
+public enum StandardMetricsPeriods implements MetricsPeriod {
     ONE_MINUTE, FIVE_MINUTE, HOURLY, FOUR_HOUR;
 
+    @Override
     public Duration toDuration() {
         return interval().duration();
     }
 
+    @Override
+    public String loggingName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    @Override
+    public ChronoUnit unit() {
+        return interval().unit();
+    }
+
+    @Override
+    public int amount() {
+        return interval().amount();
+    }
+
     IntervalSpec interval() {
         switch (this) {
             case ONE_MINUTE:
@@ -45,20 +62,23 @@ public enum StandardMetricsPeriods {
         }
     }
 
-    static StandardMetricsPeriods valueFor(IntervalSpec spec) {
+    static MetricsPeriod valueFor(IntervalSpec spec) {
         for (StandardMetricsPeriods p : StandardMetricsPeriods.values()) {
             if (spec.equals(p.interval())) {
                 return p;
             }
         }
-        throw new IllegalArgumentException(spec + " does not match and standard period");
+        return new CustomMetricsPeriod(spec);
     }
 
     ClockInterval<SimpleMetricsSink> create(MetricsRegistry.MetricsRegistrar registrar, boolean omitGcMetrics) {
-        MetricsSinks.MetricsMapFactory factory = new MetricsSinks.MetricsMapFactory(registrar.metrics());
-        String name = name().toLowerCase().replace('_', '-');
-        IntervalSpec spec = interval();
-        SimpleMetricsSink sink = new SimpleMetricsSink(name, factory);
+        return create(this, registrar, omitGcMetrics);
+    }
+
+    static ClockInterval<SimpleMetricsSink> create(MetricsPeriod period,
+            MetricsRegistry.MetricsRegistrar registrar, boolean omitGcMetrics) {
+        IntervalSpec spec = new IntervalSpec(period.unit(), period.amount());
+        SimpleMetricsSink sink = new SimpleMetricsSink(period.loggingName(), registrar.metrics());
         if (!omitGcMetrics) {
             sink.includeGcMetrics();
         }
@@ -67,4 +87,18 @@ public enum StandardMetricsPeriods {
         return result;
     }
 
+    /**
+     * Create an interval whose sink is not written to directly, but is a
+     * rollup of the passed (shorter period) sink.
+     */
+    ClockInterval<SimpleMetricsSink> createRollup(SimpleMetricsSink of,
+            MetricsRegistry.MetricsRegistrar registrar, boolean omitGcMetrics) {
+        SimpleMetricsSink sink = new SimpleMetricsSink(loggingName(), registrar.metrics());
+        if (!omitGcMetrics) {
+            sink.includeGcMetrics();
+        }
+        of.rollUpInto(sink);
+        return new ClockInterval<>(interval(), sink);
+    }
+
 }
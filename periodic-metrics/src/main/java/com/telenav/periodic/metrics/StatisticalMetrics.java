@@ -15,12 +15,21 @@
  */
 package com.telenav.periodic.metrics;
 
+import static java.util.Collections.unmodifiableSet;
+import java.util.EnumSet;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Metric enum for use (generally) in combination with generated operation
  * enums, to collect metrics for individual HTTP operations. Percentiles may be
  * computed using any of the methods on PercentileMethod.
+ * <p>
+ * Which percentiles are emitted is configurable - OperationStatsMetric and
+ * HistogramStatsMetric accept a set of percentile constants, which defaults to
+ * DEFAULT_PERCENTILES; tail-latency SLOs may want P999 and P9999, which are
+ * only meaningful with enough samples (or with HistogramStatsMetric).
+ * </p>
  */
 public enum StatisticalMetrics implements Metric {
     /**
@@ -50,7 +59,29 @@ public enum StatisticalMetrics implements Metric {
     /**
      * The 10th percentile value encountered.
      */
-    P10;
+    P10,
+    /**
+     * The 75th percentile value encountered.
+     */
+    P75,
+    /**
+     * The 95th percentile value encountered.
+     */
+    P95,
+    /**
+     * The 99.9th percentile value encountered.
+     */
+    P999,
+    /**
+     * The 99.99th percentile value encountered.
+     */
+    P9999;
+
+    /**
+     * The percentiles emitted if none are specified: p10, median, p90 and p99.
+     */
+    public static final Set<StatisticalMetrics> DEFAULT_PERCENTILES
+            = unmodifiableSet(EnumSet.of(P10, MEDIAN, P90, P99));
 
     @Override
     public boolean omitIfNegative() {
@@ -87,8 +118,79 @@ public enum StatisticalMetrics implements Metric {
                 return Optional.of(0.9);
             case P99:
                 return Optional.of(0.99);
+            case P75:
+                return Optional.of(0.75);
+            case P95:
+                return Optional.of(0.95);
+            case P999:
+                return Optional.of(0.999);
+            case P9999:
+                return Optional.of(0.9999);
             default:
                 throw new AssertionError(this);
         }
     }
+
+    public boolean isPercentile() {
+        return percentile().isPresent();
+    }
+
+    /**
+     * Parse a comma-delimited list of percentiles, as constant names such as
+     * <code>p99</code> or <code>median</code>, or as the percentile, such as
+     * <code>p99.9</code> or <code>0.999</code>.
+     *
+     * @param spec A comma-delimited list
+     * @return A set of percentile constants
+     * @throws IllegalArgumentException if an element is not a supported
+     * percentile
+     */
+    public static Set<StatisticalMetrics> parsePercentiles(String spec) {
+        Set<StatisticalMetrics> result = EnumSet.noneOf(StatisticalMetrics.class);
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (!part.isEmpty()) {
+                result.add(parsePercentile(part));
+            }
+        }
+        return result;
+    }
+
+    private static StatisticalMetrics parsePercentile(String part) {
+        for (StatisticalMetrics m : values()) {
+            if (m.isPercentile() && m.name().equalsIgnoreCase(part)) {
+                return m;
+            }
+        }
+        double value;
+        try {
+            if (part.charAt(0) == 'p' || part.charAt(0) == 'P') {
+                value = Double.parseDouble(part.substring(1)) / 100D;
+            } else {
+                value = Double.parseDouble(part);
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Not a percentile: '" + part + "'", ex);
+        }
+        for (StatisticalMetrics m : values()) {
+            Optional<Double> pct = m.percentile();
+            if (pct.isPresent() && Math.abs(pct.get() - value) < 0.000001) {
+                return m;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported percentile: '" + part + "'");
+    }
+
+    /**
+     * Get the percentile constants in a set, ordered from lowest to highest
+     * percentile, ignoring any which are not percentiles.
+     *
+     * @param set A set
+     * @return An array
+     */
+    static StatisticalMetrics[] sortedPercentiles(Set<StatisticalMetrics> set) {
+        return set.stream().filter(StatisticalMetrics::isPercentile)
+                .sorted((a, b) -> Double.compare(a.percentile().get(), b.percentile().get()))
+                .toArray(StatisticalMetrics[]::new);
+    }
 }
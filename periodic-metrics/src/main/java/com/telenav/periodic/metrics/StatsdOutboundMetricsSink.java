@@ -0,0 +1,297 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.mastfrog.settings.Settings;
+import com.mastfrog.shutdown.hooks.ShutdownHookRegistry;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_STATSD_DOGSTATSD_TAGS;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_STATSD_HOST;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_STATSD_MAX_PACKET_SIZE;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_STATSD_PORT;
+import static com.telenav.periodic.metrics.MetricsModule.SETTINGS_KEY_STATSD_PREFIX;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * OutboundMetricsSink which sends each batch of metrics as gauges, in StatsD
+ * line format, to a (typically local) StatsD or DogStatsD agent over UDP,
+ * packing as many lines into each datagram as will fit.
+ * <p>
+ * Lines are encoded directly into pooled direct ByteBuffers, using cached bytes
+ * for each metric's name and tags, and written to a non-blocking DatagramChannel; so
+ * emitting a batch does not allocate per metric or wait on the network. As
+ * with any UDP transport, datagrams the agent is not listening for are simply
+ * lost; the number of datagrams which could not be written is available from
+ * <code>droppedDatagrams()</code>.
+ * </p>
+ * <p>
+ * The period a batch is for is included in each metric's name, as in
+ * <code>prefix.one-minute.requests:23|g</code>, or as a DogStatsD tag if
+ * <code>statsd.dogstatsd.tags</code> is set, in which case operation metrics
+ * are tagged with their operation as well.
+ * </p>
+ * <p>
+ * StatsD treats a signed gauge value as a change to the gauge's current value
+ * rather than a new value, so negative values of metrics which are not
+ * <code>omitIfNegative()</code> are sent as a line setting the gauge to zero
+ * followed by one decrementing it, in the same datagram; negative values of
+ * other metrics are not sent.
+ * </p>
+ */
+@Singleton
+public final class StatsdOutboundMetricsSink implements OutboundMetricsSink {
+
+    private static final int MAX_VALUE_LENGTH = 21;
+    private final InetSocketAddress target;
+    private final int maxPacketSize;
+    private final String prefix;
+    private final boolean dogstatsdTags;
+    private final ConcurrentLinkedDeque<ByteBuffer> buffers = new ConcurrentLinkedDeque<>();
+    private final Map<String, Map<Metric, Line>> linesByPeriod = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean loggedFailure = new AtomicBoolean();
+    private final Runnable onShutdown = this::close; // must remain strongly referenced
+    private volatile DatagramChannel channel;
+
+    @Inject
+    StatsdOutboundMetricsSink(Settings settings, ShutdownHookRegistry hooks) {
+        this(new InetSocketAddress(settings.getString(SETTINGS_KEY_STATSD_HOST, "127.0.0.1"),
+                settings.getInt(SETTINGS_KEY_STATSD_PORT, 8125)),
+                settings.getInt(SETTINGS_KEY_STATSD_MAX_PACKET_SIZE, 1432),
+                settings.getString(SETTINGS_KEY_STATSD_PREFIX, ""),
+                settings.getBoolean(SETTINGS_KEY_STATSD_DOGSTATSD_TAGS, false));
+        hooks.addFirst(onShutdown);
+    }
+
+    StatsdOutboundMetricsSink(InetSocketAddress target, int maxPacketSize, String prefix,
+            boolean dogstatsdTags) {
+        if (maxPacketSize < 64) {
+            throw new IllegalArgumentException("Max packet size too small: " + maxPacketSize);
+        }
+        this.target = target;
+        this.maxPacketSize = maxPacketSize;
+        this.prefix = prefix == null || prefix.isEmpty() ? "" : prefix + ".";
+        this.dogstatsdTags = dogstatsdTags;
+    }
+
+    /**
+     * The number of datagrams which could not be sent since startup.
+     *
+     * @return A count
+     */
+    public long droppedDatagrams() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void batch(Duration batchInterval, String msg, boolean started,
+            Consumer<BiConsumer<Metric, Long>> c) {
+        if (!started) {
+            // The batch must still be consumed so the values are reset
+            c.accept(NoOpOutboundMessageSink.NOTHING);
+            return;
+        }
+        String period = msg.endsWith("-metrics") ? msg.substring(0, msg.length() - 8) : msg;
+        Map<Metric, Line> lines = linesByPeriod.computeIfAbsent(period, p -> new ConcurrentHashMap<>());
+        ByteBuffer buf = buffer();
+        try {
+            c.accept((metric, value) -> {
+                boolean negative = value < 0;
+                if (negative && metric.omitIfNegative()) {
+                    return;
+                }
+                Line line = lines.get(metric);
+                if (line == null) {
+                    line = line(period, metric);
+                    lines.put(metric, line);
+                }
+                // A negative value needs a reset to zero before it
+                int needed = negative
+                        ? (line.length() * 2) + MAX_VALUE_LENGTH + 3
+                        : line.length() + MAX_VALUE_LENGTH;
+                if (buf.remaining() < needed) {
+                    send(buf);
+                    if (buf.remaining() < needed) {
+                        // Absurdly long name that cannot fit in a packet
+                        return;
+                    }
+                }
+                if (negative) {
+                    writeLine(line, 0, buf);
+                }
+                writeLine(line, value, buf);
+            });
+            send(buf);
+        } finally {
+            buf.clear();
+            buffers.offer(buf);
+        }
+    }
+
+    private static void writeLine(Line line, long value, ByteBuffer buf) {
+        if (buf.position() > 0) {
+            buf.put((byte) '\n');
+        }
+        buf.put(line.name);
+        writeLong(value, buf);
+        buf.put(line.suffix);
+    }
+
+    private Line line(String period, Metric metric) {
+        String name;
+        String suffix = "|g";
+        if (dogstatsdTags) {
+            suffix += "|#period:" + period;
+            if (metric instanceof OperationMetric<?, ?> om) {
+                name = om.metricLoggingName();
+                suffix += ",operation:" + om.operation().name().toLowerCase().replace('_', '-');
+            } else {
+                name = metric.loggingName();
+            }
+        } else {
+            name = period + "." + metric.loggingName();
+        }
+        return new Line((prefix + sanitize(name) + ":").getBytes(UTF_8), suffix.getBytes(UTF_8));
+    }
+
+    private static String sanitize(String name) {
+        // These are delimiters in the line protocol
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            switch (c) {
+                case ':':
+                case '|':
+                case '@':
+                case '#':
+                case ' ':
+                case '\n':
+                    sb.append('_');
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static final class Line {
+
+        private final byte[] name;
+        private final byte[] suffix;
+
+        Line(byte[] name, byte[] suffix) {
+            this.name = name;
+            this.suffix = suffix;
+        }
+
+        int length() {
+            return name.length + suffix.length;
+        }
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer result = buffers.poll();
+        if (result == null) {
+            result = ByteBuffer.allocateDirect(maxPacketSize);
+        }
+        return result;
+    }
+
+    private DatagramChannel channel() throws IOException {
+        DatagramChannel result = channel;
+        if (result == null || !result.isOpen()) {
+            synchronized (this) {
+                result = channel;
+                if (result == null || !result.isOpen()) {
+                    result = DatagramChannel.open();
+                    result.configureBlocking(false);
+                    channel = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void send(ByteBuffer buf) {
+        if (buf.position() == 0) {
+            return;
+        }
+        buf.flip();
+        try {
+            if (channel().send(buf, target) == 0) {
+                dropped.increment();
+            }
+        } catch (IOException ex) {
+            dropped.increment();
+            if (loggedFailure.compareAndSet(false, true)) {
+                ex.printStackTrace(System.err);
+            }
+        } finally {
+            buf.clear();
+        }
+    }
+
+    private static void writeLong(long value, ByteBuffer buf) {
+        if (value == Long.MIN_VALUE) {
+            buf.put(Long.toString(value).getBytes(UTF_8));
+            return;
+        }
+        if (value < 0) {
+            buf.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int start = buf.position();
+        for (int i = start + digits - 1; i >= start; i--) {
+            buf.put(i, (byte) ('0' + (value % 10)));
+            value /= 10;
+        }
+        buf.position(start + digits);
+    }
+
+    private void close() {
+        DatagramChannel ch = channel;
+        if (ch != null) {
+            try {
+                ch.close();
+            } catch (IOException ex) {
+                ex.printStackTrace(System.err);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StatsdOutboundMetricsSink(" + target + " max " + maxPacketSize + ")";
+    }
+}
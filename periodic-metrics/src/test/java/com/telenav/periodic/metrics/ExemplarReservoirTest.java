@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExemplarReservoirTest {
+
+    @Test
+    public void testKeepsHighestValues() {
+        ExemplarReservoir res = new ExemplarReservoir(3);
+        assertTrue(res.offer(5, "a"));
+        assertTrue(res.offer(1, "b"));
+        assertTrue(res.offer(3, "c"));
+        assertFalse(res.offer(1, "d"));
+        assertTrue(res.offer(10, "e"));
+        assertTrue(res.offer(4, "f"));
+        assertFalse(res.offer(2, "g"));
+        List<String> found = new ArrayList<>();
+        res.forEach(ex -> found.add(ex.toString()));
+        assertEquals(List.of("e=10", "a=5", "f=4"), found);
+        res.reset();
+        found.clear();
+        res.forEach(ex -> found.add(ex.toString()));
+        assertTrue(found.isEmpty());
+        assertTrue(res.offer(1, "h"));
+    }
+
+    @Test
+    public void testConcurrentOffers() throws InterruptedException {
+        ExemplarReservoir res = new ExemplarReservoir(5);
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> all = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = offset; i < 10_000; i += threads) {
+                    res.offer(i, i);
+                }
+            });
+            thread.start();
+            all.add(thread);
+        }
+        start.countDown();
+        for (Thread t : all) {
+            t.join();
+        }
+        List<Long> values = new ArrayList<>();
+        res.forEach(ex -> values.add(ex.value()));
+        assertEquals(List.of(9999L, 9998L, 9997L, 9996L, 9995L), values);
+    }
+
+    @Test
+    public void testOperationStatsMetricEmitsExemplars() {
+        OperationStatsMetric<OperationStatsMetricTest.Things> met = new OperationStatsMetric<>(OperationStatsMetricTest.Things.ONE, 400, null,
+                PercentileMethod.INTERPOLATED, 2);
+        for (int i = 1; i <= 100; i++) {
+            met.add(i, "req-" + i);
+        }
+        Map<String, Long> values = new TreeMap<>();
+        List<String> exemplars = new ArrayList<>();
+        met.get(new ExemplarConsumer() {
+            @Override
+            public void exemplar(Metric metric, Exemplar exemplar) {
+                exemplars.add(metric + ":" + exemplar);
+            }
+
+            @Override
+            public void accept(Metric t, Long u) {
+                values.put(t.toString(), u);
+            }
+        });
+        assertEquals(Long.valueOf(100), values.get("one.max"));
+        assertEquals(List.of("one.p99:req-100=100", "one.p99:req-99=99"), exemplars);
+        exemplars.clear();
+        // The reservoir is cleared along with the samples
+        met.add(3, "req-x");
+        met.get(new ExemplarConsumer() {
+            @Override
+            public void exemplar(Metric metric, Exemplar exemplar) {
+                exemplars.add(metric + ":" + exemplar);
+            }
+
+            @Override
+            public void accept(Metric t, Long u) {
+            }
+        });
+        assertEquals(List.of("one.p99:req-x=3"), exemplars);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import static com.mastfrog.util.collections.CollectionUtils.map;
+import static com.mastfrog.util.collections.CollectionUtils.setOf;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistogramStatsMetricTest {
+
+    @Test
+    public void testAddTime() {
+        HistogramStatsMetric<Things> met = new HistogramStatsMetric<>(Things.ONE);
+        Set<String> found = new HashSet<>();
+        for (Metric m : met.metrics()) {
+            found.add(m.toString());
+        }
+        assertEquals(setOf("one.min", "one.max", "one.median", "one.requests",
+                "one.p90", "one.mean", "one.p99", "one.p10"), found);
+
+        // Values this small get a bucket each, so results are exact
+        for (int i = 0; i < 200; i++) {
+            met.add(i + 1);
+        }
+        Map<String, Object> metrix = new LinkedHashMap<>();
+        boolean anyFound = met.get((metric, val) -> {
+            metrix.put(metric.toString(), val);
+        });
+        assertTrue(anyFound, "Should have found some metrics");
+
+        Map<String, Object> expected = map("one.requests").to(200L)
+                .map("one.min").to(1L)
+                .map("one.max").to(200L)
+                .map("one.mean").to(100L)
+                .map("one.p10").to(20L)
+                .map("one.median").to(100L)
+                .map("one.p90").to(180L)
+                .map("one.p99").finallyTo(198L);
+        assertEquals(expected, metrix, "Emitted metrics do not match expected set");
+
+        for (int i = 0; i < 3; i++) {
+            metrix.clear();
+            anyFound = met.get((metric, val) -> {
+                metrix.put(metric.toString(), val);
+            });
+            assertFalse(anyFound, "After reset " + i + ", no values should be found");
+            assertEquals(map("one.requests").finallyTo(0L), metrix);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            met.add(i + 1);
+        }
+        metrix.clear();
+        anyFound = met.get((metric, val) -> {
+            metrix.put(metric.toString(), val);
+        });
+        assertTrue(anyFound, "Should have found metrix");
+        assertEquals(expected, metrix, "Emitted metrics do not match expected set");
+    }
+
+    @Test
+    public void testRelativeErrorIsBounded() {
+        LogLinearHistogram hist = new LogLinearHistogram();
+        Random rnd = new Random(2309);
+        long[] values = new long[20000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rnd.nextInt(3_000_000);
+            hist.add(values[i]);
+        }
+        Arrays.sort(values);
+        double maxError = 1D / (1 << (LogLinearHistogram.DEFAULT_PRECISION_BITS + 1));
+        for (double pct : new double[]{0.1, 0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(pct * values.length) - 1];
+            long approx = hist.valueAtPercentile(pct);
+            double err = Math.abs(approx - exact) / (double) exact;
+            assertTrue(err <= maxError, "Error " + err + " too large for " + pct
+                    + ": expected " + exact + " got " + approx);
+        }
+        assertEquals(values[0], hist.min());
+        assertEquals(values[values.length - 1], hist.max());
+        assertEquals(values.length, hist.count());
+    }
+
+    @Test
+    public void testMerge() {
+        LogLinearHistogram a = new LogLinearHistogram(5, 100_000);
+        LogLinearHistogram b = a.newEmptyCopy();
+        for (int i = 1; i <= 1000; i++) {
+            if (i % 2 == 0) {
+                a.add(i * 10);
+            } else {
+                b.add(i * 10);
+            }
+        }
+        LogLinearHistogram merged = a.newEmptyCopy().addAll(a).addAll(b);
+        assertEquals(1000, merged.count());
+        assertEquals(10, merged.min());
+        assertEquals(10000, merged.max());
+        assertEquals(5005, merged.mean());
+        long median = merged.valueAtPercentile(0.5);
+        assertTrue(Math.abs(median - 5000) <= 5000 / 64, "Bad merged median " + median);
+
+        merged.reset();
+        assertTrue(merged.isEmpty());
+        assertEquals(0, merged.valueAtPercentile(0.5));
+        assertThrows(IllegalArgumentException.class, () -> merged.addAll(new LogLinearHistogram()));
+    }
+
+    @Test
+    public void testRollup() {
+        HistogramStatsMetric<Things> met = new HistogramStatsMetric<>(Things.ONE);
+        SimpleMetricsSink base = new SimpleMetricsSink("one-minute",
+                BuiltInMetrics.INCREMENTAL);
+        SimpleMetricsSink rollup = new SimpleMetricsSink("five-minute",
+                BuiltInMetrics.INCREMENTAL);
+        base.addMultiMetrics(setOf(met)).rollUpInto(rollup);
+
+        Map<String, Object> metrix = new LinkedHashMap<>();
+        for (int period = 0; period < 2; period++) {
+            for (int i = 1; i <= 100; i++) {
+                met.add(i + (period * 100));
+            }
+            base.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+            assertEquals(100L, metrix.get("one.requests"));
+            base.rollUp(BuiltInMetrics.REQUESTS, 7);
+        }
+        metrix.clear();
+        rollup.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(200L, metrix.get("one.requests"));
+        assertEquals(1L, metrix.get("one.min"));
+        assertEquals(200L, metrix.get("one.max"));
+        assertEquals(100L, metrix.get("one.median"));
+        long[] counters = new long[rollup.tableSize()];
+        rollup.harvest(counters);
+        assertEquals(14L, counters[BuiltInMetrics.REQUESTS.slot()]);
+
+        metrix.clear();
+        rollup.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(0L, metrix.get("one.requests"), "Rollup should be reset after emitting");
+    }
+
+    @Test
+    public void testRollupWhenBatchIsNotConsumed() {
+        HistogramStatsMetric<Things> met = new HistogramStatsMetric<>(Things.ONE);
+        SimpleMetricsSink base = new SimpleMetricsSink("one-minute",
+                BuiltInMetrics.INCREMENTAL);
+        SimpleMetricsSink rollup = new SimpleMetricsSink("five-minute",
+                BuiltInMetrics.INCREMENTAL);
+        base.addMultiMetrics(setOf(met)).rollUpInto(rollup);
+
+        // First period's batch is never consumed, as with a disabled log level
+        for (int i = 1; i <= 100; i++) {
+            met.add(i);
+        }
+        base.mergeRollups();
+        base.discardMerged();
+
+        // Second period's batch replays what was merged, without a new snapshot
+        for (int i = 101; i <= 200; i++) {
+            met.add(i);
+        }
+        base.mergeRollups();
+        met.add(5000);
+        Map<String, Object> metrix = new LinkedHashMap<>();
+        base.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(100L, metrix.get("one.requests"));
+        assertEquals(101L, metrix.get("one.min"));
+        assertEquals(200L, metrix.get("one.max"));
+
+        metrix.clear();
+        rollup.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(200L, metrix.get("one.requests"));
+        assertEquals(1L, metrix.get("one.min"));
+        assertEquals(200L, metrix.get("one.max"));
+
+        // Not merged, so takes a fresh snapshot
+        metrix.clear();
+        base.additionalMetrics((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(1L, metrix.get("one.requests"));
+        assertEquals(5000L, metrix.get("one.max"));
+    }
+
+    enum Things {
+        ONE
+    }
+}
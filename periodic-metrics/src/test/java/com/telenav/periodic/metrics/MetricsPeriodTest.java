@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsPeriodTest {
+
+    @Test
+    public void testStandardAndCustomPeriods() {
+        assertSame(StandardMetricsPeriods.ONE_MINUTE, MetricsPeriod.of(1, ChronoUnit.MINUTES));
+        assertSame(StandardMetricsPeriods.FOUR_HOUR, MetricsPeriod.parse("hours:4"));
+        MetricsPeriod tenSeconds = MetricsPeriod.parse("seconds:10");
+        assertEquals(MetricsPeriod.of(10, ChronoUnit.SECONDS), tenSeconds);
+        assertEquals("10-second", tenSeconds.loggingName());
+        assertEquals(Duration.ofSeconds(10), tenSeconds.toDuration());
+        assertEquals("one-minute", StandardMetricsPeriods.ONE_MINUTE.loggingName());
+        assertThrows(IllegalArgumentException.class, () -> MetricsPeriod.of(500, ChronoUnit.MILLIS));
+    }
+
+    @Test
+    public void testSecondsIntervalsAlignToTheClock() {
+        ZonedDateTime now = ZonedDateTime.of(2023, 3, 14, 12, 30, 3, 500_000_000, ZoneId.of("UTC"));
+        ClockInterval<String> tenSeconds = new ClockInterval<>(10, ChronoUnit.SECONDS, now, "x");
+        assertEquals(now.withSecond(10).withNano(0), tenSeconds.deadline());
+        tenSeconds.resetDeadline();
+        assertEquals(now.withSecond(20).withNano(0), tenSeconds.deadline());
+
+        ClockInterval<String> oneSecond = new ClockInterval<>(1, ChronoUnit.SECONDS, now, "x");
+        assertEquals(now.withSecond(4).withNano(0), oneSecond.deadline());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OpenMetricsRendererTest {
+
+    @Test
+    public void testRender() {
+        Map<MetricsPeriod, Map<Metric, Long>> values = new HashMap<>();
+        Map<Metric, Long> oneMinute = new TreeMap<>(Metric::compare);
+        oneMinute.put(BuiltInMetrics.REQUESTS, 120L);
+        oneMinute.put(BuiltInMetrics.HTTP_BYTES_READ, -3L);
+        oneMinute.put(Metric.operationMetric(Things.GET_THING, StatisticalMetrics.P90), 1234567L);
+        oneMinute.put(Metric.operationMetric(Things.GET_THING, BuiltInMetrics.REQUESTS), 100L);
+        oneMinute.put(Metric.operationMetric(Things.GET_THING, Size.REQUEST_BYTES, StatisticalMetrics.P90), 512L);
+        oneMinute.put(BuiltInMetrics.PROBE_EVENTS_DROPPED, 7L);
+        values.put(StandardMetricsPeriods.ONE_MINUTE, oneMinute);
+        Map<Metric, Long> fiveMinute = new TreeMap<>(Metric::compare);
+        fiveMinute.put(BuiltInMetrics.REQUESTS, 600L);
+        // Sampled earlier than the one-minute value
+        fiveMinute.put(BuiltInMetrics.PROBE_EVENTS_DROPPED, 5L);
+        values.put(StandardMetricsPeriods.FIVE_MINUTE, fiveMinute);
+        MetricsPeriod tenSeconds = MetricsPeriod.of(10, ChronoUnit.SECONDS);
+        values.put(tenSeconds, singletonMap(BuiltInMetrics.REQUESTS, 20L));
+        List<MetricsPeriod> periods = new ArrayList<>(asList(StandardMetricsPeriods.values()));
+        periods.add(tenSeconds);
+
+        OpenMetricsRenderer renderer = new OpenMetricsRenderer(p -> values.getOrDefault(p, emptyMap()),
+                periods, "svc");
+        String expected = "# TYPE svc_http_bytes_read gauge\n"
+                + "svc_http_bytes_read{period=\"one-minute\"} -3\n"
+                + "# TYPE svc_p90 gauge\n"
+                + "svc_p90{operation=\"get-thing\",period=\"one-minute\"} 1234567\n"
+                + "# TYPE svc_probe_events_dropped counter\n"
+                + "svc_probe_events_dropped_total 7\n"
+                + "# TYPE svc_request_bytes_p90 gauge\n"
+                + "svc_request_bytes_p90{operation=\"get-thing\",period=\"one-minute\"} 512\n"
+                + "# TYPE svc_requests gauge\n"
+                + "svc_requests{period=\"one-minute\"} 120\n"
+                + "svc_requests{period=\"five-minute\"} 600\n"
+                + "svc_requests{period=\"10-second\"} 20\n"
+                + "svc_requests{operation=\"get-thing\",period=\"one-minute\"} 100\n"
+                + "# EOF\n";
+        assertEquals(expected, new String(renderer.render(), UTF_8));
+        // Cached series must not leak values from the previous scrape
+        values.remove(StandardMetricsPeriods.ONE_MINUTE);
+        values.remove(tenSeconds);
+        assertEquals("# TYPE svc_probe_events_dropped counter\n"
+                + "svc_probe_events_dropped_total 5\n"
+                + "# TYPE svc_requests gauge\n"
+                + "svc_requests{period=\"five-minute\"} 600\n"
+                + "# EOF\n", new String(renderer.render(), UTF_8));
+    }
+
+    enum Things {
+        GET_THING
+    }
+
+    enum Size {
+        REQUEST_BYTES
+    }
+}
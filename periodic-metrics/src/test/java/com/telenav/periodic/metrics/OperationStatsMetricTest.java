@@ -57,12 +57,12 @@ public class OperationStatsMetricTest {
 
         Map<String, Object> expected = map("one.min").to(1l)
                 .map("one.max").to(200L)
-                .map("one.median").to(99L)
-                .map("one.p10").to(19L)
-                .map("one.p99").to(199L)
+                .map("one.median").to(100L)
+                .map("one.p10").to(20L)
+                .map("one.p99").to(198L)
                 .map("one.mean").to(100L)
                 .map("one.requests").to(200L)
-                .map("one.p90").finallyTo(179L);
+                .map("one.p90").finallyTo(180L);
 
         // Make sure we got what we expect
         assertEquals(expected, metrix, "Emitted metrics do not match expected set");
@@ -101,6 +101,87 @@ public class OperationStatsMetricTest {
         assertEquals(expected, metrix, "Emitted metrics do not match expected set");
     }
 
+    @Test
+    public void testConfigurablePercentiles() {
+        assertEquals(setOf(StatisticalMetrics.MEDIAN, StatisticalMetrics.P999, StatisticalMetrics.P9999,
+                StatisticalMetrics.P75), StatisticalMetrics.parsePercentiles("median, p99.9,0.9999 ,P75"));
+        assertThrows(IllegalArgumentException.class, () -> StatisticalMetrics.parsePercentiles("p42"));
+        assertThrows(IllegalArgumentException.class, () -> StatisticalMetrics.parsePercentiles("max"));
+
+        OperationStatsMetric<Things> met = new OperationStatsMetric<>(Things.ONE, 10_000, null,
+                PercentileMethod.NEAREST, 0, StatisticalMetrics.parsePercentiles("p95,p999,p9999"));
+        for (int i = 0; i < 10_000; i++) {
+            met.add(i + 1);
+        }
+        Map<String, Object> metrix = new LinkedHashMap<>();
+        met.get((metric, val) -> metrix.put(metric.toString(), val));
+        Map<String, Object> expected = map("one.min").to(1L)
+                .map("one.max").to(10_000L)
+                .map("one.mean").to(5000L)
+                .map("one.requests").to(10_000L)
+                .map("one.p95").to(9500L)
+                .map("one.p999").to(9990L)
+                .map("one.p9999").finallyTo(9999L);
+        assertEquals(expected, metrix);
+
+        // Tiny series must not fail
+        met.add(7);
+        metrix.clear();
+        met.get((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(7L, metrix.get("one.p95"));
+        assertEquals(7L, metrix.get("one.p9999"));
+    }
+
+    @Test
+    public void testAdaptiveSamplesStayWithinBudget() {
+        SampleBudget budget = new SampleBudget(1000);
+        OperationStatsMetric<Things> busy = new OperationStatsMetric<>(Things.ONE, budget, 64,
+                PercentileMethod.NEAREST, 0, StatisticalMetrics.DEFAULT_PERCENTILES);
+        OperationStatsMetric<Things> other = new OperationStatsMetric<>(Things.ONE, budget, 64,
+                PercentileMethod.NEAREST, 0, StatisticalMetrics.DEFAULT_PERCENTILES);
+        assertEquals(128, budget.allocated());
+        for (int i = 0; i < 500; i++) {
+            busy.add(i + 1);
+        }
+        busy.get((metric, val) -> {
+        });
+        assertEquals(625, busy.samples(), "Should grow to what was seen plus a quarter");
+        assertEquals(689, budget.allocated());
+        // Now every timing fits
+        for (int i = 0; i < 500; i++) {
+            busy.add(i + 1);
+        }
+        Map<String, Object> metrix = new LinkedHashMap<>();
+        busy.get((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(500L, metrix.get("one.requests"));
+        assertEquals(625, busy.samples(), "Should not resize for similar traffic");
+
+        for (int i = 0; i < 2000; i++) {
+            other.add(i + 1);
+        }
+        other.get((metric, val) -> {
+        });
+        assertEquals(375, other.samples(), "Should get only what is left in the budget");
+        assertEquals(1000, budget.allocated());
+        // Timings are now randomly sampled, but the count is of all of them
+        for (int i = 0; i < 2000; i++) {
+            other.add(i + 1);
+        }
+        metrix.clear();
+        other.get((metric, val) -> metrix.put(metric.toString(), val));
+        assertEquals(2000L, metrix.get("one.requests"));
+
+        // An idle period shrinks by half at most
+        busy.get((metric, val) -> {
+        });
+        assertEquals(312, busy.samples());
+        assertEquals(687, budget.allocated());
+
+        assertEquals(SampleBudget.MIN_SAMPLES, OperationStatsMetric.desiredSamples(40, 0));
+        assertEquals(1250, OperationStatsMetric.desiredSamples(100, 1000));
+        assertEquals(100, OperationStatsMetric.desiredSamples(100, 60));
+    }
+
     enum Things {
         ONE
     }
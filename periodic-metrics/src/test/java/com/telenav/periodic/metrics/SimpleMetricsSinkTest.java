@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.util.ArrayList;
+import static java.util.Arrays.asList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimpleMetricsSinkTest {
+
+    @Test
+    public void testSlots() {
+        for (BuiltInMetrics m : BuiltInMetrics.values()) {
+            assertEquals(m.ordinal(), m.slot());
+            assertSame(m, MetricSlots.metricFor(m.slot()));
+        }
+        OperationMetric<Things, BuiltInMetrics> a = Metric.operationMetric(Things.ONE, BuiltInMetrics.REQUESTS);
+        OperationMetric<Things, BuiltInMetrics> b = Metric.operationMetric(Things.ONE, BuiltInMetrics.REQUESTS);
+        OperationMetric<Things, BuiltInMetrics> c = Metric.operationMetric(Things.TWO, BuiltInMetrics.REQUESTS);
+        assertEquals(a.slot(), b.slot(), "Equal metrics should share a slot");
+        assertNotEquals(a.slot(), c.slot());
+        assertTrue(a.slot() >= BuiltInMetrics.values().length);
+        assertEquals(a, MetricSlots.metricFor(a.slot()));
+    }
+
+    @Test
+    public void testSlotAndMetricPathsAgree() {
+        OperationMetric<Things, BuiltInMetrics> opMetric = Metric.operationMetric(Things.TWO, BuiltInMetrics.REQUESTS);
+        List<Metric> metrics = new ArrayList<>(BuiltInMetrics.INCREMENTAL);
+        metrics.add(opMetric);
+        SimpleMetricsSink sink = new SimpleMetricsSink("test", metrics);
+        sink.onIncrement(BuiltInMetrics.REQUESTS);
+        sink.onIncrement(BuiltInMetrics.REQUESTS.slot());
+        sink.onMetric(opMetric.slot(), 5);
+        sink.onMetric(Metric.operationMetric(Things.TWO, BuiltInMetrics.REQUESTS), 5);
+        // Unregistered and on-demand metrics are ignored
+        sink.onMetric(Metric.operationMetric(Things.ONE, BuiltInMetrics.HTTP_BYTES_READ), 5);
+        sink.onIncrement(BuiltInMetrics.LIVE_THREADS);
+        sink.onMetric(Integer.MAX_VALUE, 5);
+
+        long[] values = new long[sink.tableSize()];
+        sink.harvest(values);
+        assertEquals(2L, values[BuiltInMetrics.REQUESTS.slot()]);
+        assertEquals(10L, values[opMetric.slot()]);
+        assertFalse(asList(sink.metrics()).contains(BuiltInMetrics.LIVE_THREADS));
+
+        sink.onIncrement(BuiltInMetrics.REQUESTS);
+        sink.harvest(values);
+        assertEquals(1L, values[BuiltInMetrics.REQUESTS.slot()]);
+        sink.harvest(values);
+        assertEquals(0L, values[BuiltInMetrics.REQUESTS.slot()], "Harvest should reset the table in place");
+    }
+
+    @Test
+    public void testSnapshotView() {
+        OperationMetric<Things, BuiltInMetrics> opMetric = Metric.operationMetric(Things.ONE, BuiltInMetrics.REQUESTS);
+        MetricsSnapshot snapshot = new MetricsSnapshot(4);
+        snapshot.put(opMetric, 3);
+        snapshot.put(BuiltInMetrics.REQUESTS, 5);
+        snapshot.put(BuiltInMetrics.HTTP_BYTES_READ, 7);
+        snapshot.seal();
+        assertEquals(3, snapshot.size());
+        assertEquals(Long.valueOf(5L), snapshot.get(BuiltInMetrics.REQUESTS));
+        assertEquals(Long.valueOf(3L), snapshot.get(opMetric));
+        assertNull(snapshot.get(BuiltInMetrics.LIVE_THREADS));
+        List<Metric> keys = new ArrayList<>(snapshot.keySet());
+        List<Metric> sorted = new ArrayList<>(keys);
+        sorted.sort(Metric::compare);
+        assertEquals(sorted, keys);
+        Map<Metric, Long> view = snapshot;
+        assertThrows(UnsupportedOperationException.class, () -> view.put(BuiltInMetrics.REQUESTS, 1L));
+
+        snapshot.reset();
+        snapshot.put(BuiltInMetrics.REQUESTS, 1);
+        snapshot.seal();
+        assertEquals(1, snapshot.size());
+        assertFalse(snapshot.containsKey(opMetric));
+    }
+
+    enum Things {
+        ONE, TWO
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingWindowMetricTest {
+
+    @Test
+    public void testCountsAndRatesSlide() {
+        AtomicLong clock = new AtomicLong(1_000_000);
+        SlidingWindowMetric w = new SlidingWindowMetric(BuiltInMetrics.REQUESTS,
+                Duration.ofSeconds(10), 10, false, clock::get);
+        // 100 requests per second for 20 seconds
+        for (int sec = 0; sec < 20; sec++) {
+            for (int i = 0; i < 100; i++) {
+                w.add(1);
+            }
+            clock.addAndGet(1000);
+        }
+        // At the start of a new, empty second
+        assertEquals(900, w.count(Duration.ofSeconds(10)));
+        assertEquals(200, w.count(Duration.ofSeconds(3)));
+        clock.addAndGet(999);
+        w.add(100);
+        assertEquals(100D, w.ratePerSecond(Duration.ofSeconds(5)), 0.01);
+        // Nothing happens for longer than the span
+        clock.addAndGet(20_000);
+        assertEquals(0, w.count(Duration.ofSeconds(10)));
+        assertThrows(IllegalStateException.class, () -> w.valueAtPercentile(0.99, Duration.ofSeconds(1)));
+    }
+
+    @Test
+    public void testPercentilesCoverOnlyRecentWindows() {
+        AtomicLong clock = new AtomicLong(5_000);
+        SlidingWindowMetric w = new SlidingWindowMetric(BuiltInMetrics.REQUESTS,
+                Duration.ofSeconds(30), 30, true, clock::get);
+        for (int i = 1; i <= 100; i++) {
+            w.addTime(10_000);
+        }
+        clock.addAndGet(20_000);
+        for (int i = 1; i <= 100; i++) {
+            w.addTime(i);
+        }
+        long p99 = w.valueAtPercentile(0.99, Duration.ofSeconds(30));
+        assertTrue(p99 > 9_900, "Slow timings 20s ago should dominate p99 over 30s: " + p99);
+        assertEquals(99, w.valueAtPercentile(0.99, Duration.ofSeconds(10)), 1);
+        clock.addAndGet(15_000);
+        assertEquals(0, w.valueAtPercentile(0.99, Duration.ofSeconds(10)));
+        assertEquals(99, w.valueAtPercentile(0.99, Duration.ofSeconds(30)), 1);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import com.telenav.periodic.metrics.MetricsRegistry.MetricsRegistrar;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingWindowsTest {
+
+    @Test
+    public void testRegistriesRegisteredAfterFirstUseGetWindows() {
+        MetricsRegistrar registrar = new MetricsRegistrar();
+        SlidingWindows windows = new SlidingWindows(registrar);
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 5);
+        assertFalse(windows.forMetric(BuiltInMetrics.REQUESTS).isPresent());
+
+        Reg reg = new Reg(registrar, BuiltInMetrics.REQUESTS);
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 5);
+        assertTrue(windows.forMetric(BuiltInMetrics.REQUESTS).isPresent());
+        assertEquals(5, windows.forMetric(BuiltInMetrics.REQUESTS).get()
+                .count(Duration.ofSeconds(10)));
+
+        new Reg(registrar, BuiltInMetrics.HTTP_BYTES_READ);
+        windows.onMetric(BuiltInMetrics.HTTP_BYTES_READ.slot(), 3);
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 5);
+        assertEquals(3, windows.forMetric(BuiltInMetrics.HTTP_BYTES_READ).get()
+                .count(Duration.ofSeconds(10)));
+        // The earlier registry's windows were not recreated
+        assertEquals(10, windows.forMetric(BuiltInMetrics.REQUESTS).get()
+                .count(Duration.ofSeconds(10)));
+        assertEquals(1, reg.calls.get());
+    }
+
+    @Test
+    public void testFailingRegistryIsAskedOnce() {
+        MetricsRegistrar registrar = new MetricsRegistrar();
+        SlidingWindows windows = new SlidingWindows(registrar);
+        Failing failing = new Failing(registrar);
+        new Reg(registrar, BuiltInMetrics.REQUESTS);
+        for (int i = 0; i < 5; i++) {
+            windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 1);
+        }
+        assertEquals(5, windows.forMetric(BuiltInMetrics.REQUESTS).get()
+                .count(Duration.ofSeconds(10)));
+        assertEquals(1, failing.calls.get());
+    }
+
+    @Test
+    public void testPartiallyConstructedRegistryIsAskedAgain() {
+        MetricsRegistrar registrar = new MetricsRegistrar();
+        SlidingWindows windows = new SlidingWindows(registrar);
+        Unready unready = new Unready(registrar);
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 1);
+        assertFalse(windows.forMetric(BuiltInMetrics.REQUESTS).isPresent());
+
+        unready.metric = BuiltInMetrics.REQUESTS;
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 1);
+        windows.onMetric(BuiltInMetrics.REQUESTS.slot(), 1);
+        assertEquals(2, windows.forMetric(BuiltInMetrics.REQUESTS).get()
+                .count(Duration.ofSeconds(10)));
+        assertEquals(1, unready.calls.get());
+    }
+
+    static final class Failing extends MetricsRegistry {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        Failing(MetricsRegistrar registrar) {
+            super(registrar);
+        }
+
+        @Override
+        public Collection<? extends SlidingWindowMetric> slidingWindowMetrics() {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Broken");
+        }
+    }
+
+    static final class Unready extends MetricsRegistry {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile Metric metric;
+
+        Unready(MetricsRegistrar registrar) {
+            super(registrar);
+        }
+
+        @Override
+        public Collection<? extends SlidingWindowMetric> slidingWindowMetrics() {
+            Metric m = metric;
+            if (m == null) {
+                return null;
+            }
+            calls.incrementAndGet();
+            return Set.of(new SlidingWindowMetric(m, Duration.ofSeconds(10), 10, false));
+        }
+    }
+
+    static final class Reg extends MetricsRegistry {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Metric metric;
+
+        Reg(MetricsRegistrar registrar, Metric metric) {
+            super(registrar);
+            this.metric = metric;
+        }
+
+        @Override
+        public Collection<? extends SlidingWindowMetric> slidingWindowMetrics() {
+            calls.incrementAndGet();
+            return Set.of(new SlidingWindowMetric(metric, Duration.ofSeconds(10), 10, false));
+        }
+    }
+}
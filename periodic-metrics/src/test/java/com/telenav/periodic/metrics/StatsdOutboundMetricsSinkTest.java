@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.periodic.metrics;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsdOutboundMetricsSinkTest {
+
+    @Test
+    public void testBatchIsSentToLoopbackListener() throws Exception {
+        try (DatagramSocket listener = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            listener.setSoTimeout(5000);
+            StatsdOutboundMetricsSink sink = new StatsdOutboundMetricsSink(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getLocalPort()),
+                    1432, "svc", false);
+            sink.batch(Duration.ofMinutes(1), "one-minute-metrics", true, c -> {
+                c.accept(BuiltInMetrics.REQUESTS, 120L);
+                // Omitted, since it is omitIfNegative()
+                c.accept(BuiltInMetrics.HTTP_BYTES_READ, -3L);
+                c.accept(Signed.DELTA, -3L);
+            });
+            // A signed gauge value is a relative change in StatsD, so it
+            // must be preceded by a reset to zero
+            assertEquals("svc.one-minute.requests:120|g\nsvc.one-minute.delta:0|g"
+                    + "\nsvc.one-minute.delta:-3|g", receive(listener));
+        }
+    }
+
+    @Test
+    public void testDogstatsdTags() throws Exception {
+        try (DatagramSocket listener = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            listener.setSoTimeout(5000);
+            StatsdOutboundMetricsSink sink = new StatsdOutboundMetricsSink(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getLocalPort()),
+                    1432, "", true);
+            sink.batch(Duration.ofMinutes(5), "five-minute-metrics", true, c -> {
+                c.accept(Metric.operationMetric(Things.GET_THING, StatisticalMetrics.P90), 1234567L);
+            });
+            assertEquals("p90:1234567|g|#period:five-minute,operation:get-thing", receive(listener));
+        }
+    }
+
+    @Test
+    public void testLargeBatchIsSplitAcrossDatagrams() throws Exception {
+        try (DatagramSocket listener = new DatagramSocket(0, InetAddress.getLoopbackAddress())) {
+            listener.setSoTimeout(5000);
+            StatsdOutboundMetricsSink sink = new StatsdOutboundMetricsSink(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), listener.getLocalPort()),
+                    128, "", false);
+            BuiltInMetrics[] all = BuiltInMetrics.values();
+            sink.batch(Duration.ofMinutes(1), "one-minute-metrics", true, c -> {
+                for (BuiltInMetrics m : all) {
+                    c.accept(m, (long) m.ordinal());
+                }
+            });
+            List<String> lines = new ArrayList<>();
+            while (lines.size() < all.length) {
+                String packet = receive(listener);
+                assertTrue(packet.length() <= 128, packet);
+                for (String line : packet.split("\n")) {
+                    lines.add(line);
+                }
+            }
+            for (BuiltInMetrics m : all) {
+                assertEquals("one-minute." + m.loggingName() + ":" + m.ordinal() + "|g",
+                        lines.get(m.ordinal()));
+            }
+        }
+    }
+
+    @Test
+    public void testBatchIsConsumedWhenNotStarted() {
+        StatsdOutboundMetricsSink sink = new StatsdOutboundMetricsSink(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 8125), 1432, "", false);
+        boolean[] consumed = new boolean[1];
+        sink.batch(Duration.ofMinutes(1), "one-minute-metrics", false, c -> {
+            c.accept(BuiltInMetrics.REQUESTS, 1L);
+            consumed[0] = true;
+        });
+        assertTrue(consumed[0]);
+    }
+
+    private static String receive(DatagramSocket listener) throws Exception {
+        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        listener.receive(packet);
+        return new String(packet.getData(), 0, packet.getLength(), UTF_8);
+    }
+
+    enum Things {
+        GET_THING
+    }
+
+    enum Signed implements Metric {
+        DELTA;
+
+        @Override
+        public boolean omitIfNegative() {
+            return false;
+        }
+    }
+}
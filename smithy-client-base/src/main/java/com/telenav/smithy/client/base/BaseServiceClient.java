@@ -194,8 +194,9 @@ public abstract class BaseServiceClient<S> {
             Class<T> responseBodyType,
             ThrowingBiConsumer<HttpRequest.Builder, byte[]> c) {
         try {
-            // Converts a byte[] based response into one decoded by Jackson
-            JacksonBodyHandlerWrapper<T> handler = new JacksonBodyHandlerWrapper<>(mapper, responseBodyType);
+            // Decodes the response with Jackson as it arrives
+            JacksonBodyHandlerWrapper<T> handler = new JacksonBodyHandlerWrapper<>(mapper, responseBodyType,
+                    config.maxErrorBodyBytes(), config.owner().decodeExecutor());
             // Make our HTTP request
             CompletableFuture<HttpResponse<ServiceResult<T>>> result = config.request(urlBase, handler, bldr -> {
                             byte[] bytes;
@@ -24,6 +24,8 @@ import com.mastfrog.jackson.configuration.TimeSerializationMode;
 import java.io.IOException;
 import java.io.InputStream;
 import static java.lang.System.getenv;
+import java.lang.reflect.Method;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -33,11 +35,18 @@ import java.text.MessageFormat;
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
@@ -66,20 +75,37 @@ public final class ClientConfig {
     private static final ThreadLocal<ServiceClientConfig> caller = new ThreadLocal<>();
     public static final String CONFIG_KEY_GLOBAL_THREAD_POOL_BASE_SIZE = "base-threads";
     public static final String CONFIG_KEY_GLOBAL_THREAD_POOL_MAX_SIZE = "max-threads";
+    /**
+     * Configuration key for the ExecutorStrategy clients run on - one of
+     * <code>pool</code> (the default), <code>work-stealing</code> or
+     * <code>virtual</code>.
+     */
+    public static final String CONFIG_KEY_EXECUTOR = "executor";
     private final Exe threadPool;
+    private final Exe decodePool;
     private final HttpClient client;
+    private final Map<ClientKey, HttpClient> clients = new ConcurrentHashMap<>();
     private final Map<String, String> metadata;
     private final ObjectMapper mapper;
 
     private ClientConfig() {
         metadata = readProperties();
-        threadPool = new Exe(getIntFromConfig(CONFIG_KEY_GLOBAL_THREAD_POOL_BASE_SIZE, 8),
-                getIntFromConfig(CONFIG_KEY_GLOBAL_THREAD_POOL_MAX_SIZE, 128));
+        ExecutorStrategy strategy = executorStrategy();
+        int baseThreads = getIntFromConfig(CONFIG_KEY_GLOBAL_THREAD_POOL_BASE_SIZE, 8);
+        int maxThreads = getIntFromConfig(CONFIG_KEY_GLOBAL_THREAD_POOL_MAX_SIZE, 128);
+        threadPool = new Exe(strategy.createExecutor(baseThreads, maxThreads));
+        decodePool = new Exe(strategy.createExecutor(baseThreads, maxThreads));
         mapper = createMapper();
-        client = HttpClient.newBuilder().executor(threadPool)
-                .followRedirects(HttpClient.Redirect.ALWAYS)
-                .connectTimeout(Duration.ofSeconds(20)) // XXX should be configurable
-                .version(HttpClient.Version.HTTP_1_1)
+        client = newClient(HttpClient.Version.HTTP_1_1, ServiceClientConfig.DEFAULT_CONNECT_TIMEOUT,
+                HttpClient.Redirect.ALWAYS);
+    }
+
+    private HttpClient newClient(HttpClient.Version version, Duration connectTimeout,
+            HttpClient.Redirect redirect) {
+        return HttpClient.newBuilder()
+                .followRedirects(redirect)
+                .connectTimeout(connectTimeout)
+                .version(version)
                 .executor(threadPool)
                 .build();
     }
@@ -101,6 +127,20 @@ public final class ClientConfig {
         return defaultValue;
     }
 
+    private ExecutorStrategy executorStrategy() {
+        String val = metadata.get(CONFIG_KEY_EXECUTOR);
+        if (val != null) {
+            for (ExecutorStrategy strategy : ExecutorStrategy.values()) {
+                if (strategy.configName().equals(val.trim())) {
+                    return strategy;
+                }
+            }
+            System.err.println("Invalid configuration value for '"
+                    + CONFIG_KEY_EXECUTOR + "': " + val);
+        }
+        return ExecutorStrategy.POOL;
+    }
+
     static void debugLog(String what) {
         if (DEBUG_LOG) {
             System.err.println(what);
@@ -143,6 +183,18 @@ public final class ClientConfig {
         return threadPool;
     }
 
+    /**
+     * The executor response bodies are decoded on, which blocks reading them
+     * as they arrive - separate from the one HttpClients run on, since the
+     * tasks which feed the body to a decoder run there, and would never run
+     * if every thread were blocked in a decoder.
+     *
+     * @return An executor
+     */
+    Exe decodeExecutor() {
+        return decodePool;
+    }
+
     ObjectMapper mapper() {
         return mapper.copy();
     }
@@ -151,6 +203,27 @@ public final class ClientConfig {
         return client;
     }
 
+    /**
+     * Get the client for requests from a service - each configured endpoint
+     * gets its own client, and so its own connection pool (or, for HTTP/2,
+     * its own multiplexed connection), with the HTTP version, connect timeout
+     * and redirect policy the service is configured with. Requests a service
+     * makes to absolute URIs elsewhere use the same client, so the number of
+     * clients - each of which has a selector thread - is bounded by the
+     * number of services, not the hosts they are sent to.
+     *
+     * @param config A service's configuration
+     * @return A client
+     */
+    HttpClient client(ServiceClientConfig config) {
+        ClientKey key = new ClientKey(URI.create(config.endpoint()), config.httpVersion(),
+                config.connectTimeout(), config.redirectPolicy());
+        return clients.computeIfAbsent(key, k -> {
+            debugLog("Create a new {0} client for {1}", k.version, k.authority);
+            return newClient(k.version, k.connectTimeout, k.redirect);
+        });
+    }
+
     private Map<String, String> readProperties() {
         Properties result = new Properties();
         String path = getenv(ENV_VAR_CONFIG);
@@ -205,7 +278,7 @@ public final class ClientConfig {
 
     <T> T withClient(ServiceClientConfig config, ThrowingFunction<HttpClient, T> supp) throws Exception {
         try (QuietAutoClosable ac = inContext(config)) {
-            return supp.apply(client);
+            return supp.apply(config.client());
         }
     }
 
@@ -216,71 +289,157 @@ public final class ClientConfig {
     private static Runnable wrap(Runnable run) {
         ServiceClientConfig config = context();
         return () -> {
-            String oldThreadName = Thread.currentThread().getName();
-            if (config != null) {
-                Thread.currentThread().setName(config.serviceName()
-                        + "-" + config.serviceVersion());
-            }
             try (QuietAutoClosable ac = inContext(config)) {
                 run.run();
-            } finally {
-                if (config != null) {
-                    Thread.currentThread().setName(oldThreadName);
-                }
             }
         };
     }
 
-    private static <T> Callable<T> wrap(Callable<T> run) {
-        ServiceClientConfig config = context();
-        return () -> {
-            String oldThreadName = Thread.currentThread().getName();
-            if (config != null) {
-                Thread.currentThread().setName(config.serviceName()
-                        + "-" + config.serviceVersion());
+    /**
+     * How the threads clients make requests and process responses on are
+     * provided.
+     */
+    public enum ExecutorStrategy {
+        /**
+         * A ThreadPoolExecutor over an unbounded queue, which runs at most
+         * <code>base-threads</code> threads.
+         */
+        POOL,
+        /**
+         * A ForkJoinPool with a parallelism of <code>base-threads</code>,
+         * which may add threads up to <code>max-threads</code> to compensate
+         * for blocked ones.
+         */
+        WORK_STEALING,
+        /**
+         * A new virtual thread for each task, on JDK 21 or later; on earlier
+         * JDKs, falls back to WORK_STEALING.
+         */
+        VIRTUAL;
+
+        /**
+         * The value used for this strategy in client configuration.
+         *
+         * @return A lower-case, hyphenated name
+         */
+        public String configName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+
+        ExecutorService createExecutor(int baseThreads, int maxThreads) {
+            switch (this) {
+                case POOL:
+                    return new ThreadPoolExecutor(baseThreads, Math.max(baseThreads, maxThreads),
+                            1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), new TF(), new Rej());
+                case WORK_STEALING:
+                    return new ForkJoinPool(baseThreads, new FJTF(), null, true,
+                            0, Math.max(baseThreads, maxThreads), 1, null, 1, TimeUnit.MINUTES);
+                case VIRTUAL:
+                    ExecutorService result = virtualThreadPerTaskExecutor();
+                    if (result == null) {
+                        System.err.println("Virtual threads not available on JDK "
+                                + System.getProperty("java.version") + " - using "
+                                + WORK_STEALING.configName());
+                        return WORK_STEALING.createExecutor(baseThreads, maxThreads);
+                    }
+                    return result;
+                default:
+                    throw new AssertionError(this);
             }
-            try (QuietAutoClosable ac = inContext(config)) {
-                return run.call();
-            } finally {
-                if (config != null) {
-                    Thread.currentThread().setName(oldThreadName);
-                }
+        }
+
+        private static ExecutorService virtualThreadPerTaskExecutor() {
+            // We compile against an older JDK, so look this up reflectively
+            try {
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) m.invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                debugLog(() -> "No virtual threads: " + ex);
+                return null;
             }
-        };
+        }
     }
 
     /**
-     * A thread pool executor which will ensure the originating config is
-     * available.
+     * An executor which will ensure the originating config is available to
+     * tasks, over whatever executor the ExecutorStrategy provided.
      */
-    static final class Exe extends ThreadPoolExecutor {
+    static final class Exe extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
 
-        public Exe() {
-            // Pending - make configurable
-            this(8, 128);
+        Exe(ExecutorService delegate) {
+            this.delegate = delegate;
         }
 
-        public Exe(int basePoolSize, int maxPoolSize) {
-            super(basePoolSize, maxPoolSize, 1, TimeUnit.MINUTES,
-                    new LinkedBlockingQueue<>(),
-                    new TF(), new Rej());
+        @Override
+        public void execute(Runnable command) {
+            // The submit() methods of AbstractExecutorService call this
+            delegate.execute(wrap(command));
         }
 
         @Override
-        public <T> Future<T> submit(Callable<T> task) {
-            return super.submit(wrap(task));
+        public void shutdown() {
+            delegate.shutdown();
         }
 
         @Override
-        public <T> Future<T> submit(Runnable task, T result) {
-            return super.submit(wrap(task), result);
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public String toString() {
+            return "Exe(" + delegate + ")";
+        }
+    }
+
+    private static final class ClientKey {
+
+        private final String authority;
+        private final HttpClient.Version version;
+        private final Duration connectTimeout;
+        private final HttpClient.Redirect redirect;
+
+        ClientKey(URI uri, HttpClient.Version version, Duration connectTimeout,
+                HttpClient.Redirect redirect) {
+            this.authority = (uri.getScheme() + "://" + uri.getRawAuthority()).toLowerCase(Locale.ROOT);
+            this.version = version;
+            this.connectTimeout = connectTimeout;
+            this.redirect = redirect;
         }
 
         @Override
-        public Future<?> submit(Runnable task) {
-            return super.submit(wrap(task));
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            ClientKey other = (ClientKey) o;
+            return authority.equals(other.authority) && version == other.version
+                    && connectTimeout.equals(other.connectTimeout) && redirect == other.redirect;
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(authority, version, connectTimeout, redirect);
+        }
     }
 
     private static class TF implements ThreadFactory {
@@ -300,8 +459,23 @@ public final class ClientConfig {
         }
     }
 
+    private static class FJTF implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private volatile int count;
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t = new ClientWorkerThread(pool);
+            t.setName("smithy-http-client-fj-" + count++);
+            t.setDaemon(true);
+            debugLog(() -> "Create a new fork-join thread " + count);
+            return t;
+        }
+    }
+
     static boolean isClientThread() {
-        return Thread.currentThread().getClass() == ClientThread.class;
+        Class<?> type = Thread.currentThread().getClass();
+        return type == ClientThread.class || type == ClientWorkerThread.class;
     }
 
     private static class ClientThread extends Thread {
@@ -311,11 +485,19 @@ public final class ClientConfig {
         }
     }
 
+    private static class ClientWorkerThread extends ForkJoinWorkerThread {
+
+        ClientWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+    }
+
     private static class Rej implements RejectedExecutionHandler {
 
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            System.out.println("REJECTED EXEUCTION- CLIENT RUNS");
+            // Only happens if the pool has been shut down
+            debugLog("Rejected execution on {0} - running in caller", executor);
             r.run();
         }
 
@@ -18,49 +18,249 @@ package com.telenav.smithy.client.base;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.telenav.smithy.client.result.ServiceResult;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodySubscriber;
 import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.ByteBuffer;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 /**
+ * Decodes successful response bodies by binding them with Jackson straight
+ * from the body's InputStream as it arrives, so the body is never held in
+ * memory as a whole. Reading the stream blocks, so this runs on an executor
+ * which must not be the one the HttpClient runs on - the client's tasks which
+ * feed the stream would otherwise be starved by decoders waiting for them. Only the first
+ * <code>maxErrorBodyBytes</code> of the raw body are retained, for the text of
+ * failure and decoding-error results.
  *
  * @author Tim Boudreau
  */
 final class JacksonBodyHandlerWrapper<T> implements HttpResponse.BodyHandler<ServiceResult<T>> {
 
+    private static final byte[] EMPTY = new byte[0];
     private final ObjectMapper mapper;
     private final Class<T> type;
+    private final int maxErrorBodyBytes;
+    private final Executor decodeExecutor;
 
-    JacksonBodyHandlerWrapper(ObjectMapper mapper, Class<T> type) {
+    JacksonBodyHandlerWrapper(ObjectMapper mapper, Class<T> type, int maxErrorBodyBytes,
+            Executor decodeExecutor) {
         this.mapper = mapper;
         this.type = type;
+        this.maxErrorBodyBytes = maxErrorBodyBytes;
+        this.decodeExecutor = decodeExecutor;
     }
 
     @Override
     public BodySubscriber<ServiceResult<T>> apply(HttpResponse.ResponseInfo responseInfo) {
-        BodySubscriber<byte[]> bs = BodySubscribers.ofByteArray();
-        return BodySubscribers.mapping(bs, (byte[] bytes) -> {
-            return toServiceResult(bytes, responseInfo);
-        });
+        if (isSuccess(responseInfo)) {
+            return new DecodingSubscriber(responseInfo);
+        }
+        return new FailureSubscriber(responseInfo);
+    }
+
+    private static boolean isSuccess(HttpResponse.ResponseInfo responseInfo) {
+        return responseInfo.statusCode() >= 200 && responseInfo.statusCode() < 299;
     }
 
-    private ServiceResult<T> toServiceResult(byte[] bytes, HttpResponse.ResponseInfo responseInfo) {
-        if (responseInfo.statusCode() >= 200 && responseInfo.statusCode() < 299) {
-            if (bytes == null) {
-                return ServiceResult.success(responseInfo, null);
+    private ServiceResult<T> decode(InputStream body, HttpResponse.ResponseInfo responseInfo) {
+        HeadRetainingInputStream in = new HeadRetainingInputStream(body, maxErrorBodyBytes);
+        try {
+            T obj = mapper.readValue(in, type);
+            return ServiceResult.success(responseInfo, obj);
+        } catch (IOException ex) {
+            return ServiceResult.decodingError(in.headText(), ex);
+        } catch (Throwable e) {
+            return ServiceResult.thrown(e);
+        } finally {
+            // Releases the connection, discarding any unread remainder
+            try {
+                in.release();
+            } catch (IOException ex) {
+                // Nothing more to do
             }
+        }
+    }
+
+    /**
+     * Passes the body to an InputStream, which is decoded on the decoding
+     * executor as soon as the stream is available - the body stage completes
+     * when decoding does.
+     */
+    private final class DecodingSubscriber implements BodySubscriber<ServiceResult<T>> {
+
+        private final BodySubscriber<InputStream> stream = BodySubscribers.ofInputStream();
+        private final CompletionStage<ServiceResult<T>> result;
+
+        DecodingSubscriber(HttpResponse.ResponseInfo responseInfo) {
+            result = stream.getBody().thenApplyAsync(in -> decode(in, responseInfo),
+                    decodeExecutor);
+        }
+
+        @Override
+        public CompletionStage<ServiceResult<T>> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            stream.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            stream.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            stream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            stream.onComplete();
+        }
+    }
+
+    /**
+     * Reads the body of a non-success response, keeping only its head, for
+     * the error message.
+     */
+    private final class FailureSubscriber implements BodySubscriber<ServiceResult<T>> {
+
+        private final CompletableFuture<ServiceResult<T>> result = new CompletableFuture<>();
+        private final HttpResponse.ResponseInfo responseInfo;
+        private Flow.Subscription subscription;
+        private byte[] head = EMPTY;
+        private int headLength;
+
+        FailureSubscriber(HttpResponse.ResponseInfo responseInfo) {
+            this.responseInfo = responseInfo;
+        }
+
+        @Override
+        public CompletionStage<ServiceResult<T>> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            // Keep reading past the head, so the connection can be reused
+            for (ByteBuffer buf : items) {
+                int count = Math.min(buf.remaining(), maxErrorBodyBytes - headLength);
+                if (count > 0) {
+                    if (head.length < headLength + count) {
+                        head = Arrays.copyOf(head, Math.min(maxErrorBodyBytes,
+                                Math.max(headLength + count, head.length * 2)));
+                    }
+                    buf.get(buf.position(), head, headLength, count);
+                    headLength += count;
+                }
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(ServiceResult.failed(responseInfo,
+                    new String(head, 0, headLength, UTF_8)));
+        }
+    }
+
+    /**
+     * Keeps a copy of the first bytes read through it, for the text of a
+     * decoding error.
+     */
+    private static final class HeadRetainingInputStream extends FilterInputStream {
+
+        private final int max;
+        private byte[] head = EMPTY;
+        private int headLength;
+
+        HeadRetainingInputStream(InputStream in, int max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result >= 0 && headLength < max) {
+                ensure(1);
+                head[headLength++] = (byte) result;
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            int count = Math.min(result, max - headLength);
+            if (count > 0) {
+                ensure(count);
+                System.arraycopy(b, off, head, headLength, count);
+                headLength += count;
+            }
+            return result;
+        }
+
+        @Override
+        public void close() {
+            // Jackson closes its source when parsing fails; the head of the
+            // body may still be needed, so this is done by release()
+        }
+
+        void release() throws IOException {
+            super.close();
+        }
+
+        private void ensure(int more) {
+            if (head.length < headLength + more) {
+                head = Arrays.copyOf(head, Math.min(max,
+                        Math.max(headLength + more, head.length * 2)));
+            }
+        }
+
+        /**
+         * Get the head of the body - reading more of it if the parser failed
+         * before reading that much.
+         *
+         * @return The head of the body as a string
+         */
+        String headText() {
+            byte[] buf = new byte[1024];
             try {
-                T obj = mapper.readValue(bytes, type);
-                return ServiceResult.success(responseInfo, obj);
+                while (headLength < max && read(buf, 0, Math.min(buf.length, max - headLength)) >= 0) {
+                    // read() retains it
+                }
             } catch (IOException ex) {
-                return ServiceResult.decodingError(bytes == null ? null : new String(bytes, UTF_8), ex);
-            } catch (Throwable e) {
-                return ServiceResult.thrown(e);
+                // Use what we have
             }
-        } else {
-            return ServiceResult.failed(responseInfo, bytes == null ? null : new String(bytes, UTF_8));
+            return new String(head, 0, headLength, UTF_8);
         }
     }
 }
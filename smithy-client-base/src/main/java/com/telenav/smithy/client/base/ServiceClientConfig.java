@@ -29,6 +29,7 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandler;
 import java.time.Duration;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -42,8 +43,34 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public final class ServiceClientConfig {
 
-    private static final Set<String> LOGGED_BAD_DURATION_STRINGS
+    private static final Set<String> LOGGED_BAD_VALUES
             = ConcurrentHashMap.newKeySet(8);
+    static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(20);
+    /**
+     * Metadata key for the HTTP version to use - <code>http/1.1</code> (the
+     * default) or <code>http/2</code>. HTTP/2 is negotiated with ALPN for
+     * https endpoints and with an <code>Upgrade: h2c</code> request for http
+     * ones (the JDK's client does not support prior knowledge); if the server
+     * does not support it, HTTP/1.1 is used.
+     */
+    public static final String METADATA_KEY_HTTP_VERSION = "httpVersion";
+    /**
+     * Metadata key for the connect timeout, as an ISO 8601 duration such as
+     * <code>PT5S</code> - the default is 20 seconds.
+     */
+    public static final String METADATA_KEY_CONNECT_TIMEOUT = "connectTimeout";
+    /**
+     * Metadata key for the redirect policy - <code>always</code> (the
+     * default), <code>normal</code> (never from https to http) or
+     * <code>never</code>.
+     */
+    public static final String METADATA_KEY_FOLLOW_REDIRECTS = "followRedirects";
+    /**
+     * Metadata key for the number of bytes of a response body retained for
+     * the text of failure and decoding-error results - the default is 16384.
+     */
+    public static final String METADATA_KEY_MAX_ERROR_BODY_BYTES = "maxErrorBodyBytes";
+    static final int DEFAULT_MAX_ERROR_BODY_BYTES = 16_384;
 
     private static final Set<RequestDecorator> DECORATORS
             = RequestDecorator.decorators();
@@ -52,6 +79,11 @@ public final class ServiceClientConfig {
     private final Map<String, String> metadata;
     private final String defaultEndpoint;
     private final String version;
+    private final HttpClient.Version httpVersion;
+    private final Duration connectTimeout;
+    private final HttpClient.Redirect redirectPolicy;
+    private final int maxErrorBodyBytes;
+    private volatile HttpClient endpointClient;
 
     public ServiceClientConfig(String serviceName,
             ClientConfig clientConfig,
@@ -65,6 +97,96 @@ public final class ServiceClientConfig {
         this.metadata = metadata;
         // Validate the endpoint early
         URI.create(endpoint());
+        httpVersion = metadata(METADATA_KEY_HTTP_VERSION).map(ServiceClientConfig::parseHttpVersion)
+                .orElse(HttpClient.Version.HTTP_1_1);
+        connectTimeout = duration(METADATA_KEY_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT);
+        redirectPolicy = metadata(METADATA_KEY_FOLLOW_REDIRECTS).map(ServiceClientConfig::parseRedirect)
+                .orElse(HttpClient.Redirect.ALWAYS);
+        maxErrorBodyBytes = metadata(METADATA_KEY_MAX_ERROR_BODY_BYTES).map(ServiceClientConfig::parseByteCount)
+                .orElse(DEFAULT_MAX_ERROR_BODY_BYTES);
+    }
+
+    private static Integer parseByteCount(String value) {
+        try {
+            int result = Integer.parseInt(value.trim());
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException ex) {
+            // fall through
+        }
+        return badValue(METADATA_KEY_MAX_ERROR_BODY_BYTES, value);
+    }
+
+    private static HttpClient.Version parseHttpVersion(String value) {
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "http/2":
+            case "http2":
+            case "h2":
+            case "h2c":
+            case "http_2":
+                return HttpClient.Version.HTTP_2;
+            case "http/1.1":
+            case "http1.1":
+            case "http_1_1":
+                return HttpClient.Version.HTTP_1_1;
+            default:
+                return badValue(METADATA_KEY_HTTP_VERSION, value);
+        }
+    }
+
+    private static HttpClient.Redirect parseRedirect(String value) {
+        try {
+            return HttpClient.Redirect.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return badValue(METADATA_KEY_FOLLOW_REDIRECTS, value);
+        }
+    }
+
+    private static <T> T badValue(String metadataKey, String value) {
+        // Like a bad duration, a bad value is logged once and the default used
+        if (LOGGED_BAD_VALUES.add(metadataKey + "=" + value)) {
+            System.err.println("Invalid configuration value for '"
+                    + metadataKey + "': " + value);
+        }
+        return null;
+    }
+
+    /**
+     * The HTTP version requests to this service are made with.
+     *
+     * @return A version
+     */
+    public HttpClient.Version httpVersion() {
+        return httpVersion;
+    }
+
+    /**
+     * The timeout for connecting to this service.
+     *
+     * @return A duration
+     */
+    public Duration connectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * The policy for following redirects from this service.
+     *
+     * @return A redirect policy
+     */
+    public HttpClient.Redirect redirectPolicy() {
+        return redirectPolicy;
+    }
+
+    /**
+     * The maximum number of bytes of a response body retained for the text
+     * of failure and decoding-error results.
+     *
+     * @return A byte count
+     */
+    public int maxErrorBodyBytes() {
+        return maxErrorBodyBytes;
     }
 
     public String serviceName() {
@@ -114,7 +236,7 @@ public final class ServiceClientConfig {
 
     public <R> CompletableFuture<HttpResponse<R>> request(URI fullUri, ThrowingConsumer<HttpRequest.Builder> c, BodyHandler<R> handler) {
         try {
-            return run(client -> {
+            return clientConfig.withClient(this, client -> {
                 HttpRequest.Builder bldr = HttpRequest.newBuilder(fullUri);
                 bldr.header("user-agent", serviceName.toLowerCase() + "-client-" + version);
                 c.accept(bldr);
@@ -149,8 +271,18 @@ public final class ServiceClientConfig {
         return result;
     }
 
+    /**
+     * Get the client used for requests to this service's endpoint.
+     *
+     * @return A client
+     */
     public final HttpClient client() {
-        return clientConfig.client();
+        HttpClient result = endpointClient;
+        if (result == null) {
+            // Racing here only costs a second map lookup
+            endpointClient = result = clientConfig.client(this);
+        }
+        return result;
     }
 
     public final Optional<String> metadata(String key) {
@@ -163,7 +295,7 @@ public final class ServiceClientConfig {
             try {
                 return Duration.parse(dur);
             } catch (Exception | Error e) {
-                if (LOGGED_BAD_DURATION_STRINGS.add(metadataKey + "=" + dur)) {
+                if (LOGGED_BAD_VALUES.add(metadataKey + "=" + dur)) {
                     e.printStackTrace();
                 }
                 return defaultValue;
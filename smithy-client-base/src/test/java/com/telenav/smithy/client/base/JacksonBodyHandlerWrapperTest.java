@@ -0,0 +1,220 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.client.base;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import com.telenav.smithy.client.result.ServiceResult;
+import com.telenav.smithy.client.state.CompletionReason;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+public class JacksonBodyHandlerWrapperTest {
+
+    private static final int MAX_ERROR_BODY_BYTES = 16;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final JacksonBodyHandlerWrapper<Thing> handler = new JacksonBodyHandlerWrapper<>(
+            new ObjectMapper(), Thing.class, MAX_ERROR_BODY_BYTES, executor);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testBodyIsDecodedAsItArrives() throws Exception {
+        ServiceResult<Thing> result = receive(200, "{\"name\":\"a long enough name\",\"count\":23}", 3);
+        assertEquals(CompletionReason.COMPLETED, result.reason());
+        assertEquals(new Thing("a long enough name", 23), result.result().get());
+    }
+
+    @Test
+    public void testDecodingErrorRetainsTheHeadOfTheBody() throws Exception {
+        ServiceResult<Thing> result = receive(200, "{\"name\": oops, this is not json at all }", 5);
+        assertEquals(CompletionReason.INVALID_RESPONSE, result.reason());
+        assertTrue(result.thrown().get() instanceof JsonProcessingException, result.toString());
+        assertEquals("{\"name\": oops, t", result.errorMessage().get());
+    }
+
+    @Test
+    public void testFailureBodyIsTruncated() throws Exception {
+        ServiceResult<Thing> result = receive(404, "No such thing here, or anywhere else", 4);
+        assertEquals(CompletionReason.FAILED, result.reason());
+        assertEquals(404, result.status());
+        assertEquals("No such thing he", result.errorMessage().get());
+
+        result = receive(500, "Short", 4);
+        assertEquals("Short", result.errorMessage().get());
+    }
+
+    @Test
+    public void testEmptyBodyIsADecodingError() throws Exception {
+        ServiceResult<Thing> result = receive(200, "", 1);
+        assertEquals(CompletionReason.INVALID_RESPONSE, result.reason());
+        assertEquals("", result.errorMessage().get());
+    }
+
+    @Test
+    public void testConcurrentResponsesDoNotStarveTheClientsExecutor() throws Exception {
+        assertNotSame(ClientConfig.get().executor(), ClientConfig.get().decodeExecutor());
+        int count = 8;
+        // Hold every body back until all the responses have started, so
+        // each one has a decoder waiting on it at once
+        CountDownLatch started = new CountDownLatch(count);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.flush();
+                started.countDown();
+                started.await(10, SECONDS);
+                out.write("{\"name\":\"concurrent\",\"count\":".getBytes(UTF_8));
+                out.flush();
+                out.write("1}".getBytes(UTF_8));
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        });
+        server.start();
+        // Fewer client threads than responses, so decoders blocking them
+        // would leave nothing to feed the bodies to the decoders
+        ExecutorService clientThreads = Executors.newFixedThreadPool(2);
+        ExecutorService decodeThreads = Executors.newFixedThreadPool(2);
+        try {
+            HttpClient client = HttpClient.newBuilder().executor(clientThreads).build();
+            JacksonBodyHandlerWrapper<Thing> wrapper = new JacksonBodyHandlerWrapper<>(
+                    new ObjectMapper(), Thing.class, MAX_ERROR_BODY_BYTES, decodeThreads);
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/");
+            List<CompletableFuture<HttpResponse<ServiceResult<Thing>>>> responses = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                responses.add(client.sendAsync(HttpRequest.newBuilder(uri).build(), wrapper));
+            }
+            for (CompletableFuture<HttpResponse<ServiceResult<Thing>>> resp : responses) {
+                assertEquals(new Thing("concurrent", 1),
+                        resp.get(30, SECONDS).body().result().get());
+            }
+        } finally {
+            server.stop(0);
+            clientThreads.shutdownNow();
+            decodeThreads.shutdownNow();
+        }
+    }
+
+    private ServiceResult<Thing> receive(int status, String body, int chunkSize) throws Exception {
+        BodySubscriber<ServiceResult<Thing>> sub = handler.apply(new Info(status));
+        // Deliver chunks only as they are requested, as the HTTP client does
+        Semaphore demand = new Semaphore(0);
+        sub.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                demand.release((int) Math.min(n, Integer.MAX_VALUE / 2));
+            }
+
+            @Override
+            public void cancel() {
+                demand.release(Integer.MAX_VALUE / 2);
+            }
+        });
+        byte[] bytes = body.getBytes(UTF_8);
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            assertTrue(demand.tryAcquire(10, SECONDS), "Nothing requested");
+            int len = Math.min(chunkSize, bytes.length - i);
+            ByteBuffer buf = ByteBuffer.allocateDirect(len);
+            buf.put(bytes, i, len).flip();
+            sub.onNext(List.of(buf));
+        }
+        sub.onComplete();
+        return sub.getBody().toCompletableFuture().get(10, SECONDS);
+    }
+
+    public static final class Thing {
+
+        public String name;
+        public int count;
+
+        public Thing() {
+        }
+
+        Thing(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Thing && Objects.equals(name, ((Thing) o).name)
+                    && count == ((Thing) o).count;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, count);
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + count;
+        }
+    }
+
+    private static final class Info implements HttpResponse.ResponseInfo {
+
+        private final int status;
+
+        Info(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public int statusCode() {
+            return status;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return HttpHeaders.of(Map.of(), (a, b) -> true);
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return HttpClient.Version.HTTP_1_1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.client.base;
+
+import static com.telenav.smithy.client.base.ServiceClientConfig.DEFAULT_CONNECT_TIMEOUT;
+import static com.telenav.smithy.client.base.ServiceClientConfig.DEFAULT_MAX_ERROR_BODY_BYTES;
+import static com.telenav.smithy.client.base.ServiceClientConfig.METADATA_KEY_CONNECT_TIMEOUT;
+import static com.telenav.smithy.client.base.ServiceClientConfig.METADATA_KEY_FOLLOW_REDIRECTS;
+import static com.telenav.smithy.client.base.ServiceClientConfig.METADATA_KEY_HTTP_VERSION;
+import static com.telenav.smithy.client.base.ServiceClientConfig.METADATA_KEY_MAX_ERROR_BODY_BYTES;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceClientConfigTest {
+
+    @Test
+    public void testBadMetadataFallsBackToDefaults() {
+        ServiceClientConfig config = config("http://localhost:8080/", Map.of(
+                METADATA_KEY_HTTP_VERSION, "http/3",
+                METADATA_KEY_FOLLOW_REDIRECTS, "sometimes",
+                METADATA_KEY_CONNECT_TIMEOUT, "5 seconds",
+                METADATA_KEY_MAX_ERROR_BODY_BYTES, "lots"));
+        assertEquals(HttpClient.Version.HTTP_1_1, config.httpVersion());
+        assertEquals(HttpClient.Redirect.ALWAYS, config.redirectPolicy());
+        assertEquals(DEFAULT_CONNECT_TIMEOUT, config.connectTimeout());
+        assertEquals(DEFAULT_MAX_ERROR_BODY_BYTES, config.maxErrorBodyBytes());
+        assertEquals(DEFAULT_MAX_ERROR_BODY_BYTES, config("http://localhost:8080/",
+                Map.of(METADATA_KEY_MAX_ERROR_BODY_BYTES, "-1")).maxErrorBodyBytes());
+    }
+
+    @Test
+    public void testMetadataIsParsed() {
+        ServiceClientConfig config = config("http://localhost:8080/", Map.of(
+                METADATA_KEY_HTTP_VERSION, " H2C ",
+                METADATA_KEY_FOLLOW_REDIRECTS, "never",
+                METADATA_KEY_CONNECT_TIMEOUT, "PT5S",
+                METADATA_KEY_MAX_ERROR_BODY_BYTES, "100"));
+        assertEquals(HttpClient.Version.HTTP_2, config.httpVersion());
+        assertEquals(HttpClient.Redirect.NEVER, config.redirectPolicy());
+        assertEquals(Duration.ofSeconds(5), config.connectTimeout());
+        assertEquals(100, config.maxErrorBodyBytes());
+    }
+
+    @Test
+    public void testClientsAreSharedByEndpointAndSettings() {
+        Map<String, String> h2 = Map.of(METADATA_KEY_HTTP_VERSION, "http/2");
+        ServiceClientConfig a = config("http://localhost:8080/", h2);
+        ServiceClientConfig b = config("http://LOCALHOST:8080/other/", h2);
+        ServiceClientConfig otherPort = config("http://localhost:8081/", h2);
+        ServiceClientConfig otherVersion = config("http://localhost:8080/", Map.of());
+        assertSame(a.client(), b.client());
+        assertNotSame(a.client(), otherPort.client());
+        assertNotSame(a.client(), otherVersion.client());
+        assertEquals(HttpClient.Version.HTTP_2, a.client().version());
+        assertEquals(HttpClient.Version.HTTP_1_1, otherVersion.client().version());
+    }
+
+    private static ServiceClientConfig config(String endpoint, Map<String, String> metadata) {
+        return new ServiceClientConfig("ServiceClientConfigTest", ClientConfig.get(), metadata,
+                endpoint, "1");
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.client.base;
+
+import static com.telenav.smithy.client.base.ServiceClientConfig.METADATA_KEY_HTTP_VERSION;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Map;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the HTTP version responses actually arrive with, against Vert.x
+ * servers standing in for services, which accept an upgrade to h2c.
+ */
+public class ServiceClientConfigVertxTest {
+
+    private static Vertx vertx;
+    private static HttpServer endpoint;
+    private static HttpServer elsewhere;
+
+    @BeforeAll
+    public static void startServers() throws Exception {
+        vertx = Vertx.vertx();
+        endpoint = startServer();
+        elsewhere = startServer();
+    }
+
+    @AfterAll
+    public static void stopServers() throws Exception {
+        if (vertx != null) {
+            vertx.close().toCompletionStage().toCompletableFuture().get(10, SECONDS);
+        }
+    }
+
+    private static HttpServer startServer() throws Exception {
+        return vertx.createHttpServer(new HttpServerOptions().setHttp2ClearTextEnabled(true))
+                .requestHandler(req -> req.response().end(req.version().name()))
+                .listen(0)
+                .toCompletionStage().toCompletableFuture().get(10, SECONDS);
+    }
+
+    @Test
+    public void testHttp2IsNegotiatedWithTheEndpoint() throws Exception {
+        ServiceClientConfig config = config("h2");
+        HttpResponse<String> resp = config.request("hello", BodyHandlers.ofString(), bldr -> {
+        }).get(10, SECONDS);
+        assertEquals(200, resp.statusCode());
+        assertEquals(HttpClient.Version.HTTP_2, resp.version());
+        assertEquals("HTTP_2", resp.body());
+    }
+
+    @Test
+    public void testAbsoluteUrisElsewhereUseTheEndpointsClient() throws Exception {
+        ServiceClientConfig config = config("h2");
+        HttpClient client = config.client();
+        URI uri = URI.create("http://localhost:" + elsewhere.actualPort() + "/there");
+        HttpResponse<String> resp = config.request(uri.toString(), BodyHandlers.ofString(), bldr -> {
+        }).get(10, SECONDS);
+        assertEquals(HttpClient.Version.HTTP_2, resp.version());
+        assertEquals("HTTP_2", resp.body());
+        assertSame(client, config.client());
+    }
+
+    @Test
+    public void testHttp11IsUsedIfConfigured() throws Exception {
+        ServiceClientConfig config = config("http/1.1");
+        HttpResponse<String> resp = config.request("hello", BodyHandlers.ofString(), bldr -> {
+        }).get(10, SECONDS);
+        assertEquals(HttpClient.Version.HTTP_1_1, resp.version());
+        assertEquals("HTTP_1_1", resp.body());
+    }
+
+    private static ServiceClientConfig config(String httpVersion) {
+        return new ServiceClientConfig("ServiceClientConfigVertxTest", ClientConfig.get(),
+                Map.of(METADATA_KEY_HTTP_VERSION, httpVersion),
+                "http://localhost:" + endpoint.actualPort() + "/", "1");
+    }
+}
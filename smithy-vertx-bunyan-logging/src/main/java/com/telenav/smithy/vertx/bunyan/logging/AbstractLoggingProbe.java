@@ -15,17 +15,22 @@
  */
 package com.telenav.smithy.vertx.bunyan.logging;
 
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.mastfrog.bunyan.java.v2.Log;
 import com.mastfrog.bunyan.java.v2.Logs;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.shutdown.hooks.ShutdownHooks;
 import com.telenav.periodic.metrics.BuiltInMetrics;
 import com.telenav.periodic.metrics.MetricsSink;
+import com.telenav.smithy.vertx.periodic.metrics.ExemplarTimingConsumer;
 import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.DEFAULT_DUMP_STACKS_TO_SYSTEM_ERR;
 import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.DEFAULT_EXIT_ON_VERTICLE_FAILURE;
+import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.DEFAULT_MAX_LOGGED_PAYLOAD_BYTES;
 import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.SETTINGS_KEY_DUMP_STACKS_TO_SYSTEM_ERR;
 import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.SETTINGS_KEY_EXIT_ON_VERTICLE_LAUNCH_FAILULRE;
+import static com.telenav.smithy.vertx.bunyan.logging.BunyanLoggingAndMetricsSupport.SETTINGS_KEY_MAX_LOGGED_PAYLOAD_BYTES;
 import com.telenav.smithy.vertx.probe.Probe;
+import com.telenav.smithy.vertx.probe.ProbeEvent;
 import com.telenav.smithy.vertx.probe.ProbeImplementation;
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Handler;
@@ -37,6 +42,7 @@ import io.vertx.core.net.SocketAddress;
 import io.vertx.ext.web.RoutingContext;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import java.time.Duration;
 import java.util.Map;
 import java.util.Optional;
@@ -58,6 +64,7 @@ abstract class AbstractLoggingProbe<Op extends Enum<Op>> implements ProbeImpleme
     protected final BiConsumer<Op, Duration> opMetrics;
     protected final boolean dumpStacks;
     protected final boolean exitOnVerticleFailure;
+    protected final int maxPayloadBytes;
     protected final Runnable onShutdown = this::shuttingDown;
     protected volatile boolean shuttingDown;
 
@@ -71,6 +78,8 @@ abstract class AbstractLoggingProbe<Op extends Enum<Op>> implements ProbeImpleme
                 DEFAULT_DUMP_STACKS_TO_SYSTEM_ERR);
         this.exitOnVerticleFailure = settings.getBoolean(SETTINGS_KEY_EXIT_ON_VERTICLE_LAUNCH_FAILULRE,
                 DEFAULT_EXIT_ON_VERTICLE_FAILURE);
+        this.maxPayloadBytes = Math.max(0, settings.getInt(SETTINGS_KEY_MAX_LOGGED_PAYLOAD_BYTES,
+                DEFAULT_MAX_LOGGED_PAYLOAD_BYTES));
         this.opMetrics = opMetrics;
     }
 
@@ -188,6 +197,16 @@ abstract class AbstractLoggingProbe<Op extends Enum<Op>> implements ProbeImpleme
         });
     }
 
+    @Override
+    public final void onAfterPayloadRead(Op op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> payload, Buffer raw) {
+        logs.trace("readInbound", log -> {
+            // The client's bytes are not embedded as raw JSON - Jackson accepts
+            // input, such as trailing content, which could corrupt the record
+            addPayload(log, raw, false);
+            includeRequestId(event, log.add("op", loggingNameOf(op)).add("hasPayload", payload.isPresent()));
+        });
+    }
+
     @Override
     public final void onBeforeSendResponse(Op op, RoutingContext event, Optional<?> payload) {
         logs.trace("sendResponse", log -> {
@@ -196,6 +215,50 @@ abstract class AbstractLoggingProbe<Op extends Enum<Op>> implements ProbeImpleme
         });
     }
 
+    @Override
+    public final void onBeforeSendResponse(Op op, RoutingContext event, Optional<?> payload, Buffer serialized) {
+        logs.trace("sendResponse", log -> {
+            addPayload(log, serialized, true);
+            includeRequestId(event, log.add("op", loggingNameOf(op)).add("hasPayload", payload.isPresent()));
+        });
+    }
+
+    /**
+     * Add already-serialized payload bytes to a log record, as a raw JSON
+     * fragment if they were produced by our own serialization and are under
+     * the size limit, so they are not serialized a second time.
+     */
+    private void addPayload(Log log, Buffer bytes, boolean embedRaw) {
+        int length = bytes.length();
+        if (length > maxPayloadBytes) {
+            log.add("payload", bytes.getString(0, utf8Boundary(bytes, maxPayloadBytes), UTF_8.name()))
+                    .add("payloadTruncated", true);
+        } else if (embedRaw) {
+            log.add("payload", new RawValue(bytes.toString(UTF_8)));
+        } else {
+            log.add("payload", bytes.toString(UTF_8));
+        }
+        log.add("payloadBytes", length);
+    }
+
+    /**
+     * Move a cut point in UTF-8 bytes back to the start of the character it
+     * falls inside, if any, so truncating there does not split a multi-byte
+     * sequence.
+     *
+     * @param bytes Some UTF-8 bytes
+     * @param end The number of bytes wanted, less than the length
+     * @return The number of bytes to take
+     */
+    static int utf8Boundary(Buffer bytes, int end) {
+        // Continuation bytes are 10xxxxxx; a sequence is at most four bytes
+        int result = end;
+        while (result > 0 && end - result < 3 && (bytes.getByte(result) & 0xC0) == 0x80) {
+            result--;
+        }
+        return result;
+    }
+
     @Override
     public final void onAfterSendResponse(Op op, RoutingContext event, int status) {
         includeRequestId(event, logs.debug("afterSendResponse").add("op", loggingNameOf(op)).add("status", status));
@@ -205,7 +268,72 @@ abstract class AbstractLoggingProbe<Op extends Enum<Op>> implements ProbeImpleme
     public final void onResponseCompleted(Op op, RoutingContext event, int status) {
         Duration dur = Probe.durationOf(event);
         includeRequestId(event, logs.info("completed").add("op", loggingNameOf(op)).add("status", status).add("duration", dur));
-        opMetrics.accept(op, dur);
+        onCompleted(op, dur, event.get(Probe.REQUEST_ID_KEY));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onCompleted(Op op, Duration dur, Object reqId) {
+        if (opMetrics instanceof ExemplarTimingConsumer<?> && reqId != null) {
+            ((ExemplarTimingConsumer<Op>) opMetrics).accept(op, dur, reqId);
+        } else {
+            opMetrics.accept(op, dur);
+        }
+    }
+
+    @Override
+    public final boolean acceptsRequestEvents() {
+        return true;
+    }
+
+    @Override
+    public final void onRequestEvent(ProbeEvent<? extends Op> event) {
+        Op op = event.operation();
+        switch (event.kind()) {
+            case START_REQUEST:
+                includeEventInfo(event, logs.trace("startRequest").add("op", loggingNameOf(op)));
+                break;
+            case ENTER_HANDLER:
+                includeEventInfo(event, logs.debug("enter").add("op", loggingNameOf(op))
+                        .add("in", event.handler().getSimpleName()));
+                break;
+            case BEFORE_SEND_RESPONSE:
+                logs.trace("sendResponse", log -> {
+                    Optional<?> payload = event.payload();
+                    Optional<Buffer> serialized = event.serializedPayload();
+                    if (serialized.isPresent()) {
+                        addPayload(log, serialized.get(), true);
+                    } else {
+                        payload.ifPresent(pay -> log.add("payload", pay));
+                    }
+                    addRequestId(event.requestId(), log.add("op", loggingNameOf(op))
+                            .add("hasPayload", payload.isPresent()));
+                });
+                break;
+            case RESPONSE_COMPLETED:
+                Duration dur = Duration.ofNanos(event.durationNanos());
+                addRequestId(event.requestId(), logs.info("completed").add("op", loggingNameOf(op))
+                        .add("status", event.status()).add("duration", dur));
+                onCompleted(op, dur, event.requestId());
+                break;
+        }
+    }
+
+    private void includeEventInfo(ProbeEvent<?> event, Log log) {
+        try (log) {
+            log.add("uri", event.uri()).add("method", event.method().name());
+            Object reqId = event.requestId();
+            if (reqId != null) {
+                log.add("requestId", reqId);
+            }
+        }
+    }
+
+    private void addRequestId(Object reqId, Log log) {
+        try (log) {
+            if (reqId != null) {
+                log.add("requestId", reqId);
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,262 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mastfrog.bunyan.java.v2.JSONContext;
+import com.mastfrog.bunyan.java.v2.LogSink;
+import com.mastfrog.shutdown.hooks.ShutdownHooks;
+import com.telenav.smithy.vertx.probe.ProbeOverflowPolicy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+
+/**
+ * A bunyan LogSink which serializes each record into a pooled buffer on the
+ * thread that logs it, and hands it to a single writer thread, which drains
+ * whatever has accumulated into one gathering write to a FileChannel - so
+ * threads which log never touch the file, and under load many records go to
+ * disk per system call.
+ * <p>
+ * The queue of records waiting to be written is bounded; when it is full,
+ * records are either dropped and counted or the logging thread waits for the
+ * writer to catch up, depending on the overflow policy. Queue depth and drop
+ * counts are reported as metrics by LogWriterMetrics.
+ * </p><p>
+ * The file is closed by a shutdown hook registered last, so that whatever
+ * probes and metrics log while shutting down is written first; records logged
+ * after that are counted as dropped.
+ * </p>
+ */
+final class AsyncLogWriter implements LogSink {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int BUFFER_SIZE = 1024;
+    // Buffers which have grown far beyond the usual size are not pooled, so
+    // one huge record does not pin memory forever
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private final ArrayBlockingQueue<LogRecordBuffer> queue;
+    private final ArrayBlockingQueue<LogRecordBuffer> pool;
+    private final ProbeOverflowPolicy overflow;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final int capacity;
+    private FileChannel channel;
+    private Thread writer;
+    private volatile boolean closed;
+
+    AsyncLogWriter(int capacity, ProbeOverflowPolicy overflow) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1 but got " + capacity);
+        }
+        this.capacity = capacity;
+        this.overflow = overflow;
+        queue = new ArrayBlockingQueue<>(capacity);
+        // A buffer in use by each logging thread, plus the queue's worth
+        pool = new ArrayBlockingQueue<>(capacity + Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Open the log file and start the writer thread.
+     *
+     * @param file The file to append to
+     * @throws IOException If the file cannot be opened
+     */
+    synchronized void open(Path file) throws IOException {
+        if (channel != null) {
+            throw new IllegalStateException("Already writing to a file");
+        }
+        channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+        writer = new Thread(this::writeLoop, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Inject
+    void closeOnShutdown(ShutdownHooks hooks) {
+        hooks.addLast(this::close);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    long written() {
+        return written.sum();
+    }
+
+    @Override
+    public void push(JSONContext ctx, Map<String, Object> logrecord) {
+        push(ctx.mapper(), logrecord);
+    }
+
+    void push(ObjectMapper mapper, Map<String, Object> logrecord) {
+        if (closed) {
+            dropped.increment();
+            return;
+        }
+        LogRecordBuffer buf = pool.poll();
+        if (buf == null) {
+            buf = new LogRecordBuffer(BUFFER_SIZE);
+        }
+        buf.writeRecord(mapper, logrecord);
+        switch (overflow) {
+            case DROP:
+                if (!queue.offer(buf)) {
+                    dropped.increment();
+                    recycle(buf);
+                    return;
+                }
+                break;
+            case BLOCK:
+                try {
+                    queue.put(buf);
+                } catch (InterruptedException ex) {
+                    dropped.increment();
+                    recycle(buf);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                break;
+            default:
+                throw new AssertionError(overflow);
+        }
+        // If the writer may already have made its last pass over the queue,
+        // take the record back - if it is still there, it will never be written
+        if (closed && queue.remove(buf)) {
+            dropped.increment();
+            recycle(buf);
+        }
+    }
+
+    private void recycle(LogRecordBuffer buf) {
+        if (buf.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+            pool.offer(buf.clear());
+        }
+    }
+
+    private void writeLoop() {
+        List<LogRecordBuffer> batch = new ArrayList<>(BATCH_SIZE);
+        ByteBuffer[] buffers = new ByteBuffer[BATCH_SIZE];
+        for (;;) {
+            try {
+                // Read before polling: a record queued after a last, empty
+                // poll is then certain to see the flag and be taken back
+                boolean closing = closed;
+                LogRecordBuffer first = closing ? queue.poll()
+                        : queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closing) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch, buffers);
+            } catch (InterruptedException ex) {
+                // Keep going - exit only once closed with the queue empty
+            } catch (IOException | RuntimeException ex) {
+                // Nowhere to log this but stderr; the records are lost
+                ex.printStackTrace(System.err);
+                dropped.add(batch.size());
+            } finally {
+                for (LogRecordBuffer buf : batch) {
+                    recycle(buf);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<LogRecordBuffer> batch, ByteBuffer[] buffers) throws IOException {
+        int count = batch.size();
+        long remaining = 0;
+        for (int i = 0; i < count; i++) {
+            buffers[i] = batch.get(i).toByteBuffer();
+            remaining += buffers[i].remaining();
+        }
+        try {
+            int offset = 0;
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, offset, count - offset);
+                while (offset < count && !buffers[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+            written.add(count);
+        } finally {
+            Arrays.fill(buffers, 0, count, null);
+        }
+    }
+
+    /**
+     * Write any queued records and close the file.
+     */
+    void close() {
+        Thread w;
+        FileChannel ch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            w = writer;
+            ch = channel;
+        }
+        if (w == null) {
+            return;
+        }
+        try {
+            // The writer exits once the queue is drained
+            w.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            ch.force(false);
+            ch.close();
+        } catch (IOException ex) {
+            ex.printStackTrace(System.err);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncLogWriter(" + queued() + " / " + capacity + " queued, "
+                + dropped() + " dropped, " + overflow + ")";
+    }
+}
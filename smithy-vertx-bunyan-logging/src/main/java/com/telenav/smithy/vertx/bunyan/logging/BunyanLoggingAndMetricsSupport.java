@@ -18,8 +18,10 @@ package com.telenav.smithy.vertx.bunyan.logging;
 import com.mastfrog.giulius.annotations.Setting;
 import static com.mastfrog.giulius.annotations.Setting.Tier.TERTIARY;
 import static com.mastfrog.giulius.annotations.Setting.ValueType.BOOLEAN;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.INTEGER;
 import com.mastfrog.settings.Settings;
 import com.telenav.periodic.metrics.OutboundMetricsSink;
+import com.telenav.smithy.vertx.periodic.metrics.OperationMetricsProbe;
 import com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport;
 import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.vertxMetricsSupport;
 import com.telenav.smithy.vertx.probe.ProbeImplementation;
@@ -46,6 +48,13 @@ public final class BunyanLoggingAndMetricsSupport<Op extends Enum<Op>> {
             + "open)", defaultValue = DEFAULT_EXIT_ON_VERTICLE_FAILURE + "", tier = TERTIARY)
     public static final String SETTINGS_KEY_EXIT_ON_VERTICLE_LAUNCH_FAILULRE = "exit.on.verticle.failure";
 
+    static final int DEFAULT_MAX_LOGGED_PAYLOAD_BYTES = 16384;
+    @Setting(type = INTEGER, value = "The maximum number of bytes of a request or response payload "
+            + "to include in trace-level log records; longer payloads are truncated and logged as "
+            + "strings rather than as JSON.", defaultValue = DEFAULT_MAX_LOGGED_PAYLOAD_BYTES + "",
+            tier = TERTIARY)
+    public static final String SETTINGS_KEY_MAX_LOGGED_PAYLOAD_BYTES = "log.payload.max.bytes";
+
     private boolean collectDbTimings;
     private boolean installLoggingModule = true;
     private boolean installMetricsSupport = true;
@@ -80,9 +89,13 @@ public final class BunyanLoggingAndMetricsSupport<Op extends Enum<Op>> {
         }
         if (installMetricsSupport) {
             VertxMetricsSupport<Op> vms = vertxMetricsSupport(opType, LogsOutboundMetricsSink.class);
+            probeConsumer.accept((Class) OperationMetricsProbe.class);
             if (collectDbTimings) {
                 vms.collectDbTimings();
             }
+            if (installLoggingModule && Logging.isAsync(settings)) {
+                vms.withModule(binder -> binder.bind(LogWriterMetrics.class).asEagerSingleton());
+            }
             vms.attachTo(mod);
         }
     }
@@ -0,0 +1,214 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A reusable buffer which a log record is serialized into as a line of UTF-8
+ * JSON on the thread that logs it, to be written by AsyncLogWriter's writer
+ * thread and then returned to its pool.
+ * <p>
+ * Strings, booleans and primitive numbers are encoded directly; every other
+ * value is written by the logging context's ObjectMapper into the same
+ * storage, so payloads, times and anything with a custom serializer come out
+ * exactly as they would from a synchronous log.
+ * </p>
+ */
+final class LogRecordBuffer {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private final OutputStream out = new Appender();
+    private byte[] bytes;
+    private int length;
+
+    LogRecordBuffer(int initialSize) {
+        bytes = new byte[initialSize];
+    }
+
+    int capacity() {
+        return bytes.length;
+    }
+
+    int length() {
+        return length;
+    }
+
+    LogRecordBuffer clear() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * Wrap the current contents for writing to a channel.
+     *
+     * @return A byte buffer sharing this buffer's storage
+     */
+    ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    private void ensure(int more) {
+        if (length + more > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + more));
+        }
+    }
+
+    private void put(char c) {
+        ensure(1);
+        bytes[length++] = (byte) c;
+    }
+
+    private void putAscii(String s) {
+        int len = s.length();
+        ensure(len);
+        for (int i = 0; i < len; i++) {
+            bytes[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    LogRecordBuffer writeRecord(ObjectMapper mapper, Map<String, Object> record) {
+        put('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> e : record.entrySet()) {
+            if (!first) {
+                put(',');
+            }
+            first = false;
+            writeString(String.valueOf(e.getKey()));
+            put(':');
+            writeValue(mapper, e.getValue());
+        }
+        put('}');
+        put('\n');
+        return this;
+    }
+
+    private void writeValue(ObjectMapper mapper, Object o) {
+        if (o == null) {
+            putAscii("null");
+        } else if (o instanceof String) {
+            writeString((String) o);
+        } else if (o instanceof Boolean || o instanceof Integer || o instanceof Long
+                || o instanceof Short || o instanceof Byte) {
+            putAscii(o.toString());
+        } else if (o instanceof Double || o instanceof Float) {
+            double d = ((Number) o).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                writeString(o.toString());
+            } else {
+                putAscii(o.toString());
+            }
+        } else {
+            int mark = length;
+            try {
+                mapper.writeValue(out, o);
+            } catch (IOException | RuntimeException ex) {
+                // Keep the rest of the record rather than losing it to one
+                // value which cannot be serialized
+                length = mark;
+                writeString(o.getClass().getName() + ": " + ex);
+            }
+        }
+    }
+
+    private void writeString(CharSequence s) {
+        put('"');
+        writeChars(s);
+        put('"');
+    }
+
+    private void writeChars(CharSequence s) {
+        int len = s.length();
+        // Worst case is three bytes per char, or six for an escape
+        ensure(len * 3);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                bytes[length++] = '\\';
+                bytes[length++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(6);
+                switch (c) {
+                    case '\n':
+                        bytes[length++] = '\\';
+                        bytes[length++] = 'n';
+                        break;
+                    case '\r':
+                        bytes[length++] = '\\';
+                        bytes[length++] = 'r';
+                        break;
+                    case '\t':
+                        bytes[length++] = '\\';
+                        bytes[length++] = 't';
+                        break;
+                    default:
+                        bytes[length++] = '\\';
+                        bytes[length++] = 'u';
+                        bytes[length++] = '0';
+                        bytes[length++] = '0';
+                        bytes[length++] = HEX[c >> 4];
+                        bytes[length++] = HEX[c & 0xF];
+                }
+            } else if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                bytes[length++] = (byte) (0xF0 | (cp >> 18));
+                bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate
+                bytes[length++] = '?';
+            } else {
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Lets the ObjectMapper append to the buffer's storage.
+     */
+    private final class Appender extends OutputStream {
+
+        @Override
+        public void write(int b) {
+            ensure(1);
+            bytes[length++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+    }
+}
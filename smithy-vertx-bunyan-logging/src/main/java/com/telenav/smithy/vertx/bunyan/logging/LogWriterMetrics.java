@@ -0,0 +1,70 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import com.telenav.periodic.metrics.Metric;
+import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.OnDemandMetric;
+import static com.telenav.periodic.metrics.OnDemandMetric.onDemandMetric;
+import java.util.Arrays;
+import java.util.Collection;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Reports the state of the AsyncLogWriter, if asynchronous logging is
+ * enabled, into periodic metrics.
+ */
+@Singleton
+final class LogWriterMetrics extends MetricsRegistry {
+
+    private final AsyncLogWriter writer;
+
+    @Inject
+    LogWriterMetrics(MetricsRegistrar registrar, AsyncLogWriter writer) {
+        super(registrar);
+        this.writer = writer;
+    }
+
+    @Override
+    public Collection<? extends OnDemandMetric<Long>> onDemandMetrics() {
+        return Arrays.asList(
+                onDemandMetric(LogWriterMetric.LOG_QUEUE_DEPTH, () -> (long) writer.queued()),
+                onDemandMetric(LogWriterMetric.LOG_RECORDS_DROPPED, writer::dropped),
+                onDemandMetric(LogWriterMetric.LOG_RECORDS_WRITTEN, writer::written));
+    }
+
+    enum LogWriterMetric implements Metric {
+        LOG_QUEUE_DEPTH,
+        LOG_RECORDS_DROPPED,
+        LOG_RECORDS_WRITTEN;
+
+        @Override
+        public boolean isOnDemand() {
+            return true;
+        }
+
+        @Override
+        public boolean isCumulative() {
+            return this != LOG_QUEUE_DEPTH;
+        }
+
+        @Override
+        public String toString() {
+            return loggingName();
+        }
+    }
+}
@@ -19,10 +19,13 @@ import com.google.inject.Binder;
 import com.google.inject.Module;
 import com.mastfrog.giulius.annotations.Setting;
 import static com.mastfrog.giulius.annotations.Setting.Tier.PRIMARY;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.BOOLEAN;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.INTEGER;
 import com.mastfrog.giulius.bunyan.java.v2.LoggingModule;
 import com.mastfrog.settings.Settings;
 import com.mastfrog.util.preconditions.ConfigurationError;
 import com.mastfrog.util.strings.Strings;
+import com.telenav.smithy.vertx.probe.ProbeOverflowPolicy;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -47,14 +50,45 @@ public final class Logging<Op extends Enum<Op>> implements Module {
     public static final String SETTINGS_KEY_LOG_FILE_PREFIX = "log.file.prefix";
     @Setting(value = "The directory in which log files should be placed.", tier = PRIMARY, defaultValue = "./", shortcut = 'd')
     public static final String SETTINGS_KEY_LOG_DIR = "log.dir";
+    @Setting(value = "If true, log records are serialized on the thread that logs them and "
+            + "written to the log file in batches by a dedicated writer thread, rather than "
+            + "written synchronously.", type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_ASYNC_LOG = "log.async";
+    @Setting(value = "The maximum number of log records waiting to be written when "
+            + SETTINGS_KEY_ASYNC_LOG + " is true.", type = INTEGER, defaultValue = "8192")
+    public static final String SETTINGS_KEY_ASYNC_LOG_QUEUE = "log.async.queue";
+    @Setting(value = "What to do with log records when " + SETTINGS_KEY_ASYNC_LOG + " is true "
+            + "and the queue of records waiting to be written is full - 'block' to make the "
+            + "logging thread wait, or 'drop' to discard and count them.", defaultValue = "block")
+    public static final String SETTINGS_KEY_ASYNC_LOG_OVERFLOW = "log.async.overflow";
     private final Set<String> loggers = new HashSet<>(Arrays.asList("ops", "metrics", "startup"));
     private final Class<Op> opType;
     private final Settings settings;
+    private final AsyncLogWriter writer;
 
     public Logging(Settings settings, Class<Op> opType, String... loggersToBind) {
         this.opType = opType;
         this.settings = settings;
         loggers.addAll(asList(loggersToBind));
+        writer = asyncLogWriter(settings);
+    }
+
+    static boolean isAsync(Settings settings) {
+        return settings.getBoolean(SETTINGS_KEY_ASYNC_LOG, false) && !Boolean.getBoolean("unit.test");
+    }
+
+    private static AsyncLogWriter asyncLogWriter(Settings settings) {
+        if (!isAsync(settings)) {
+            return null;
+        }
+        String overflow = settings.getString(SETTINGS_KEY_ASYNC_LOG_OVERFLOW, "block");
+        try {
+            return new AsyncLogWriter(settings.getInt(SETTINGS_KEY_ASYNC_LOG_QUEUE, 8192),
+                    ProbeOverflowPolicy.valueOf(overflow.toUpperCase()));
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationError("Bad value for " + SETTINGS_KEY_ASYNC_LOG_OVERFLOW
+                    + " or " + SETTINGS_KEY_ASYNC_LOG_QUEUE + ": " + ex.getMessage(), ex);
+        }
     }
 
     public Logging bindLogger(String logger, String... more) {
@@ -95,7 +129,12 @@ public final class Logging<Op extends Enum<Op>> implements Module {
                     }
                     Path logFile = Paths.get(logDir).toRealPath().resolve(logFileName);
                     System.out.println("Logging to " + logFile);
-                    config.logToFile(logFile);
+                    if (writer != null) {
+                        writer.open(logFile);
+                        config.logTo(writer);
+                    } else {
+                        config.logToFile(logFile);
+                    }
                     if (settings.getBoolean("log.console", false)) {
                         config.logToConsole();
                     }
@@ -116,5 +155,8 @@ public final class Logging<Op extends Enum<Op>> implements Module {
         }
         configureLogFile(binder, lm);
         binder.install(lm);
+        if (writer != null) {
+            binder.bind(AsyncLogWriter.class).toInstance(writer);
+        }
     }
 }
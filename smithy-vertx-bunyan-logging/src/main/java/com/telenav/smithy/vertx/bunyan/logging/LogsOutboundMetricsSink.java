@@ -16,9 +16,16 @@
 package com.telenav.smithy.vertx.bunyan.logging;
 
 import com.telenav.periodic.metrics.OutboundMetricsSink;
+import com.mastfrog.bunyan.java.v2.Log;
 import com.mastfrog.bunyan.java.v2.Logs;
+import com.telenav.periodic.metrics.Exemplar;
+import com.telenav.periodic.metrics.ExemplarConsumer;
 import com.telenav.periodic.metrics.Metric;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import javax.inject.Inject;
@@ -43,11 +50,44 @@ final class LogsOutboundMetricsSink implements OutboundMetricsSink {
     public void batch(Duration batchDuration, String msg, boolean started, Consumer<BiConsumer<Metric, Long>> c) {
         logs.warn(msg, log -> {
             log.add("interval", batchDuration);
-            c.accept((metric, val) -> {
-                if (started) {
-                    log.add(metric.loggingName(), val);
-                }
-            });
+            LogConsumer consumer = new LogConsumer(log, started);
+            c.accept(consumer);
+            consumer.addExemplars();
         });
     }
+
+    private static final class LogConsumer implements ExemplarConsumer {
+
+        private final Log log;
+        private final boolean started;
+        private Map<Metric, List<String>> exemplars;
+
+        LogConsumer(Log log, boolean started) {
+            this.log = log;
+            this.started = started;
+        }
+
+        @Override
+        public void accept(Metric metric, Long val) {
+            if (started) {
+                log.add(metric.loggingName(), val);
+            }
+        }
+
+        @Override
+        public void exemplar(Metric metric, Exemplar exemplar) {
+            if (started) {
+                if (exemplars == null) {
+                    exemplars = new LinkedHashMap<>();
+                }
+                exemplars.computeIfAbsent(metric, m -> new ArrayList<>()).add(exemplar.toString());
+            }
+        }
+
+        void addExemplars() {
+            if (exemplars != null) {
+                exemplars.forEach((metric, list) -> log.add(metric.loggingName() + "-exemplars", list));
+            }
+        }
+    }
 }
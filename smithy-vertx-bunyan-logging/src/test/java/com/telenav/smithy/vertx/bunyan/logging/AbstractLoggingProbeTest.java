@@ -0,0 +1,42 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import io.vertx.core.buffer.Buffer;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AbstractLoggingProbeTest {
+
+    @Test
+    public void testTruncationDoesNotSplitCharacters() {
+        // One, two, three and four byte characters
+        Buffer bytes = Buffer.buffer("a\u00e9\u20ac\ud83d\ude00b");
+        assertEquals(1, AbstractLoggingProbe.utf8Boundary(bytes, 1));
+        assertEquals(1, AbstractLoggingProbe.utf8Boundary(bytes, 2));
+        assertEquals(3, AbstractLoggingProbe.utf8Boundary(bytes, 3));
+        assertEquals(3, AbstractLoggingProbe.utf8Boundary(bytes, 4));
+        assertEquals(3, AbstractLoggingProbe.utf8Boundary(bytes, 5));
+        assertEquals(6, AbstractLoggingProbe.utf8Boundary(bytes, 6));
+        for (int i = 7; i < 10; i++) {
+            assertEquals(6, AbstractLoggingProbe.utf8Boundary(bytes, i));
+        }
+        assertEquals(10, AbstractLoggingProbe.utf8Boundary(bytes, 10));
+        assertEquals("a\u00e9\u20ac", bytes.getString(0,
+                AbstractLoggingProbe.utf8Boundary(bytes, 8), UTF_8.name()));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.telenav.smithy.vertx.probe.ProbeOverflowPolicy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncLogWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Path file;
+
+    @BeforeEach
+    public void createFile() throws Exception {
+        file = Files.createTempFile("AsyncLogWriterTest", ".log");
+    }
+
+    @AfterEach
+    public void deleteFile() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testEverythingPushedBeforeCloseIsWrittenInOrder() throws Exception {
+        AsyncLogWriter writer = new AsyncLogWriter(16, ProbeOverflowPolicy.BLOCK);
+        writer.open(file);
+        for (int i = 0; i < 500; i++) {
+            writer.push(mapper, Map.of("n", i));
+        }
+        writer.close();
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(500, lines.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, mapper.readTree(lines.get(i)).get("n").asInt());
+        }
+        assertEquals(500, writer.written());
+        assertEquals(0, writer.dropped());
+    }
+
+    @Test
+    public void testRecordsPushedAfterCloseAreCountedAsDropped() throws Exception {
+        AsyncLogWriter writer = new AsyncLogWriter(16, ProbeOverflowPolicy.DROP);
+        writer.open(file);
+        writer.push(mapper, Map.of("n", 0));
+        writer.close();
+        writer.push(mapper, Map.of("n", 1));
+        assertEquals(1, Files.readAllLines(file).size());
+        assertEquals(1, writer.written());
+        assertEquals(1, writer.dropped());
+    }
+
+    @Test
+    public void testNoRecordIsLostUncountedWhileClosing() throws Exception {
+        for (ProbeOverflowPolicy policy : ProbeOverflowPolicy.values()) {
+            AsyncLogWriter writer = new AsyncLogWriter(64, policy);
+            writer.open(file);
+            int threads = 4;
+            int perThread = 5000;
+            CountDownLatch started = new CountDownLatch(threads);
+            List<Thread> producers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                Thread producer = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < perThread; i++) {
+                        writer.push(mapper, Map.of("t", thread, "n", i));
+                        if (i % 64 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }, "producer-" + t);
+                producers.add(producer);
+                producer.start();
+            }
+            started.await();
+            writer.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+            long lines = Files.readAllLines(file).size();
+            assertEquals(lines, writer.written(), policy.toString());
+            assertEquals(threads * perThread, writer.written() + writer.dropped(),
+                    policy.toString());
+            Files.write(file, new byte[0]);
+        }
+    }
+}
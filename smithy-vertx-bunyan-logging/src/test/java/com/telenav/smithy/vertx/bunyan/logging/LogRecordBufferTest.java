@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.bunyan.logging;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogRecordBufferTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testRecordMatchesTheMappersOutput() throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("name", "ops");
+        record.put("msg", "quote \" slash \\ newline \n tab \t ctl \u0001 é € 😀");
+        record.put("level", 30);
+        record.put("big", Long.MAX_VALUE);
+        record.put("ok", true);
+        record.put("ratio", 0.25D);
+        record.put("nan", Double.NaN);
+        record.put("none", null);
+        record.put("payload", new Payload("thing", 3));
+        record.put("id", new Id("abc"));
+        record.put("nested", Map.of("items", List.of(1, "two", new Id("three"))));
+        record.put("raw", new RawValue("{\"already\":\"json\"}"));
+
+        String line = write(record);
+        assertTrue(line.endsWith("\n"), line);
+        assertEquals(1, line.split("\n").length, line);
+
+        JsonNode node = mapper.readTree(line);
+        Map<String, Object> expected = new LinkedHashMap<>(record);
+        expected.put("nan", "NaN");
+        expected.put("raw", Map.of("already", "json"));
+        assertEquals(mapper.valueToTree(expected), node);
+        assertEquals("abc", node.get("id").asText());
+        assertEquals(3, node.get("payload").get("count").asInt());
+    }
+
+    @Test
+    public void testUnserializableValueDoesNotLoseTheRecord() throws Exception {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("before", "a");
+        record.put("bad", new Unserializable());
+        record.put("after", "b");
+        JsonNode node = mapper.readTree(write(record));
+        assertEquals("a", node.get("before").asText());
+        assertEquals("b", node.get("after").asText());
+        assertTrue(node.get("bad").asText().startsWith(Unserializable.class.getName()),
+                node.toString());
+    }
+
+    @Test
+    public void testGrowsAndClears() throws Exception {
+        LogRecordBuffer buf = new LogRecordBuffer(8);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append('x');
+        }
+        buf.writeRecord(mapper, Map.of("s", sb.toString(), "p", new Payload("y", 1)));
+        assertTrue(buf.capacity() > 1000);
+        assertEquals(sb.toString(), mapper.readTree(toString(buf)).get("s").asText());
+        assertEquals(0, buf.clear().length());
+        buf.writeRecord(mapper, Map.of("a", 1));
+        assertEquals("{\"a\":1}\n", toString(buf));
+    }
+
+    private String write(Map<String, Object> record) {
+        return toString(new LogRecordBuffer(16).writeRecord(mapper, record));
+    }
+
+    private static String toString(LogRecordBuffer buf) {
+        ByteBuffer bb = buf.toByteBuffer();
+        return UTF_8.decode(bb).toString();
+    }
+
+    public static final class Payload {
+
+        public final String name;
+        public final int count;
+
+        Payload(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+    }
+
+    public static final class Id {
+
+        private final String value;
+
+        Id(String value) {
+            this.value = value;
+        }
+
+        @JsonValue
+        public String value() {
+            return value;
+        }
+    }
+
+    public static final class Unserializable {
+
+        public String getBoom() {
+            throw new IllegalStateException("boom");
+        }
+    }
+}
@@ -322,6 +322,18 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                     bb.invoke("async").on("probeModule").returningThis();
                 });
             });
+            cb.method("sampledProbe", mth -> {
+                mth.returning(cb.className())
+                        .withModifier(PUBLIC)
+                        .docComment("Configures Probe instances (for logging and similar) to be "
+                                + "passed only a sample of per-request events, as configured by the "
+                                + "settings <code>probe.sample.rate</code> and "
+                                + "<code>probe.sample.max.per.second</code>; failures are always passed."
+                                + "\n@return this");
+                mth.body(bb -> {
+                    bb.invoke("sampled").on("probeModule").returningThis();
+                });
+            });
             cb.method("withProbe", mth -> {
                 mth.addArgument("ProbeImplementation<? super " + operationEnumTypeName()
                         + ">", "probe")
@@ -1673,6 +1685,7 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                             .withClassArgument(cb.className())
                             .on("probe");
                 });
+                enterPhase(cb, bb, "context", "EXECUTION");
 
                 bb.declare("smithyRequest")
                         .initializedByInvoking("smithyRequest")
@@ -1726,6 +1739,17 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
         return null;
     }
 
+    private <C, B extends BlockBuilderBase<C, B, ?>> void enterPhase(ClassBuilder<?> cb, B bb,
+            String ctxVar, String phase) {
+        ifProbe(() -> {
+            cb.importing("com.telenav.smithy.vertx.probe.RequestPhase");
+            bb.invoke("enterPhase")
+                    .withArgument(ctxVar)
+                    .withArgument("RequestPhase." + phase)
+                    .on("probe");
+        });
+    }
+
     private <C, B extends BlockBuilderBase<C, B, ?>> void invokeNextAsync(B bb, String inputVar) {
         InvocationBuilder<InvocationBuilder<B>> partialInvoke = bb.invoke("submit")
                 .withArgumentFromInvoking("wrap")
@@ -1883,32 +1907,48 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                     .returning("Future<Void>");
             mth.body(bb -> {
                 String ec = operationEnumTypeName() + "." + operationEnumConstant(op);
+                enterPhase(cb, bb, "context", "SERIALIZATION");
+
+                ClassBuilder.IfBuilder<?> noOutput = bb.ifNull("output");
                 ifProbe(() -> {
                     cb.importing(Optional.class);
-                    bb.invoke("onBeforeSendResponse")
+                    noOutput.invoke("onBeforeSendResponse")
                             .withArgument(ec)
                             .withArgument("context")
-                            .withArgumentFromInvoking("ofNullable")
-                            .withArgument("output")
+                            .withArgumentFromInvoking("empty")
                             .on("Optional")
                             .on("probe");
                 });
-
-                bb.ifNull("output")
-                        .returningInvocationOf("send")
+                enterPhase(cb, noOutput, "context", "WRITE");
+                noOutput.returningInvocationOf("send")
                         .onInvocationOf("response")
                         .on("context").endIf();
                 bb.trying(tri -> {
                     if (this.generateProbeCode) {
-                        tri.returningInvocationOf("listen")
-                                .withArgument(ec)
-                                .withArgument("context")
-                                .withArgumentFromInvoking("send")
-                                .withArgumentFromInvoking("buffer")
+                        cb.importing("io.vertx.core.buffer.Buffer");
+                        tri.declare("body")
+                                .initializedByInvoking("buffer")
                                 .withArgumentFromInvoking("writeValueAsBytes")
                                 .withArgument("output")
                                 .on("mapper")
                                 .inScope()
+                                .as("Buffer");
+                        // Called after serializing, so the probe can log the
+                        // bytes being sent rather than serializing them again
+                        tri.invoke("onBeforeSendResponse")
+                                .withArgument(ec)
+                                .withArgument("context")
+                                .withArgumentFromInvoking("of")
+                                .withArgument("output")
+                                .on("Optional")
+                                .withArgument("body")
+                                .on("probe");
+                        enterPhase(cb, tri, "context", "WRITE");
+                        tri.returningInvocationOf("listen")
+                                .withArgument(ec)
+                                .withArgument("context")
+                                .withArgumentFromInvoking("send")
+                                .withArgument("body")
                                 .onInvocationOf("response")
                                 .on("context")
                                 .on("probe");
@@ -1969,6 +2009,7 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                                 .withArgument("buffer")
                                 .on("probe");
                     });
+                    enterPhase(cb, tri, "context", "PAYLOAD_READ");
 
                     tri.tryWithResources("stream", decl -> {
                         TryBuilder<Void> innerTry = decl.initializedWithNew(nb -> {
@@ -2002,6 +2043,8 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                      */
                     ifProbe(() -> {
                         cb.importing(Optional.class);
+                        // Pass the raw bytes too, so the probe need not
+                        // serialize the input again to log it
                         tri.invoke("onAfterPayloadRead")
                                 .withArgument(operationEnumTypeName() + "." + operationEnumConstant(op))
                                 .withArgument("context")
@@ -2009,8 +2052,10 @@ public class VertxServerGenerator extends AbstractJavaGenerator<ServiceShape> {
                                 .withArgumentFromInvoking("ofNullable")
                                 .withArgument("input")
                                 .on("Optional")
+                                .withArgument("buffer")
                                 .on("probe");
                     });
+                    enterPhase(cb, tri, "context", "EXECUTION");
                     tri.catching(cat -> {
                         cat.invoke("fail")
                                 .withArgument(400)
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.MultiMetric;
+import com.telenav.periodic.metrics.OnDemandMetric;
+import static com.telenav.periodic.metrics.OnDemandMetric.onDemandMetric;
+import java.time.Duration;
+import static java.util.Arrays.asList;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Metrics fed by the PoolMetrics, ClientMetrics and HttpClientMetrics SPI
+ * implementations - gauges of worker pool tasks queued and running, and of
+ * client requests waiting for a connection, and histograms of how long tasks
+ * wait before running, how long they run, how long client requests wait for a
+ * connection, and outbound HTTP request latency.
+ */
+@Singleton
+final class ClientAndPoolStats extends MetricsRegistry {
+
+    private final LongAdder poolQueued = new LongAdder();
+    private final LongAdder poolInUse = new LongAdder();
+    private final LongAdder clientQueued = new LongAdder();
+    private final HistogramFanOut poolQueueWait = new HistogramFanOut();
+    private final HistogramFanOut poolTaskTime = new HistogramFanOut();
+    private final HistogramFanOut clientQueueWait = new HistogramFanOut();
+    private final HistogramFanOut httpClientLatency = new HistogramFanOut();
+
+    @Inject
+    ClientAndPoolStats(MetricsRegistrar registrar) {
+        super(registrar);
+    }
+
+    @Override
+    public Collection<? extends OnDemandMetric<Long>> onDemandMetrics() {
+        // Vert.x does not promise a dequeue or end call for every enqueue or
+        // begin if a pool or endpoint is closed underneath a task, so never
+        // report a drifted gauge as negative
+        return asList(
+                onDemandMetric(BuiltInMetrics.POOL_TASKS_QUEUED, () -> Math.max(0, poolQueued.sum())),
+                onDemandMetric(BuiltInMetrics.POOL_TASKS_IN_USE, () -> Math.max(0, poolInUse.sum())),
+                onDemandMetric(BuiltInMetrics.CLIENT_REQUESTS_QUEUED, () -> Math.max(0, clientQueued.sum())));
+    }
+
+    @Override
+    public Collection<? extends MultiMetric<Long>> multiMetrics(Duration samplingInterval) {
+        if (Boolean.getBoolean("unit.test")) {
+            return emptyList();
+        }
+        return asList(poolQueueWait.newPeriod(ClientAndPoolStat.POOL_QUEUE_WAIT),
+                poolTaskTime.newPeriod(ClientAndPoolStat.POOL_TASK_TIME),
+                clientQueueWait.newPeriod(ClientAndPoolStat.CLIENT_QUEUE_WAIT),
+                httpClientLatency.newPeriod(ClientAndPoolStat.HTTP_CLIENT_LATENCY));
+    }
+
+    void taskSubmitted() {
+        poolQueued.increment();
+    }
+
+    void taskRejected() {
+        poolQueued.decrement();
+    }
+
+    void taskBegun(long waitNanos) {
+        poolQueued.decrement();
+        poolInUse.increment();
+        poolQueueWait.add(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    void taskEnded(long runNanos) {
+        poolInUse.decrement();
+        poolTaskTime.add(TimeUnit.NANOSECONDS.toMillis(runNanos));
+    }
+
+    void clientRequestQueued() {
+        clientQueued.increment();
+    }
+
+    void clientRequestDequeued(long waitNanos) {
+        clientQueued.decrement();
+        clientQueueWait.add(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    void httpClientResponse(long elapsedMillis) {
+        httpClientLatency.add(elapsedMillis);
+    }
+
+    enum ClientAndPoolStat {
+        POOL_QUEUE_WAIT,
+        POOL_TASK_TIME,
+        CLIENT_QUEUE_WAIT,
+        HTTP_CLIENT_LATENCY
+    }
+}
@@ -20,7 +20,9 @@ import java.time.Duration;
 
 /**
  * A vertx application may contain multiple clients (database clients, etc.); if
- * you want to collect timings on them, bind this.
+ * you want to collect timings on them, bind this.  Requests made by Vert.x's
+ * HttpClient are passed with the namespace <code>"http"</code> and the
+ * <code>HttpRequest</code> as the request.
  *
  * @author Tim Boudreau
  */
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.mastfrog.settings.Settings;
+import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.MultiMetric;
+import com.telenav.periodic.metrics.OnDemandMetric;
+import com.telenav.periodic.metrics.StatisticalMetrics;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_EVENT_LOOP_LAG_INTERVAL;
+import io.netty.util.concurrent.EventExecutor;
+import io.vertx.core.Vertx;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Measures event loop lag - how late a timer scheduled on each event loop
+ * fires, which is how long some handler was blocking it or running too long.
+ * Each period emits the maximum and p99 lag over all event loops in
+ * microseconds; and since a timer cannot fire on a loop which is blocked
+ * <i>now</i>, the on-demand EVENT_LOOP_OVERDUE_MILLIS reports how far past due
+ * the most overdue loop's pending timer currently is.
+ * <p>
+ * The cost is one scheduled task per event loop per interval (by default
+ * 100ms), so this is cheap enough to leave on in production.
+ * </p>
+ */
+@Singleton
+final class EventLoopLagMonitor extends MetricsRegistry {
+
+    private static final Set<StatisticalMetrics> PERCENTILES
+            = EnumSet.of(StatisticalMetrics.P99);
+    private static final Ticker[] NONE = new Ticker[0];
+    private final HistogramFanOut lags = new HistogramFanOut();
+    private final long intervalNanos;
+    private volatile Ticker[] tickers = NONE;
+
+    @Inject
+    EventLoopLagMonitor(MetricsRegistrar registrar, Settings settings) {
+        super(registrar);
+        intervalNanos = MILLISECONDS.toNanos(Math.max(0,
+                settings.getInt(SETTINGS_KEY_EVENT_LOOP_LAG_INTERVAL, 100)));
+    }
+
+    @Override
+    public Collection<? extends OnDemandMetric<Long>> onDemandMetrics() {
+        return singleton(OnDemandMetric.onDemandMetric(BuiltInMetrics.EVENT_LOOP_OVERDUE_MILLIS,
+                this::overdueMillis));
+    }
+
+    @Override
+    public Collection<? extends MultiMetric<Long>> multiMetrics(Duration samplingInterval) {
+        if (Boolean.getBoolean("unit.test")) {
+            return emptyList();
+        }
+        return singleton(lags.newPeriod(EventLoopStat.EVENT_LOOP_LAG_MICROS, PERCENTILES));
+    }
+
+    /**
+     * Start a timer on each of the event loops of a Vertx instance.
+     *
+     * @param vertx A vertx
+     */
+    synchronized void start(Vertx vertx) {
+        if (intervalNanos <= 0) {
+            return;
+        }
+        Ticker[] result = tickers;
+        for (EventExecutor loop : vertx.nettyEventLoopGroup()) {
+            Ticker ticker = new Ticker(loop);
+            result = Arrays.copyOf(result, result.length + 1);
+            result[result.length - 1] = ticker;
+            ticker.schedule();
+        }
+        tickers = result;
+    }
+
+    private long overdueMillis() {
+        long now = System.nanoTime();
+        long result = 0;
+        for (Ticker t : tickers) {
+            result = Math.max(result, t.overdueNanos(now));
+        }
+        return NANOSECONDS.toMillis(result);
+    }
+
+    private final class Ticker implements Runnable {
+
+        private final EventExecutor loop;
+        private volatile long due;
+        private volatile boolean stopped;
+
+        Ticker(EventExecutor loop) {
+            this.loop = loop;
+        }
+
+        void schedule() {
+            if (loop.isShuttingDown()) {
+                stopped = true;
+                return;
+            }
+            due = System.nanoTime() + intervalNanos;
+            try {
+                loop.schedule(this, intervalNanos, NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                // Vertx closed between the check and the call
+                stopped = true;
+            }
+        }
+
+        long overdueNanos(long now) {
+            return stopped ? 0 : Math.max(0, now - due);
+        }
+
+        @Override
+        public void run() {
+            lags.add(NANOSECONDS.toMicros(Math.max(0, System.nanoTime() - due)));
+            schedule();
+        }
+    }
+
+    enum EventLoopStat {
+        EVENT_LOOP_LAG_MICROS
+    }
+}
@@ -0,0 +1,41 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import java.time.Duration;
+import java.util.function.BiConsumer;
+
+/**
+ * The operation timing consumer bound by VertxMetricsSupport implements this
+ * interface, so that probes which know the request id can pass it along with
+ * the duration; when <code>metrics.exemplars</code> is set, the ids of the
+ * slowest requests of each period are then emitted alongside the p99 of the
+ * operation.
+ *
+ * @param <Op> The operation type
+ */
+public interface ExemplarTimingConsumer<Op> extends BiConsumer<Op, Duration> {
+
+    /**
+     * Record the duration of an operation together with an opaque exemplar,
+     * such as the request id.
+     *
+     * @param op The operation
+     * @param duration The duration
+     * @param exemplar An exemplar, or null
+     */
+    void accept(Op op, Duration duration, Object exemplar);
+}
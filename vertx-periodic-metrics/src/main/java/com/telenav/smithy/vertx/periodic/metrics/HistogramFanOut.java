@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.telenav.periodic.metrics.HistogramStatsMetric;
+import com.telenav.periodic.metrics.LogLinearHistogram;
+import com.telenav.periodic.metrics.StatisticalMetrics;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * The HistogramStatsMetrics created for each metrics period for one timing or
+ * size, which values are added to together. The array is replaced wholesale
+ * as periods register, so the request path reads it without locking or
+ * iterators.
+ */
+final class HistogramFanOut {
+
+    private static final HistogramStatsMetric<?>[] EMPTY = new HistogramStatsMetric<?>[0];
+    private volatile HistogramStatsMetric<?>[] metrics = EMPTY;
+
+    <E extends Enum<E>> HistogramStatsMetric<E> newPeriod(E stat) {
+        return newPeriod(stat, StatisticalMetrics.DEFAULT_PERCENTILES);
+    }
+
+    synchronized <E extends Enum<E>> HistogramStatsMetric<E> newPeriod(E stat,
+            Set<StatisticalMetrics> percentiles) {
+        HistogramStatsMetric<E> result = new HistogramStatsMetric<>(stat,
+                LogLinearHistogram.DEFAULT_PRECISION_BITS, percentiles);
+        HistogramStatsMetric<?>[] old = metrics;
+        HistogramStatsMetric<?>[] updated = Arrays.copyOf(old, old.length + 1);
+        updated[old.length] = result;
+        metrics = updated;
+        return result;
+    }
+
+    synchronized <Op extends Enum<Op>> HistogramStatsMetric<Op> newPeriod(Op op, Enum<?> stat,
+            Set<StatisticalMetrics> percentiles) {
+        HistogramStatsMetric<Op> result = new HistogramStatsMetric<>(op, stat,
+                LogLinearHistogram.DEFAULT_PRECISION_BITS, percentiles);
+        HistogramStatsMetric<?>[] old = metrics;
+        HistogramStatsMetric<?>[] updated = Arrays.copyOf(old, old.length + 1);
+        updated[old.length] = result;
+        metrics = updated;
+        return result;
+    }
+
+    void add(long value) {
+        for (HistogramStatsMetric<?> h : metrics) {
+            h.add(value);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.HttpStatusClass;
+import com.telenav.periodic.metrics.Metric;
+import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.MultiMetric;
+import com.telenav.periodic.metrics.OnDemandMetric;
+import java.time.Duration;
+import static java.util.Arrays.asList;
+import java.util.Collection;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Server-wide HTTP metrics fed by the HttpServerMetrics SPI implementation -
+ * counts of responses by status class, a gauge of requests in flight, and
+ * histograms of server-side latency (from the first byte of the request to
+ * the last byte of the response) and of request and response sizes.
+ */
+@Singleton
+final class HttpServerStats extends MetricsRegistry {
+
+    private final LongAdder inFlight = new LongAdder();
+    private final HistogramFanOut latencies = new HistogramFanOut();
+    private final HistogramFanOut requestBytes = new HistogramFanOut();
+    private final HistogramFanOut responseBytes = new HistogramFanOut();
+
+    @Inject
+    HttpServerStats(MetricsRegistrar registrar) {
+        super(registrar);
+    }
+
+    @Override
+    public Collection<? extends Metric> incrementalMetrics() {
+        return asList(HttpStatusClass.values());
+    }
+
+    @Override
+    public Collection<? extends OnDemandMetric<Long>> onDemandMetrics() {
+        return singleton(OnDemandMetric.onDemandMetric(BuiltInMetrics.HTTP_REQUESTS_IN_FLIGHT, inFlight::sum));
+    }
+
+    @Override
+    public Collection<? extends MultiMetric<Long>> multiMetrics(Duration samplingInterval) {
+        if (Boolean.getBoolean("unit.test")) {
+            return emptyList();
+        }
+        return asList(latencies.newPeriod(HttpServerStat.HTTP_SERVER_LATENCY),
+                requestBytes.newPeriod(HttpServerStat.HTTP_REQUEST_BYTES),
+                responseBytes.newPeriod(HttpServerStat.HTTP_RESPONSE_BYTES));
+    }
+
+    void requestStarted() {
+        inFlight.increment();
+    }
+
+    void requestAborted() {
+        inFlight.decrement();
+    }
+
+    void requestCompleted(long elapsedNanos, long bytesRead, long bytesWritten) {
+        inFlight.decrement();
+        latencies.add(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        if (bytesRead >= 0) {
+            requestBytes.add(bytesRead);
+        }
+        if (bytesWritten >= 0) {
+            responseBytes.add(bytesWritten);
+        }
+    }
+
+    enum HttpServerStat {
+        HTTP_SERVER_LATENCY,
+        HTTP_REQUEST_BYTES,
+        HTTP_RESPONSE_BYTES
+    }
+}
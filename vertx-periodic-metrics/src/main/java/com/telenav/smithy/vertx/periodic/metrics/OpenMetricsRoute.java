@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.mastfrog.settings.Settings;
+import com.telenav.periodic.metrics.OpenMetricsRenderer;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_OPENMETRICS_PATH;
+import com.telenav.smithy.vertx.probe.Probe;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import java.util.function.UnaryOperator;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * Adds a GET route to every router which serves the last emitted values of all
+ * periodic metrics in OpenMetrics text format, rendered on a worker thread so
+ * scrapes do not hold up the event loop.
+ */
+final class OpenMetricsRoute implements UnaryOperator<Router>, Handler<RoutingContext> {
+
+    static final String DEFAULT_PATH = "/metrics";
+    private final Provider<OpenMetricsRenderer> renderer;
+    private final Probe<?> probe;
+    private final String path;
+
+    @Inject
+    OpenMetricsRoute(Provider<OpenMetricsRenderer> renderer, Probe<?> probe, Settings settings) {
+        this.renderer = renderer;
+        this.probe = probe;
+        this.path = settings.getString(SETTINGS_KEY_OPENMETRICS_PATH, DEFAULT_PATH);
+    }
+
+    @Override
+    public Router apply(Router router) {
+        router.get(path).handler(this);
+        return router;
+    }
+
+    @Override
+    public void handle(RoutingContext ctx) {
+        ctx.vertx().<byte[]>executeBlocking(promise -> {
+            promise.complete(renderer.get().render());
+        }, false, res -> {
+            if (res.failed()) {
+                ctx.fail(res.cause());
+                return;
+            }
+            probe.catching(() -> {
+                ctx.response()
+                        .putHeader(HttpHeaders.CONTENT_TYPE, OpenMetricsRenderer.CONTENT_TYPE)
+                        .end(Buffer.buffer(res.result()));
+            });
+        });
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.telenav.smithy.vertx.probe.ProbeEvent;
+import com.telenav.smithy.vertx.probe.ProbeEventKind;
+import com.telenav.smithy.vertx.probe.ProbeImplementation;
+import com.telenav.smithy.vertx.probe.RequestTiming;
+import io.vertx.ext.web.RoutingContext;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * A ProbeImplementation which feeds the per-operation metrics that can only
+ * be known once a request's operation has been determined by routing - counts
+ * of responses by status class; if <code>metrics.operation.bytes</code> is
+ * set, request and response sizes; and if <code>metrics.phase.timings</code>
+ * is set, the time spent in each RequestPhase, so it is visible whether JSON
+ * decoding, the operation's implementation or writing the response dominates
+ * an operation's latency. They are collected whether or not a logging probe
+ * is installed.
+ * <p>
+ * Register it with <code>VertxProbeModule.withProbe()</code>;
+ * <code>BunyanLoggingAndMetricsSupport</code> does so whenever it installs
+ * metrics support.
+ * </p>
+ *
+ * @param <Op> The operation type
+ */
+@Singleton
+public final class OperationMetricsProbe<Op extends Enum<Op>> implements ProbeImplementation<Op> {
+
+    @SuppressWarnings("rawType")
+    private final Provider<SimpleOperationMetrics> metrics;
+
+    @Inject
+    @SuppressWarnings("rawType")
+    OperationMetricsProbe(Provider<SimpleOperationMetrics> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public int ordinal() {
+        return 1;
+    }
+
+    @Override
+    public boolean acceptsRequestEvents() {
+        return true;
+    }
+
+    @Override
+    public void onRequestEvent(ProbeEvent<? extends Op> event) {
+        if (event.kind() == ProbeEventKind.RESPONSE_COMPLETED) {
+            onCompleted(event.operation(), event.status(), event.bytesRead(), event.bytesWritten(),
+                    event.timing());
+        }
+    }
+
+    @Override
+    public void onResponseCompleted(Op op, RoutingContext event, int status) {
+        onCompleted(op, status, event.request().bytesRead(), event.response().bytesWritten(),
+                RequestTiming.of(event));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onCompleted(Op op, int status, long bytesRead, long bytesWritten,
+            RequestTiming timing) {
+        if (op == null) {
+            return;
+        }
+        SimpleOperationMetrics<Op> mx = metrics.get();
+        mx.onResponseStatus(op, status);
+        mx.onResponseBytes(op, bytesRead, bytesWritten);
+        if (timing != null) {
+            mx.onPhaseTimings(op, timing);
+        }
+    }
+}
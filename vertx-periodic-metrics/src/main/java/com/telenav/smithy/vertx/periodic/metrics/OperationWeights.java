@@ -60,6 +60,12 @@ public interface OperationWeights {
      * will wrap around and early requests for the target period are lost.
      * </p>
      * <p>
+     * If the setting <code>metrics.adaptive.samples</code> is true, the
+     * number computed from the weight is only the initial size; each
+     * operation's buckets are resized between periods to fit the traffic it
+     * actually sees, within the shared limit <code>metrics.sample.budget</code>.
+     * </p>
+     * <p>
      * If the required number of buckets exceeds the hard maximum number of
      * stats buckets, then stats capturing, then a only random sample of timings
      * will be collected, such that the percentage of requests sampled fits
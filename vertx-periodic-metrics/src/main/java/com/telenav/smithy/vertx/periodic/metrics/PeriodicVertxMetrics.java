@@ -16,6 +16,7 @@
 package com.telenav.smithy.vertx.periodic.metrics;
 
 import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.HttpStatusClass;
 import com.telenav.periodic.metrics.MetricsSink;
 import com.mastfrog.util.strings.Strings;
 import static com.telenav.periodic.metrics.BuiltInMetrics.DB_RESETS;
@@ -47,8 +48,8 @@ import io.vertx.core.spi.observability.HttpRequest;
 import io.vertx.core.spi.observability.HttpResponse;
 import static java.lang.System.currentTimeMillis;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
 /**
@@ -61,17 +62,24 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
     private final MetricsSink sink;
     private final ClientTimingConsumer clientTimings;
     private final Probe<?> probe;
+    private final HttpServerStats serverStats;
+    private final ClientAndPoolStats clientStats;
+    private final EventLoopLagMonitor lagMonitor;
 
     PeriodicVertxMetrics(MetricsSink sink,
-            ClientTimingConsumer clientTimings, Probe<?> probe) {
+            ClientTimingConsumer clientTimings, Probe<?> probe, HttpServerStats serverStats,
+            ClientAndPoolStats clientStats, EventLoopLagMonitor lagMonitor) {
         this.sink = sink;
         this.clientTimings = clientTimings;
         this.probe = probe;
+        this.serverStats = serverStats;
+        this.clientStats = clientStats;
+        this.lagMonitor = lagMonitor;
     }
 
     @Override
     public VertxMetrics metrics(VertxOptions vo) {
-        return new VMX(sink, clientTimings, probe);
+        return new VMX(sink, clientTimings, probe, serverStats, clientStats, lagMonitor);
     }
 
     static class VMX implements VertxMetrics {
@@ -79,16 +87,24 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
         private final MetricsSink sink;
         private final ClientTimingConsumer clientTimings;
         private final Probe<?> probe;
+        private final HttpServerStats serverStats;
+        private final ClientAndPoolStats clientStats;
+        private final EventLoopLagMonitor lagMonitor;
 
-        VMX(MetricsSink sink, ClientTimingConsumer clientTimings, Probe<?> probe) {
+        VMX(MetricsSink sink, ClientTimingConsumer clientTimings, Probe<?> probe,
+                HttpServerStats serverStats, ClientAndPoolStats clientStats,
+                EventLoopLagMonitor lagMonitor) {
             this.sink = sink;
             this.clientTimings = clientTimings;
             this.probe = probe;
+            this.serverStats = serverStats;
+            this.clientStats = clientStats;
+            this.lagMonitor = lagMonitor;
         }
 
         @Override
         public HttpServerMetrics<?, ?, ?> createHttpServerMetrics(HttpServerOptions options, SocketAddress localAddress) {
-            return new HTTPMX(sink, probe);
+            return new HTTPMX(sink, probe, serverStats);
         }
 
         @Override
@@ -98,12 +114,13 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
 
         @Override
         public ClientMetrics<?, ?, ?, ?> createClientMetrics(SocketAddress remoteAddress, String type, String namespace) {
-            return new CM(sink, "db".equals(namespace) || "sql".equals(type), clientTimings, namespace, probe);
+            ClientKind kind = "db".equals(namespace) || "sql".equals(type) ? ClientKind.DB : ClientKind.NET;
+            return new CM<>(sink, kind, clientTimings, namespace, probe, clientStats);
         }
 
         @Override
         public HttpClientMetrics<?, ?, ?, ?> createHttpClientMetrics(HttpClientOptions options) {
-            return null;
+            return new HCMX(sink, clientTimings, probe, clientStats);
         }
 
         @Override
@@ -123,62 +140,113 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
 
         @Override
         public PoolMetrics<?> createPoolMetrics(String poolType, String poolName, int maxPoolSize) {
-            return null;
+            return new PMX(sink, probe, clientStats);
         }
 
         @Override
         public void vertxCreated(Vertx vertx) {
-            // do nothing
+            probe.catching(() -> lagMonitor.start(vertx));
         }
     }
 
-    static class CM implements ClientMetrics<NetClientMetric, Long, Object, Object> {
+    /**
+     * The set of metrics a client's requests are counted under.
+     */
+    enum ClientKind {
+        DB(BuiltInMetrics.DB_REQUESTS, DB_RESPONSES, DB_RESETS),
+        HTTP(BuiltInMetrics.HTTP_CLIENT_REQUESTS, BuiltInMetrics.HTTP_CLIENT_RESPONSES,
+                BuiltInMetrics.HTTP_CLIENT_RESETS),
+        NET(BuiltInMetrics.NET_CLIENT_REQUESTS, NET_CLIENT_RESPONSES, NET_CLIENT_RESETS);
+        final int requests;
+        final int responses;
+        final int resets;
+
+        ClientKind(BuiltInMetrics requests, BuiltInMetrics responses, BuiltInMetrics resets) {
+            this.requests = requests.slot();
+            this.responses = responses.slot();
+            this.resets = resets.slot();
+        }
+    }
 
+    static class CM<Req, Resp> implements ClientMetrics<NetClientMetric, Long, Req, Resp> {
+
+        private static final int CLIENT_BYTES_READ = BuiltInMetrics.NET_CLIENT_BYTES_READ.slot();
+        private static final int CLIENT_BYTES_WRITTEN = NET_CLIENT_BYTES_WRITTEN.slot();
         private final MetricsSink sink;
-        private final boolean db;
+        private final ClientKind kind;
         private final ClientTimingConsumer clientTimings;
         private final String namespace;
-        private final AtomicLong lngs = new AtomicLong();
         private final Probe<?> probe;
+        private final ClientAndPoolStats stats;
 
-        public CM(MetricsSink sink, boolean db, ClientTimingConsumer clientTimings, String namespace, Probe<?> probe) {
+        CM(MetricsSink sink, ClientKind kind, ClientTimingConsumer clientTimings,
+                String namespace, Probe<?> probe, ClientAndPoolStats stats) {
             this.sink = sink;
-            this.db = db;
+            this.kind = kind;
             this.clientTimings = clientTimings;
             this.namespace = namespace;
             this.probe = probe;
+            this.stats = stats;
         }
 
-        private final Long next() {
-            return lngs.incrementAndGet();
+        private void failed(Throwable t) {
+            probe.onNonOperationFailure("error", t);
         }
 
         @Override
         public Long enqueueRequest() {
-            return next();
+            try {
+                stats.clientRequestQueued();
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+            // The task metric is the time the request began waiting for a
+            // connection
+            return System.nanoTime();
+        }
+
+        @Override
+        public void dequeueRequest(Long taskMetric) {
+            if (taskMetric != null) {
+                try {
+                    stats.clientRequestDequeued(System.nanoTime() - taskMetric);
+                } catch (Exception | Error e) {
+                    failed(e);
+                }
+            }
         }
 
         @Override
-        public NetClientMetric requestBegin(String uri, Object request) {
-            probe.catching(() -> sink.onIncrement(db ? BuiltInMetrics.DB_REQUESTS : BuiltInMetrics.NET_CLIENT_REQUESTS));
+        public NetClientMetric requestBegin(String uri, Req request) {
+            try {
+                sink.onIncrement(kind.requests);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
             return new NetClientMetric(request);
         }
 
         @Override
         public void requestEnd(NetClientMetric requestMetric, long bytesWritten) {
-            probe.catching(() -> {
+            try {
                 requestMetric.touch();
                 if (bytesWritten < 0) {
                     // Postgres driver always passes -1
                     return;
                 }
-                sink.onMetric(NET_CLIENT_BYTES_WRITTEN, bytesWritten);
-            });
+                sink.onMetric(CLIENT_BYTES_WRITTEN, bytesWritten);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
         public void requestReset(NetClientMetric requestMetric) {
-            probe.catching(() -> sink.onIncrement(db ? DB_RESETS : NET_CLIENT_RESETS));
+            try {
+                sink.onIncrement(kind.resets);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
@@ -193,18 +261,23 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
 
         @Override
         public void responseEnd(NetClientMetric requestMetric, long bytesRead) {
-            probe.catching(() -> {
-                sink.onIncrement(db ? DB_RESPONSES : NET_CLIENT_RESPONSES);
+            try {
+                sink.onIncrement(kind.responses);
                 if (bytesRead > 0) {
                     // Postgres driver always passes -1
-                    sink.onMetric(BuiltInMetrics.NET_CLIENT_BYTES_READ, bytesRead);
+                    sink.onMetric(CLIENT_BYTES_READ, bytesRead);
+                }
+                if (kind == ClientKind.HTTP) {
+                    stats.httpClientResponse(requestMetric.ageMillis());
                 }
                 if (!(clientTimings instanceof NoOpClientTimingConsumer)) {
                     requestMetric.withAges((age, sinceSend) -> {
                         clientTimings.onTiming(namespace, age, sinceSend, requestMetric.req);
                     });
                 }
-            });
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
     }
 
@@ -222,8 +295,12 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
             touched = currentTimeMillis();
         }
 
+        long ageMillis() {
+            return currentTimeMillis() - start;
+        }
+
         Duration age() {
-            return Duration.ofMillis(currentTimeMillis() - start);
+            return Duration.ofMillis(ageMillis());
         }
 
         void withAges(BiConsumer<Duration, Duration> c) {
@@ -241,8 +318,8 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
 
     static class NCMX implements TCPMetrics<Met> {
 
-        private final MetricsSink sink;
-        private final Probe<?> probe;
+        final MetricsSink sink;
+        final Probe<?> probe;
 
         NCMX(MetricsSink sink, Probe<?> probe) {
             this.sink = sink;
@@ -256,7 +333,7 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
         @Override
         public Met connected(SocketAddress remoteAddress, String remoteName) {
             probe.catching(() -> sink.onIncrement(BuiltInMetrics.NET_CONNECTS));
-            return new Met();
+            return Met.INSTANCE;
         }
 
         @Override
@@ -280,6 +357,129 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
         }
     }
 
+    /**
+     * HTTP client metrics - connection and byte counts are the same as for
+     * other TCP clients, and each endpoint (remote host and port) gets its own
+     * ClientMetrics which counts requests as HTTP client requests, and passes
+     * timings to the ClientTimingConsumer under the namespace "http".
+     */
+    static class HCMX extends NCMX implements HttpClientMetrics<NetClientMetric, Met, Met, Long> {
+
+        static final String HTTP_NAMESPACE = "http";
+        private final ClientTimingConsumer clientTimings;
+        private final ClientAndPoolStats stats;
+
+        HCMX(MetricsSink sink, ClientTimingConsumer clientTimings, Probe<?> probe, ClientAndPoolStats stats) {
+            super(sink, probe);
+            this.clientTimings = clientTimings;
+            this.stats = stats;
+        }
+
+        @Override
+        public ClientMetrics<NetClientMetric, Long, HttpRequest, HttpResponse> createEndpointMetrics(
+                SocketAddress remoteAddress, int maxPoolSize) {
+            return new CM<>(sink, ClientKind.HTTP, clientTimings, HTTP_NAMESPACE, probe, stats);
+        }
+    }
+
+    /**
+     * Metrics for worker and internal blocking pools - counts of tasks
+     * submitted, rejected and completed, gauges of tasks queued and running,
+     * and the time each task waited in the queue and ran for.
+     */
+    static class PMX implements PoolMetrics<PoolTask> {
+
+        private static final int SUBMITTED = BuiltInMetrics.POOL_TASKS_SUBMITTED.slot();
+        private static final int REJECTED = BuiltInMetrics.POOL_TASKS_REJECTED.slot();
+        private static final int COMPLETED = BuiltInMetrics.POOL_TASKS_COMPLETED.slot();
+        private static final int FAILED = BuiltInMetrics.POOL_TASKS_FAILED.slot();
+        private final MetricsSink sink;
+        private final Probe<?> probe;
+        private final ClientAndPoolStats stats;
+
+        PMX(MetricsSink sink, Probe<?> probe, ClientAndPoolStats stats) {
+            this.sink = sink;
+            this.probe = probe;
+            this.stats = stats;
+        }
+
+        private void failed(Throwable t) {
+            probe.onNonOperationFailure("error", t);
+        }
+
+        @Override
+        public PoolTask submitted() {
+            try {
+                sink.onIncrement(SUBMITTED);
+                stats.taskSubmitted();
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+            return new PoolTask();
+        }
+
+        @Override
+        public void rejected(PoolTask task) {
+            try {
+                sink.onIncrement(REJECTED);
+                stats.taskRejected();
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public PoolTask begin(PoolTask task) {
+            if (task != null) {
+                try {
+                    stats.taskBegun(task.begin());
+                } catch (Exception | Error e) {
+                    failed(e);
+                }
+            }
+            return task;
+        }
+
+        @Override
+        public void end(PoolTask task, boolean succeeded) {
+            try {
+                sink.onIncrement(succeeded ? COMPLETED : FAILED);
+                if (task != null) {
+                    stats.taskEnded(task.elapsedNanos());
+                }
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+        }
+    }
+
+    /**
+     * Per-task state for pool metrics. Unlike server requests, pool tasks may
+     * begin and end on a different thread than submitted them, so these are
+     * not pooled - one small object per task is the cost of measuring queue
+     * wait time.
+     */
+    static final class PoolTask {
+
+        private long nanos = System.nanoTime();
+
+        /**
+         * Mark the task as begun.
+         *
+         * @return The number of nanoseconds it spent queued
+         */
+        long begin() {
+            long now = System.nanoTime();
+            long result = now - nanos;
+            nanos = now;
+            return result;
+        }
+
+        long elapsedNanos() {
+            return System.nanoTime() - nanos;
+        }
+    }
+
     static class DGMX implements DatagramSocketMetrics {
 
         private final MetricsSink sink;
@@ -306,78 +506,184 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
         }
     }
 
-    static class HTTPMX implements HttpServerMetrics<Met, Met, Met> {
-
+    static class HTTPMX implements HttpServerMetrics<RequestMetric, Met, Met> {
+
+        // Called several times per request, so resolve metric slots once
+        private static final int REQUESTS = BuiltInMetrics.REQUESTS.slot();
+        private static final int HTTP_REQUEST_RESET = BuiltInMetrics.HTTP_REQUEST_RESET.slot();
+        private static final int HTTP_RESPONSES_COMPLETED = BuiltInMetrics.HTTP_RESPONSES_COMPLETED.slot();
+        private static final int HTTP_RESPONSES_INITIATED = BuiltInMetrics.HTTP_RESPONSES_INITIATED.slot();
+        private static final int HTTP_NON_ERROR_RESPONSES = BuiltInMetrics.HTTP_NON_ERROR_RESPONSES.slot();
+        private static final int HTTP_CLIENT_ERROR_RESPONSES = BuiltInMetrics.HTTP_CLIENT_ERROR_RESPONSES.slot();
+        private static final int HTTP_SERVER_ERROR_RESPONSES = BuiltInMetrics.HTTP_SERVER_ERROR_RESPONSES.slot();
+        private static final int HTTP_BYTES_READ = BuiltInMetrics.HTTP_BYTES_READ.slot();
+        private static final int HTTP_BYTES_WRITTEN = BuiltInMetrics.HTTP_BYTES_WRITTEN.slot();
+        private static final int EXCEPTION_OCCURRED = BuiltInMetrics.EXCEPTION_OCCURRED.slot();
+        private static final int[] STATUS_CLASSES = statusClassSlots();
+        private static final int MAX_POOLED = 512;
+        // Vert.x calls a request's metrics methods on the event loop of its
+        // connection, so a per-thread pool needs no synchronization
+        private static final ThreadLocal<ArrayDeque<RequestMetric>> POOL
+                = ThreadLocal.withInitial(() -> new ArrayDeque<>(64));
         private final MetricsSink sink;
         private final Probe<?> probe;
+        private final HttpServerStats stats;
 
-        HTTPMX(MetricsSink sink, Probe<?> probe) {
+        HTTPMX(MetricsSink sink, Probe<?> probe, HttpServerStats stats) {
             this.sink = sink;
             this.probe = probe;
+            this.stats = stats;
         }
 
-        private Met next() {
-            return new Met();
+        private static int[] statusClassSlots() {
+            HttpStatusClass[] all = HttpStatusClass.values();
+            int[] result = new int[all.length];
+            for (int i = 0; i < all.length; i++) {
+                result[i] = all[i].slot();
+            }
+            return result;
         }
 
-        @Override
-        public Met requestBegin(Met socketMetric, HttpRequest request) {
-            probe.catching(() -> sink.onIncrement(BuiltInMetrics.REQUESTS));
-            return next();
+        // The probe's catching(Runnable) would allocate a capturing lambda on
+        // every call, so the per-request methods catch for themselves
+        private void failed(Throwable t) {
+            probe.onNonOperationFailure("error", t);
+        }
+
+        private RequestMetric acquire(boolean requestEnded) {
+            RequestMetric result = POOL.get().pollFirst();
+            if (result == null) {
+                result = new RequestMetric();
+            }
+            result.begin(requestEnded);
+            stats.requestStarted();
+            return result;
+        }
+
+        private void release(RequestMetric metric) {
+            ArrayDeque<RequestMetric> pool = POOL.get();
+            if (pool.size() < MAX_POOLED) {
+                pool.addFirst(metric);
+            }
+        }
+
+        private void completed(RequestMetric metric) {
+            metric.finish();
+            stats.requestCompleted(metric.elapsedNanos, metric.bytesRead, metric.bytesWritten);
+            release(metric);
         }
 
         @Override
-        public void requestReset(Met requestMetric) {
-            probe.catching(() -> sink.onIncrement(BuiltInMetrics.HTTP_REQUEST_RESET));
+        public RequestMetric requestBegin(Met socketMetric, HttpRequest request) {
+            try {
+                sink.onIncrement(REQUESTS);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+            return acquire(false);
         }
 
         @Override
-        public void responseEnd(Met requestMetric, HttpResponse response, long bytesWritten) {
-            probe.catching(() -> sink.onIncrement(BuiltInMetrics.HTTP_RESPONSES_COMPLETED));
+        public void requestEnd(RequestMetric requestMetric, HttpRequest request, long bytesRead) {
+            try {
+                if (requestMetric != null && requestMetric.requestEnded(bytesRead)) {
+                    completed(requestMetric);
+                }
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public void requestReset(RequestMetric requestMetric) {
+            try {
+                sink.onIncrement(HTTP_REQUEST_RESET);
+                if (requestMetric != null && requestMetric.isActive()) {
+                    if (requestMetric.isResponseEnded()) {
+                        // The body was never fully read, so its size is unknown
+                        requestMetric.bytesRead = -1;
+                        completed(requestMetric);
+                    } else {
+                        requestMetric.finish();
+                        stats.requestAborted();
+                        release(requestMetric);
+                    }
+                }
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
-        public void responseBegin(Met requestMetric, HttpResponse response) {
-            probe.catching(() -> {
-                sink.onIncrement(BuiltInMetrics.HTTP_RESPONSES_INITIATED);
-                if (response.statusCode() >= 200 && response.statusCode() < 400) {
-                    sink.onIncrement(BuiltInMetrics.HTTP_NON_ERROR_RESPONSES);
-                } else if (response.statusCode() >= 400 && response.statusCode() < 500) {
-                    sink.onIncrement(BuiltInMetrics.HTTP_CLIENT_ERROR_RESPONSES);
-                } else if (response.statusCode() >= 500) {
-                    sink.onIncrement(BuiltInMetrics.HTTP_SERVER_ERROR_RESPONSES);
+        public void responseEnd(RequestMetric requestMetric, HttpResponse response, long bytesWritten) {
+            try {
+                sink.onIncrement(HTTP_RESPONSES_COMPLETED);
+                if (requestMetric != null && requestMetric.responseEnded(bytesWritten)) {
+                    completed(requestMetric);
+                }
+            } catch (Exception | Error e) {
+                failed(e);
+            }
+        }
+
+        @Override
+        public void responseBegin(RequestMetric requestMetric, HttpResponse response) {
+            try {
+                sink.onIncrement(HTTP_RESPONSES_INITIATED);
+                int status = response.statusCode();
+                if (status >= 200 && status < 400) {
+                    sink.onIncrement(HTTP_NON_ERROR_RESPONSES);
+                } else if (status >= 400 && status < 500) {
+                    sink.onIncrement(HTTP_CLIENT_ERROR_RESPONSES);
+                } else if (status >= 500) {
+                    sink.onIncrement(HTTP_SERVER_ERROR_RESPONSES);
                 }
-            });
+                int statusClass = (status / 100) - 1;
+                if (statusClass >= 0 && statusClass < STATUS_CLASSES.length) {
+                    sink.onIncrement(STATUS_CLASSES[statusClass]);
+                }
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
-        public Met responsePushed(Met socketMetric, HttpMethod method, String uri, HttpResponse response) {
-            return next();
+        public RequestMetric responsePushed(Met socketMetric, HttpMethod method, String uri, HttpResponse response) {
+            // A pushed response has no request body, so requestEnd is never called
+            return acquire(true);
         }
 
         @Override
-        public Met connected(Met socketMetric, Met requestMetric, ServerWebSocket serverWebSocket) {
-            return next();
+        public Met connected(Met socketMetric, RequestMetric requestMetric, ServerWebSocket serverWebSocket) {
+            return Met.INSTANCE;
         }
 
         @Override
         public Met connected(SocketAddress remoteAddress, String remoteName) {
-            return next();
+            return Met.INSTANCE;
         }
 
         @Override
         public void bytesRead(Met socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-            probe.catching(() -> sink.onMetric(BuiltInMetrics.HTTP_BYTES_READ, numberOfBytes));
+            try {
+                sink.onMetric(HTTP_BYTES_READ, numberOfBytes);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
         public void bytesWritten(Met socketMetric, SocketAddress remoteAddress, long numberOfBytes) {
-            probe.catching(() -> sink.onMetric(BuiltInMetrics.HTTP_BYTES_WRITTEN, numberOfBytes));
+            try {
+                sink.onMetric(HTTP_BYTES_WRITTEN, numberOfBytes);
+            } catch (Exception | Error e) {
+                failed(e);
+            }
         }
 
         @Override
         public void exceptionOccurred(Met socketMetric, SocketAddress remoteAddress, Throwable t) {
-            probe.catching(() -> sink.onIncrement(BuiltInMetrics.EXCEPTION_OCCURRED));
+            probe.catching(() -> sink.onIncrement(EXCEPTION_OCCURRED));
         }
 
         @Override
@@ -386,8 +692,90 @@ final class PeriodicVertxMetrics implements VertxMetricsFactory {
         }
     }
 
+    /**
+     * Per-request state for the HTTP server metrics, which is pooled and
+     * reused once the request has been reset, or both the request and the
+     * response have ended. Vert.x calls <code>requestEnd</code> after
+     * <code>responseEnd</code> when a handler responds before reading the
+     * whole body, so the object cannot be returned to the pool when either
+     * end alone is seen, and the request is only counted as completed once
+     * both sizes are known.
+     */
+    static final class RequestMetric {
+
+        private long startNanos;
+        long elapsedNanos;
+        long bytesRead;
+        long bytesWritten;
+        private boolean active;
+        private boolean requestEnded;
+        private boolean responseEnded;
+
+        void begin(boolean requestEnded) {
+            startNanos = System.nanoTime();
+            elapsedNanos = -1;
+            bytesRead = -1;
+            bytesWritten = -1;
+            active = true;
+            this.requestEnded = requestEnded;
+            responseEnded = false;
+        }
+
+        boolean isActive() {
+            return active;
+        }
+
+        boolean isResponseEnded() {
+            return responseEnded;
+        }
+
+        /**
+         * Record the end of the request.
+         *
+         * @param bytesRead The size of the request
+         * @return true if the response has already ended, so the request
+         * should be counted and returned to the pool
+         */
+        boolean requestEnded(long bytesRead) {
+            if (!active || requestEnded) {
+                return false;
+            }
+            this.bytesRead = bytesRead;
+            requestEnded = true;
+            return responseEnded;
+        }
+
+        /**
+         * Record the end of the response.
+         *
+         * @param bytesWritten The size of the response
+         * @return true if the request has already ended, so the request
+         * should be counted and returned to the pool
+         */
+        boolean responseEnded(long bytesWritten) {
+            if (!active || responseEnded) {
+                return false;
+            }
+            elapsedNanos = System.nanoTime() - startNanos;
+            this.bytesWritten = bytesWritten;
+            responseEnded = true;
+            return requestEnded;
+        }
+
+        /**
+         * Mark this request finished, so any later call for it is ignored
+         * until it is reused.
+         */
+        void finish() {
+            active = false;
+        }
+    }
+
     static class Met {
-        // need a distinct metric object, but that's it
+
+        // Socket metrics carry no state, but Vert.x requires a non-null
+        // object, so share one rather than allocating per connection
+        static final Met INSTANCE = new Met();
     }
 
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.periodic.metrics;
+
+import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.OnDemandMetric;
+import static com.telenav.periodic.metrics.OnDemandMetric.onDemandMetric;
+import com.telenav.smithy.vertx.probe.Probe;
+import com.telenav.smithy.vertx.probe.ProbeQueue;
+import com.telenav.smithy.vertx.probe.ProbeSampling;
+import static java.util.Arrays.asList;
+import java.util.Collection;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Reports the number of events queued for, and dropped by, an asynchronous
+ * Probe, and the number suppressed by a sampling one; the dropped and
+ * suppressed counts are cumulative. Each is zero if the probe is not
+ * asynchronous or not sampled.
+ */
+@Singleton
+final class ProbeQueueStats extends MetricsRegistry {
+
+    private final Provider<Probe<?>> probe;
+
+    @Inject
+    ProbeQueueStats(MetricsRegistrar registrar, Provider<Probe<?>> probe) {
+        super(registrar);
+        this.probe = probe;
+    }
+
+    @Override
+    public Collection<? extends OnDemandMetric<Long>> onDemandMetrics() {
+        // Look the probe up lazily - it may not be created yet
+        return asList(
+                onDemandMetric(BuiltInMetrics.PROBE_EVENTS_QUEUED,
+                        () -> probe.get().queue().map(q -> (long) q.queued()).orElse(0L)),
+                onDemandMetric(BuiltInMetrics.PROBE_EVENTS_DROPPED,
+                        () -> probe.get().queue().map(ProbeQueue::dropped).orElse(0L)),
+                onDemandMetric(BuiltInMetrics.PROBE_EVENTS_SUPPRESSED,
+                        () -> probe.get().sampling().map(ProbeSampling::suppressed).orElse(0L)));
+    }
+}
@@ -20,14 +20,36 @@ import com.mastfrog.function.QuadConsumer;
 import com.mastfrog.settings.Settings;
 import static com.mastfrog.util.collections.CollectionUtils.map;
 import com.mastfrog.util.preconditions.ConfigurationError;
+import com.telenav.periodic.metrics.BuiltInMetrics;
+import com.telenav.periodic.metrics.HistogramStatsMetric;
+import com.telenav.periodic.metrics.HttpStatusClass;
+import com.telenav.periodic.metrics.LogLinearHistogram;
+import com.telenav.periodic.metrics.Metric;
 import com.telenav.periodic.metrics.MetricsRegistry;
+import com.telenav.periodic.metrics.MetricsSink;
 import com.telenav.periodic.metrics.MultiMetric;
 import com.telenav.periodic.metrics.OperationStatsMetric;
 import com.telenav.periodic.metrics.PercentileMethod;
+import com.telenav.periodic.metrics.SampleBudget;
+import com.telenav.periodic.metrics.SlidingWindowMetric;
+import com.telenav.periodic.metrics.StatisticalMetrics;
 import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.GUICE_BINDING_OP_TYPE;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_ADAPTIVE_SAMPLES;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_EXEMPLARS;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_HISTOGRAM_PRECISION_BITS;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_HISTOGRAM_TIMINGS;
 import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_MAX_STATS_BUCKETS;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_OPERATION_BYTES;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_PERCENTILES;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_PHASE_TIMINGS;
 import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_REQUESTS_PER_SECOND;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_SAMPLE_BUDGET;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_SLIDING_WINDOW_SECONDS;
+import static com.telenav.smithy.vertx.periodic.metrics.VertxMetricsSupport.SETTINGS_KEY_TIMING_MICROS;
 import com.telenav.smithy.vertx.probe.Probe;
+import com.telenav.smithy.vertx.probe.RequestPhase;
+import com.telenav.smithy.vertx.probe.RequestTiming;
+import static java.lang.Math.ceil;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
@@ -35,10 +57,14 @@ import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singleton;
 import java.util.EnumMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -54,18 +80,34 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
     protected static final int DEFAULT_HARD_STATS_BUCKET_LIMIT = 5050000;
     protected static final int DEFAULT_REQ_PER_SECOND = 2400;
     protected static final int MIN_BUCKETS = 32;
-    protected final Map<Op, List<OperationStatsMetric<Op>>> operationSinks;
-    protected final List<OperationStatsMetric<All>> overall = new ArrayList<>();
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+    protected final Map<Op, List<MultiMetric<Long>>> operationSinks;
+    protected final List<MultiMetric<Long>> overall = new ArrayList<>();
     protected final Provider<Probe<Op>> probe;
     protected final Class<Op> opType;
     private final Provider<Settings> settings;
     private final Provider<OperationWeights> weights;
+    private final Provider<MetricsSink> sink;
+    private final List<Metric> statusMetrics = new ArrayList<>();
+    // Slot of each operation's counter for each status class, indexed by
+    // ordinal * 5 + (status / 100) - 1
+    private final int[] statusSlots;
+    private volatile SlidingWindowMetric window;
+    private volatile boolean timingMicros;
+    // One per RequestPhase across all operations, followed by one per phase
+    // for each operation by ordinal, if phase timings are enabled
+    private volatile HistogramFanOut[] phases;
+    // Request and response sizes, indexed by ordinal * 2, if enabled
+    private volatile HistogramFanOut[] bytes;
+    // Shared by the metrics for all operations and periods
+    private SampleBudget budget;
 
     @Inject
     @SuppressWarnings("unchecked")
     SimpleOperationMetrics(@Named(GUICE_BINDING_OP_TYPE) Class<?> opType, MetricsRegistrar registrar, Provider<Settings> settings,
-            Provider<Probe<?>> probe, Provider<OperationWeights> weights) {
+            Provider<Probe<?>> probe, Provider<OperationWeights> weights, Provider<MetricsSink> sink) {
         super(registrar);
+        this.sink = sink;
         this.settings = settings;
         if (!opType.isEnum()) {
             throw new ConfigurationError("Not a enum type: " + opType);
@@ -75,6 +117,55 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
         this.probe = (Provider<Probe<Op>>) (Provider) probe;
         this.weights = weights;
         operationSinks = new EnumMap<>(this.opType);
+        HttpStatusClass[] classes = HttpStatusClass.values();
+        Op[] ops = this.opType.getEnumConstants();
+        statusSlots = new int[ops.length * classes.length];
+        for (Op op : ops) {
+            for (HttpStatusClass sc : classes) {
+                Metric m = Metric.operationMetric(op, sc);
+                statusMetrics.add(m);
+                statusSlots[op.ordinal() * classes.length + sc.ordinal()] = m.slot();
+            }
+        }
+    }
+
+    @Override
+    public Collection<? extends Metric> incrementalMetrics() {
+        return statusMetrics;
+    }
+
+    /**
+     * Count a response for an operation by its status class.
+     *
+     * @param op The operation
+     * @param status The HTTP status
+     */
+    public final void onResponseStatus(Op op, int status) {
+        int statusClass = (status / 100) - 1;
+        if (status >= 100 && statusClass < 5) {
+            sink.get().onIncrement(statusSlots[op.ordinal() * 5 + statusClass]);
+        }
+    }
+
+    /**
+     * Record the request and response body sizes of a completed request, if
+     * <code>metrics.operation.bytes</code> is set.
+     *
+     * @param op The operation
+     * @param bytesRead The request body size, or -1 if unknown
+     * @param bytesWritten The response body size, or -1 if unknown
+     */
+    public final void onResponseBytes(Op op, long bytesRead, long bytesWritten) {
+        HistogramFanOut[] b = bytes;
+        if (b != null) {
+            int ix = op.ordinal() * 2;
+            if (bytesRead >= 0) {
+                b[ix].add(bytesRead);
+            }
+            if (bytesWritten >= 0) {
+                b[ix + 1].add(bytesWritten);
+            }
+        }
     }
 
     private int targetRequestsPerSecond() {
@@ -85,6 +176,51 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
         return max(MIN_BUCKETS, settings.get().getInt(SETTINGS_KEY_MAX_STATS_BUCKETS, DEFAULT_HARD_STATS_BUCKET_LIMIT));
     }
 
+    private boolean useHistograms() {
+        return settings.get().getBoolean(SETTINGS_KEY_HISTOGRAM_TIMINGS, false);
+    }
+
+    private synchronized SampleBudget sampleBudget() {
+        if (!settings.get().getBoolean(SETTINGS_KEY_ADAPTIVE_SAMPLES, false)) {
+            return null;
+        }
+        if (budget == null) {
+            budget = new SampleBudget(max(SampleBudget.MIN_SAMPLES,
+                    settings.get().getInt(SETTINGS_KEY_SAMPLE_BUDGET, DEFAULT_HARD_STATS_BUCKET_LIMIT)));
+        }
+        return budget;
+    }
+
+    private int exemplars() {
+        return max(0, settings.get().getInt(SETTINGS_KEY_EXEMPLARS, 0));
+    }
+
+    private Set<StatisticalMetrics> percentiles(Op op) {
+        Settings s = settings.get();
+        String spec = s.getString(SETTINGS_KEY_PERCENTILES);
+        if (op != null) {
+            spec = s.getString(SETTINGS_KEY_PERCENTILES + "." + loggingName(op), spec);
+        }
+        if (spec == null) {
+            return StatisticalMetrics.DEFAULT_PERCENTILES;
+        }
+        try {
+            return StatisticalMetrics.parsePercentiles(spec);
+        } catch (IllegalArgumentException ex) {
+            throw new ConfigurationError("Bad percentiles for " + (op == null ? "all" : op)
+                    + ": " + spec, ex);
+        }
+    }
+
+    private static String loggingName(Enum<?> op) {
+        return op.name().toLowerCase().replace('_', '-');
+    }
+
+    private int histogramPrecisionBits() {
+        return settings.get().getInt(SETTINGS_KEY_HISTOGRAM_PRECISION_BITS,
+                LogLinearHistogram.DEFAULT_PRECISION_BITS);
+    }
+
     /**
      * Determine the multiplier to use when computing the number of metrics
      * buckets (an AtomicIntegerArray) to allocate for each operation in order
@@ -94,7 +230,7 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
      * will be ignored).
      * <p>
      * The number of buckets allocated is
-     * <code>targetRequestsPerSecond * samplingInterval.toSeconds() * operationWeight(op)</code>
+     * <code>targetRequestsPerSecond * samplingInterval.toMillis() / 1000 * operationWeight(op)</code>
      * so, if you expect (or are configuring a load balancer to limit you to)
      * 1000 requests per second, then you need 600,000 stats buckets to collect
      * one minute's worth of data for all operations at maximum load (and this
@@ -148,29 +284,146 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
     }
 
     public final void addTime(Op op, Duration dur) {
-        addTime(op, dur.toMillis());
+        addTime(op, dur, null);
+    }
+
+    /**
+     * Record the duration of an operation, in microseconds if
+     * <code>metrics.timing.micros</code> is set, and otherwise in
+     * milliseconds.
+     *
+     * @param op The operation
+     * @param dur The duration
+     * @param exemplar An exemplar such as the request id, or null
+     */
+    public final void addTime(Op op, Duration dur, Object exemplar) {
+        long millis = dur.toMillis();
+        addTime(op, timingMicros ? NANOSECONDS.toMicros(dur.toNanos()) : millis, millis, exemplar);
     }
 
     public final void addTime(Op op, long millis) {
-        List<OperationStatsMetric<Op>> targets = operationSinks.get(op);
+        addTime(op, millis, null);
+    }
+
+    public final void addTime(Op op, long millis, Object exemplar) {
+        addTime(op, timingMicros ? MILLISECONDS.toMicros(millis) : millis, millis, exemplar);
+    }
+
+    private void addTime(Op op, long value, long millis, Object exemplar) {
+        List<MultiMetric<Long>> targets = operationSinks.get(op);
         if (targets != null) {
             assert !targets.isEmpty() : "No targets for " + op;
-            for (OperationStatsMetric<Op> t : targets) {
-                t.add(millis);
+            for (MultiMetric<Long> t : targets) {
+                t.add(value, exemplar);
             }
         } else {
             throw new IllegalArgumentException("No sinks for " + op);
         }
-        for (OperationStatsMetric<All> agg : overall) {
-            agg.add(millis);
+        for (MultiMetric<Long> agg : overall) {
+            agg.add(value, exemplar);
+        }
+        // Sliding windows are always in milliseconds
+        SlidingWindowMetric w = window;
+        if (w != null) {
+            w.addTime(millis);
+        }
+    }
+
+    /**
+     * Record the time a completed request spent in each phase, in
+     * microseconds, for its operation and across all operations, if
+     * <code>metrics.phase.timings</code> is set. Phases the request never
+     * entered are not recorded.
+     *
+     * @param op The operation
+     * @param timing The request's finished timing
+     */
+    public final void onPhaseTimings(Op op, RequestTiming timing) {
+        HistogramFanOut[] ph = phases;
+        if (ph != null) {
+            int opBase = (op.ordinal() + 1) * PHASES.length;
+            for (int i = 0; i < PHASES.length; i++) {
+                long nanos = timing.phaseNanos(PHASES[i]);
+                if (nanos > 0) {
+                    long micros = NANOSECONDS.toMicros(nanos);
+                    ph[i].add(micros);
+                    ph[opBase + i].add(micros);
+                }
+            }
         }
     }
 
+    @Override
+    public Collection<? extends SlidingWindowMetric> slidingWindowMetrics() {
+        int seconds = settings.get().getInt(SETTINGS_KEY_SLIDING_WINDOW_SECONDS, 0);
+        if (seconds <= 0) {
+            return emptyList();
+        }
+        SlidingWindowMetric w = new SlidingWindowMetric(BuiltInMetrics.REQUESTS,
+                Duration.ofSeconds(seconds), min(seconds, SlidingWindowMetric.MAX_SUB_WINDOWS), true);
+        window = w;
+        return singleton(w);
+    }
+
     @Override
     public final Collection<? extends MultiMetric<Long>> multiMetrics(Duration samplingInterval) {
         if (Boolean.getBoolean("unit.test")) {
             return emptyList();
         }
+        timingMicros = settings.get().getBoolean(SETTINGS_KEY_TIMING_MICROS, false);
+        List<MultiMetric<Long>> result = new ArrayList<>(useHistograms()
+                ? histogramMultiMetrics(samplingInterval)
+                : sampledMultiMetrics(samplingInterval));
+        if (settings.get().getBoolean(SETTINGS_KEY_PHASE_TIMINGS, false)) {
+            PhaseStat[] stats = PhaseStat.values();
+            Set<StatisticalMetrics> percentiles = percentiles(null);
+            HistogramFanOut[] ph = phaseFanOuts();
+            for (int i = 0; i < stats.length; i++) {
+                result.add(ph[i].newPeriod(stats[i], percentiles));
+            }
+            for (Op op : opType.getEnumConstants()) {
+                Set<StatisticalMetrics> opPercentiles = percentiles(op);
+                int opBase = (op.ordinal() + 1) * stats.length;
+                for (int i = 0; i < stats.length; i++) {
+                    result.add(ph[opBase + i].newPeriod(op, stats[i], opPercentiles));
+                }
+            }
+        }
+        if (settings.get().getBoolean(SETTINGS_KEY_OPERATION_BYTES, false)) {
+            HistogramFanOut[] b = byteFanOuts();
+            for (Op op : opType.getEnumConstants()) {
+                Set<StatisticalMetrics> percentiles = percentiles(op);
+                result.add(b[op.ordinal() * 2].newPeriod(op, SizeStat.REQUEST_BYTES, percentiles));
+                result.add(b[op.ordinal() * 2 + 1].newPeriod(op, SizeStat.RESPONSE_BYTES, percentiles));
+            }
+        }
+        return result;
+    }
+
+    private synchronized HistogramFanOut[] byteFanOuts() {
+        if (bytes == null) {
+            HistogramFanOut[] result = new HistogramFanOut[opType.getEnumConstants().length * 2];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new HistogramFanOut();
+            }
+            bytes = result;
+        }
+        return bytes;
+    }
+
+    private synchronized HistogramFanOut[] phaseFanOuts() {
+        if (phases == null) {
+            HistogramFanOut[] result = new HistogramFanOut[PHASES.length
+                    * (opType.getEnumConstants().length + 1)];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = new HistogramFanOut();
+            }
+            phases = result;
+        }
+        return phases;
+    }
+
+    private Collection<? extends MultiMetric<Long>> sampledMultiMetrics(Duration samplingInterval) {
         List<OperationStatsMetric<?>> result = new ArrayList<>();
         // We use Probe here for logging, so we don't force the subclasser into
         // depending on a particular logging framework
@@ -180,20 +433,38 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
         logRecord.put("maxStatsBuckets", maxStatsBuckets());
         logRecord.put("minBuckets", MIN_BUCKETS);
         logRecord.put("opType", opType);
+        int exemplars = exemplars();
+        logRecord.put("exemplars", exemplars);
+        logRecord.put("timingMicros", timingMicros);
+        SampleBudget budget = sampleBudget();
+        if (budget != null) {
+            logRecord.put("sampleBudget", budget.limit());
+        }
         for (Op op : opType.getEnumConstants()) {
             withPercentileAndSampleCount(op, samplingInterval, (buckets, probability, method, weight) -> {
                 int weightedBuckets = (int) max(MIN_BUCKETS, round(buckets * operationWeight(op)));
-                OperationStatsMetric<Op> opMetric = new OperationStatsMetric<Op>(op, weightedBuckets, probability, method);
+                Set<StatisticalMetrics> percentiles = percentiles(op);
+                // With a budget, the weighted size is only the starting point
+                OperationStatsMetric<Op> opMetric = budget == null
+                        ? new OperationStatsMetric<Op>(op, weightedBuckets, probability,
+                                method, exemplars, percentiles)
+                        : new OperationStatsMetric<Op>(op, budget, weightedBuckets,
+                                method, exemplars, percentiles);
                 operationSinks.computeIfAbsent(op, o -> new ArrayList<>()).add(opMetric);
                 result.add(opMetric);
-                logRecord.put(op.name().toLowerCase().replace('_', '-'), map("buckets").to(weightedBuckets)
+                logRecord.put(loggingName(op), map("buckets").to(weightedBuckets)
                         .map("sampleRate").to(probabilityToString(probability))
                         .map("weight").to(weight)
+                        .map("percentiles").to(percentiles.toString())
                         .map("percentileMethod").finallyTo(method.name()));
             });
         }
         withPercentileAndSampleCount(null, samplingInterval, (buckets, probability, method, weight) -> {
-            OperationStatsMetric<All> newAll = new OperationStatsMetric<>(All.ALL, buckets, probability, method);
+            OperationStatsMetric<All> newAll = budget == null
+                    ? new OperationStatsMetric<>(All.ALL, buckets, probability, method,
+                            exemplars, percentiles(null))
+                    : new OperationStatsMetric<>(All.ALL, budget, buckets, method,
+                            exemplars, percentiles(null));
             logRecord.put("all", map("buckets").to(buckets)
                     .map("sampleRate").to(probabilityToString(probability))
                     .map("weight").to(weight)
@@ -205,22 +476,52 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
         return result;
     }
 
+    /**
+     * Create timing metrics backed by LogLinearHistograms, whose size depends
+     * only on the configured precision, not on the sampling interval or
+     * expected request rate, and which record every timing rather than a
+     * random sample.
+     */
+    private Collection<? extends MultiMetric<Long>> histogramMultiMetrics(Duration samplingInterval) {
+        int bits = histogramPrecisionBits();
+        List<HistogramStatsMetric<?>> result = new ArrayList<>();
+        for (Op op : opType.getEnumConstants()) {
+            HistogramStatsMetric<Op> opMetric = new HistogramStatsMetric<>(op, bits, percentiles(op));
+            operationSinks.computeIfAbsent(op, o -> new ArrayList<>()).add(opMetric);
+            result.add(opMetric);
+        }
+        HistogramStatsMetric<All> newAll = new HistogramStatsMetric<>(All.ALL, bits, percentiles(null));
+        overall.add(newAll);
+        result.add(newAll);
+        Map<String, Object> logRecord = new LinkedHashMap<>();
+        logRecord.put("samplingInterval", samplingInterval);
+        logRecord.put("histogramPrecisionBits", bits);
+        logRecord.put("histogramBuckets", new LogLinearHistogram(bits, LogLinearHistogram.DEFAULT_MAX_VALUE).bucketCount());
+        logRecord.put("opType", opType);
+        logRecord.put("timingMicros", timingMicros);
+        probe.get().onEvent("initMetrics", logRecord);
+        return result;
+    }
+
     private String probabilityToString(SampleProbability probability) {
         return probability == null ? "100%" : probability.toString();
     }
 
     private void withPercentileAndSampleCount(Op op, Duration dur, QuadConsumer<Integer, SampleProbability, PercentileMethod, Double> c) {
-        long seconds = dur.toSeconds();
+        // Scale by milliseconds, so sub-minute periods get proportionally
+        // smaller arrays rather than being rounded to whole seconds
+        long millis = max(1, dur.toMillis());
         int targetRequestsPerSecond = targetRequestsPerSecond();
         int maxStatsBuckets = maxStatsBuckets();
-        int targetSamples = (int) min(Integer.MAX_VALUE, targetRequestsPerSecond() * seconds);
+        double expectedRequests = ((double) targetRequestsPerSecond * millis) / 1000D;
+        int targetSamples = (int) min(Integer.MAX_VALUE, (long) ceil(expectedRequests));
         PercentileMethod method;
         SampleProbability probability;
         int buckets;
         if (targetSamples > maxStatsBuckets) {
             buckets = maxStatsBuckets;
             method = PercentileMethod.INTERPOLATED;
-            double val = (double) maxStatsBuckets / (double) (targetRequestsPerSecond * seconds);
+            double val = (double) maxStatsBuckets / expectedRequests;
             probability = SampleProbability.nearest(val);
         } else {
             buckets = targetSamples;
@@ -238,4 +539,23 @@ final class SimpleOperationMetrics<Op extends Enum<Op>> extends MetricsRegistry
     public enum All {
         ALL
     }
+
+    /**
+     * Names for the statistics of each RequestPhase, in the same order.
+     */
+    enum PhaseStat {
+        QUEUE_WAIT_MICROS,
+        PAYLOAD_READ_MICROS,
+        EXECUTION_MICROS,
+        SERIALIZATION_MICROS,
+        WRITE_MICROS
+    }
+
+    /**
+     * Qualifiers for the per-operation size statistics.
+     */
+    enum SizeStat {
+        REQUEST_BYTES,
+        RESPONSE_BYTES
+    }
 }
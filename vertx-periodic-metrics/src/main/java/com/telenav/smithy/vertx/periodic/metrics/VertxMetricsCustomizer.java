@@ -33,13 +33,20 @@ final class VertxMetricsCustomizer implements UnaryOperator<VertxOptions> {
     private final Provider<MetricsSink> sink;
     private final ClientTimingConsumer clientTimings;
     private final Probe<?> probe;
+    private final Provider<HttpServerStats> serverStats;
+    private final Provider<ClientAndPoolStats> clientStats;
+    private final Provider<EventLoopLagMonitor> lagMonitor;
 
     @Inject
     VertxMetricsCustomizer(Provider<MetricsSink> sink,
-            ClientTimingConsumer clientTimings, Probe<?> probe) {
+            ClientTimingConsumer clientTimings, Probe<?> probe, Provider<HttpServerStats> serverStats,
+            Provider<ClientAndPoolStats> clientStats, Provider<EventLoopLagMonitor> lagMonitor) {
         this.sink = sink;
         this.clientTimings = clientTimings;
         this.probe = probe;
+        this.serverStats = serverStats;
+        this.clientStats = clientStats;
+        this.lagMonitor = lagMonitor;
     }
 
     @Override
@@ -47,7 +54,8 @@ final class VertxMetricsCustomizer implements UnaryOperator<VertxOptions> {
         if (!Boolean.getBoolean("unit.test")) {
             MetricsOptions mo = new MetricsOptions();
             mo.setEnabled(true);
-            mo.setFactory(new PeriodicVertxMetrics(sink.get(), clientTimings, probe));
+            mo.setFactory(new PeriodicVertxMetrics(sink.get(), clientTimings, probe,
+                    serverStats.get(), clientStats.get(), lagMonitor.get()));
             return vxopts.setMetricsOptions(mo);
         }
         return vxopts;
@@ -18,6 +18,7 @@ package com.telenav.smithy.vertx.periodic.metrics;
 import com.google.inject.Module;
 import com.mastfrog.giulius.annotations.Setting;
 import static com.mastfrog.giulius.annotations.Setting.Tier.PRIMARY;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.BOOLEAN;
 import static com.mastfrog.giulius.annotations.Setting.ValueType.INTEGER;
 import com.telenav.periodic.metrics.OutboundMetricsSink;
 import com.telenav.vertx.guice.VertxGuiceModule;
@@ -26,6 +27,10 @@ import java.util.Set;
 
 /**
  * Binds metrics support and configures a VertxGuiceModule to use it.
+ * Per-operation counts of responses by status class, per-operation request
+ * and response sizes, and the time requests spend in each phase, are
+ * collected by OperationMetricsProbe, which must be registered with the
+ * VertxProbeModule.
  *
  * @author Tim Boudreau
  */
@@ -42,6 +47,66 @@ public final class VertxMetricsSupport<Op extends Enum<Op>> {
             + "of buckets, metrics will use random sampling of request timings.", type = INTEGER,
             defaultValue = "5050000")
     public static final String SETTINGS_KEY_MAX_STATS_BUCKETS = "max.stats.buckets";
+    @Setting(value = "If true, collect per-operation request timings in fixed-size log-linear "
+            + "histograms rather than arrays of raw samples - memory use no longer depends on "
+            + SETTINGS_KEY_REQUESTS_PER_SECOND + " or " + SETTINGS_KEY_MAX_STATS_BUCKETS
+            + ", no timings are dropped by sampling, and percentiles are approximate "
+            + "within a bounded relative error.", type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_HISTOGRAM_TIMINGS = "metrics.histogram.timings";
+    @Setting(value = "Bits of precision for timing histograms when " + SETTINGS_KEY_HISTOGRAM_TIMINGS
+            + " is true, from 1 to 14; percentiles are accurate to within 1 / 2^(bits + 1) and "
+            + "each histogram uses roughly (33 - bits) * 2^bits longs.", type = INTEGER,
+            defaultValue = "7")
+    public static final String SETTINGS_KEY_HISTOGRAM_PRECISION_BITS = "metrics.histogram.precision.bits";
+    @Setting(value = "If greater than zero, keep a sliding window of this many seconds of "
+            + "overall request counts and timings, which can be queried at any time through the "
+            + "injectable SlidingWindows for BuiltInMetrics.REQUESTS - for example, to shed load "
+            + "based on the last few seconds' request rate or p99 latency.", type = INTEGER,
+            defaultValue = "0")
+    public static final String SETTINGS_KEY_SLIDING_WINDOW_SECONDS = "metrics.sliding.window.seconds";
+    @Setting(value = "If greater than zero, retain the request ids of this many of the slowest "
+            + "requests for each operation in each metrics period, and emit them alongside "
+            + "the operation's p99; ignored if " + SETTINGS_KEY_HISTOGRAM_TIMINGS + " is true.",
+            type = INTEGER, defaultValue = "0")
+    public static final String SETTINGS_KEY_EXEMPLARS = "metrics.exemplars";
+    @Setting(value = "Comma-delimited percentiles to emit for each operation, from p10, median, "
+            + "p75, p90, p95, p99, p99.9 and p99.99; may be overridden for a single operation by "
+            + "appending '.' and the operation's lower-case, hyphenated name to this key.",
+            defaultValue = "p10,median,p90,p99")
+    public static final String SETTINGS_KEY_PERCENTILES = "metrics.percentiles";
+    @Setting(value = "HTTP path the OpenMetrics (Prometheus) endpoint is served on, if enabled "
+            + "with VertxMetricsSupport.withOpenMetricsEndpoint().", defaultValue = "/metrics")
+    public static final String SETTINGS_KEY_OPENMETRICS_PATH = "openmetrics.path";
+    @Setting(value = "Interval in milliseconds at which a timer is run on each event loop to "
+            + "measure how late it fires - the event loop lag caused by handlers which block "
+            + "or run too long.  Zero disables lag monitoring.", type = INTEGER,
+            defaultValue = "100")
+    public static final String SETTINGS_KEY_EVENT_LOOP_LAG_INTERVAL = "metrics.event.loop.lag.interval.ms";
+    @Setting(value = "If true, the number of timing samples kept for each operation adapts to "
+            + "the traffic it actually sees, growing or shrinking between metrics periods within "
+            + "the shared limit set by metrics.sample.budget; the operation weights and "
+            + SETTINGS_KEY_REQUESTS_PER_SECOND + " only determine the initial sizes.  Ignored if "
+            + SETTINGS_KEY_HISTOGRAM_TIMINGS + " is true.", type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_ADAPTIVE_SAMPLES = "metrics.adaptive.samples";
+    @Setting(value = "Total number of timing samples which may be held across all operations "
+            + "and periods when " + SETTINGS_KEY_ADAPTIVE_SAMPLES + " is true.", type = INTEGER,
+            defaultValue = "5050000")
+    public static final String SETTINGS_KEY_SAMPLE_BUDGET = "metrics.sample.budget";
+    @Setting(value = "If true, record per-operation request timings in microseconds rather than "
+            + "milliseconds, so that operations which complete in under a millisecond are "
+            + "distinguishable; all emitted timing statistics for operations are then in "
+            + "microseconds.", type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_TIMING_MICROS = "metrics.timing.micros";
+    @Setting(value = "If true, emit statistics in microseconds for the time requests spend in "
+            + "each phase - queue wait, payload read, execution, serialization and write - "
+            + "for each operation and across all operations, using the percentiles set by "
+            + SETTINGS_KEY_PERCENTILES + ".  The timings are collected by OperationMetricsProbe.",
+            type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_PHASE_TIMINGS = "metrics.phase.timings";
+    @Setting(value = "If true, emit statistics of the request and response body sizes of each "
+            + "operation, using the percentiles set by " + SETTINGS_KEY_PERCENTILES + ".",
+            type = BOOLEAN, defaultValue = "false")
+    public static final String SETTINGS_KEY_OPERATION_BYTES = "metrics.operation.bytes";
 
     /**
      * The operation class, which is bound as named under this value.
@@ -52,6 +117,7 @@ public final class VertxMetricsSupport<Op extends Enum<Op>> {
     private final Class<? extends OutboundMetricsSink> sinkType;
     private final Set<Module> additionalModules = new LinkedHashSet<>();
     private boolean collectDbTimings;
+    private boolean openMetricsEndpoint;
     private Class<? extends OperationWeights> opWeights;
 
     public VertxMetricsSupport(Class<Op> opType, Class<? extends OutboundMetricsSink> sinkType) {
@@ -74,6 +140,19 @@ public final class VertxMetricsSupport<Op extends Enum<Op>> {
         return this;
     }
 
+    /**
+     * Serve the last emitted values of all metrics in OpenMetrics text format,
+     * for scraping by Prometheus or similar, on the path set by
+     * <code>openmetrics.path</code> (default <code>/metrics</code>) of every
+     * router.
+     *
+     * @return this
+     */
+    public VertxMetricsSupport<Op> withOpenMetricsEndpoint() {
+        openMetricsEndpoint = true;
+        return this;
+    }
+
     public static <Op extends Enum<Op>> VertxMetricsSupport<Op> vertxMetricsSupport(Class<Op> opType,
             Class<? extends OutboundMetricsSink> sinkType) {
         return new VertxMetricsSupport<>(opType, sinkType);
@@ -88,7 +167,11 @@ public final class VertxMetricsSupport<Op extends Enum<Op>> {
      */
     public VertxGuiceModule attachTo(VertxGuiceModule module) {
         module.withVertxOptionsCustomizer(VertxMetricsCustomizer.class);
-        module.withModule(new VertxPeriodicMetricsModule<>(opType, sinkType, opWeights, collectDbTimings));
+        module.withModule(new VertxPeriodicMetricsModule<>(opType, sinkType, opWeights,
+                collectDbTimings));
+        if (openMetricsEndpoint) {
+            module.customizingAllRoutersWith(OpenMetricsRoute.class);
+        }
         additionalModules.forEach(mod -> {
             module.withModule(mod);
         });
@@ -85,6 +85,10 @@ final class VertxPeriodicMetricsModule<Op extends Enum<Op>> implements Module {
 
         binder.install(new MetricsModule()
                 .withMetricsRegistry(SimpleOperationMetrics.class)
+                .withMetricsRegistry(HttpServerStats.class)
+                .withMetricsRegistry(ClientAndPoolStats.class)
+                .withMetricsRegistry(EventLoopLagMonitor.class)
+                .withMetricsRegistry(ProbeQueueStats.class)
                 .withOutboundMetricsSink(sinkType));
         if (weights != null) {
             binder.bind(OperationWeights.class).to(weights);
@@ -128,7 +132,7 @@ final class VertxPeriodicMetricsModule<Op extends Enum<Op>> implements Module {
         }
     }
 
-    private static final class TimingMetricsConsumer<Op extends Enum<Op>> implements BiConsumer<Op, Duration> {
+    private static final class TimingMetricsConsumer<Op extends Enum<Op>> implements ExemplarTimingConsumer<Op> {
 
         private final Provider<SimpleOperationMetrics> mx;
         private final Class<Op> opType;
@@ -145,6 +149,36 @@ final class VertxPeriodicMetricsModule<Op extends Enum<Op>> implements Module {
             assert opType.isInstance(op);
             mx.get().addTime(op, u);
         }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Op op, Duration u, Object exemplar) {
+            assert opType.isInstance(op);
+            mx.get().addTime(op, u, exemplar);
+        }
+    }
+
+    private static final class UntypedTimingConsumer implements ExemplarTimingConsumer<Enum<?>> {
+
+        @SuppressWarnings("rawType")
+        private final SimpleOperationMetrics mx;
+
+        @SuppressWarnings("rawType")
+        UntypedTimingConsumer(SimpleOperationMetrics mx) {
+            this.mx = mx;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Enum<?> op, Duration u) {
+            mx.addTime(op, u);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void accept(Enum<?> op, Duration u, Object exemplar) {
+            mx.addTime(op, u, exemplar);
+        }
     }
 
     static class UntypedMetricsConsumer implements Provider<BiConsumer<Enum<?>, Duration>> {
@@ -162,7 +196,7 @@ final class VertxPeriodicMetricsModule<Op extends Enum<Op>> implements Module {
         @Override
         @SuppressWarnings("unchecked")
         public BiConsumer<Enum<?>, Duration> get() {
-            return consumer == null ? consumer = rawProvider.get()::addTime : consumer;
+            return consumer == null ? consumer = new UntypedTimingConsumer(rawProvider.get()) : consumer;
         }
     }
 
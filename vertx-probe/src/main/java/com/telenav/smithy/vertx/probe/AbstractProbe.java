@@ -28,10 +28,33 @@ import java.util.function.Consumer;
 abstract class AbstractProbe<Ops extends Enum<Ops>> extends Probe<Ops> {
 
     final List<? extends ProbeImplementation<? super Ops>> delegates;
+    private final boolean acceptsRequestEvents;
 
     AbstractProbe(Collection<? extends ProbeImplementation<? super Ops>> l) {
         delegates = new ArrayList<>(l);
         sort(delegates);
+        boolean accepts = !delegates.isEmpty();
+        for (ProbeImplementation<? super Ops> del : delegates) {
+            accepts &= del.acceptsRequestEvents();
+        }
+        acceptsRequestEvents = accepts;
+    }
+
+    @Override
+    public boolean acceptsRequestEvents() {
+        return acceptsRequestEvents;
+    }
+
+    @Override
+    public void onRequestEvent(ProbeEvent<? extends Ops> event) {
+        // Called for every request, so avoid the lambda eachDelegate() needs
+        for (int i = 0; i < delegates.size(); i++) {
+            try {
+                delegates.get(i).onRequestEvent(event);
+            } catch (Exception | Error ex) {
+                ex.printStackTrace(System.err);
+            }
+        }
     }
 
     void eachDelegate(Consumer<? super ProbeImplementation<? super Ops>> c) {
@@ -22,57 +22,126 @@ import io.vertx.core.Verticle;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.ext.web.RoutingContext;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.Optional;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 /**
  * Asynchronous implementation of Probe which uses a background thread to call
- * all of the providers it wraps. Ensures all events are written, even when
- * called during shutdown.
+ * all of the providers it wraps. Events are queued in a bounded ring buffer
+ * and passed to the providers in batches; what happens when the buffer is full
+ * is determined by the ProbeOverflowPolicy. Ensures all queued events are
+ * written, even when called during shutdown.
+ * <p>
+ * If every provider accepts ProbeEvents, the per-request events (start,
+ * enter-handler, send-response and completed) are written in place into the
+ * buffer's preallocated slots, so they allocate nothing and do not keep the
+ * request's RoutingContext alive until the background thread catches up.
+ * </p>
  *
  * @author Tim Boudreau
  */
-final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
+final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> implements ProbeQueue {
 
+    static final int DEFAULT_CAPACITY = 65536;
+    private static final int BATCH_SIZE = 256;
     private static final long PARK_INTERVAL_SECONDS = 10;
+    private static final long BLOCKED_PARK_NANOS = 50_000;
     private static final int STATE_NEW = 0;
     private static final int STATE_STARTED = 1;
     private static final int STATE_SHUTDOWN = 2;
     private final AtomicInteger state = new AtomicInteger();
-    private final AtomicReference<Cell<Ops>> head = new AtomicReference<>();
+    private final ProbeRingBuffer<EventSlot<Ops>> queue;
+    private final ProbeOverflowPolicy overflow;
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean sleeping = new AtomicBoolean();
     private final Thread emitter = new Thread(this::emitLoop, "async-probe");
+    private final Consumer<EventSlot<Ops>> emitSlot = this::emit;
+    private final boolean flyweight;
 
     AsyncProbe(Probe<Ops> delegate) {
+        this(delegate, DEFAULT_CAPACITY, ProbeOverflowPolicy.DROP);
+    }
+
+    AsyncProbe(Probe<Ops> delegate, int capacity, ProbeOverflowPolicy overflow) {
         super(Collections.singletonList(delegate));
+        queue = new ProbeRingBuffer<>(capacity, EventSlot::new);
+        this.overflow = overflow == null ? ProbeOverflowPolicy.DROP : overflow;
+        flyweight = delegate.acceptsRequestEvents();
         emitter.setPriority(Thread.NORM_PRIORITY - 1);
         emitter.setDaemon(true);
     }
 
-    boolean drain(LinkedList<? super OpRecord<Ops>> into) {
-        // Drain the contents of the trieber stack, removing its head and
-        // collecting its contents into the passed list.
-        Cell<Ops> cell = head.getAndSet(null);
-        if (cell != null) {
-            cell.addTo(into);
-            return true;
-        }
-        return false;
+    @Override
+    public Optional<ProbeQueue> queue() {
+        return Optional.of(this);
+    }
+
+    @Override
+    public int capacity() {
+        return queue.capacity();
+    }
+
+    @Override
+    public int queued() {
+        return queue.size();
+    }
+
+    @Override
+    public long dropped() {
+        return dropped.sum();
     }
 
     void push(OpRecord<Ops> op) {
-        // Push a new cell atomically onto the trieber stack
-        Cell<Ops> prev = head.getAndUpdate(old -> new Cell<>(op, old));
-        if (prev == null) {
+        long pos = claim();
+        if (pos >= 0) {
+            queue.slot(pos).record(op);
+            published(pos);
+        }
+    }
+
+    /**
+     * Claim a slot in the queue, applying the overflow policy if it is full.
+     *
+     * @return A position, or -1 if the event should be dropped
+     */
+    private long claim() {
+        long pos = queue.claim();
+        return pos < 0 ? overflowed() : pos;
+    }
+
+    private void published(long pos) {
+        queue.publish(pos);
+        if (state.get() != STATE_STARTED || (sleeping.get() && sleeping.getAndSet(false))) {
             enqueue();
         }
     }
 
+    private long overflowed() {
+        // The emitter cannot wait for itself, if a probe implementation
+        // calls back into the probe
+        if (overflow == ProbeOverflowPolicy.BLOCK && Thread.currentThread() != emitter) {
+            long pos;
+            while ((pos = queue.claim()) < 0) {
+                if (state.get() != STATE_STARTED) {
+                    // Nothing else will drain it
+                    enqueue();
+                } else {
+                    LockSupport.unpark(emitter);
+                    LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                }
+            }
+            return pos;
+        }
+        dropped.increment();
+        return -1;
+    }
+
     @Override
     public boolean shutdown() throws InterruptedException {
         int oldState = state.getAndUpdate(old -> STATE_SHUTDOWN);
@@ -103,7 +172,11 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
                 LockSupport.unpark(emitter);
                 break;
             case STATE_SHUTDOWN:
-                emitOneBatch(drainAll(new LinkedList<>()));
+                // If a probe implementation called us while we are draining
+                // on this thread, the loop in drainAll() will get to it
+                if (!Thread.holdsLock(this)) {
+                    drainAll();
+                }
                 break;
             default:
                 throw new AssertionError(oldState);
@@ -111,41 +184,53 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
     }
 
     void emitLoop() {
-        LinkedList<OpRecord<Ops>> records = new LinkedList<>();
         do {
-            drainAll(records);
-            if (!records.isEmpty()) {
-                emitOneBatch(records);
-            }
-            int lastState = state.get();
-            if (lastState != STATE_SHUTDOWN) {
-                LockSupport.parkNanos(this, NANOSECONDS.convert(
-                        PARK_INTERVAL_SECONDS, SECONDS));
+            drainAll();
+            if (state.get() != STATE_SHUTDOWN) {
+                // Producers unpark us if they see this set; check again after
+                // setting it, in case something was queued in between
+                sleeping.set(true);
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, NANOSECONDS.convert(
+                            PARK_INTERVAL_SECONDS, SECONDS));
+                }
+                sleeping.set(false);
             }
         } while (state.get() != STATE_SHUTDOWN);
         // If we switched into shutdown state, make SURE any remaining
         // items are emitted:
-        emitOneBatch(drainAll(records));
+        drainAll();
     }
 
+    /**
+     * Emit everything queued, in batches. Normally only called on the emitter
+     * thread, but after shutdown callers drain what they push themselves, so
+     * this is synchronized to keep the queue single-consumer.
+     */
     @SuppressWarnings("empty-statement")
-    public LinkedList<OpRecord<Ops>> drainAll(LinkedList<OpRecord<Ops>> records) {
-        while (drain(records));
-        if (!records.isEmpty()) {
-            emitOneBatch(records);
-        }
-        return records;
+    synchronized void drainAll() {
+        while (queue.drain(emitSlot, BATCH_SIZE) > 0);
     }
 
-    void emitOneBatch(LinkedList<? extends OpRecord<Ops>> into) {
+    private void emit(EventSlot<Ops> slot) {
         try {
-            eachDelegate(del -> {
-                for (OpRecord<Ops> r : into) {
-                    r.accept(del);
+            OpRecord<Ops> rec = slot.record;
+            for (int i = 0; i < delegates.size(); i++) {
+                ProbeImplementation<? super Ops> del = delegates.get(i);
+                try {
+                    if (rec != null) {
+                        rec.accept(del);
+                    } else {
+                        del.onRequestEvent(slot);
+                    }
+                } catch (Exception | Error ex) {
+                    // We are already IN the logging mechanism here - do not
+                    // try to do anything that can call us back reentrantly
+                    ex.printStackTrace(System.err);
                 }
-            });
+            }
         } finally {
-            into.clear();
+            slot.clear();
         }
     }
 
@@ -153,30 +238,6 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
         emitter.start();
     }
 
-    /**
-     * A simple trieber stack.
-     *
-     * @param <Ops> The operation type
-     */
-    private static final class Cell<Ops extends Enum<Ops>> {
-
-        private final OpRecord<Ops> record;
-        private final Cell<Ops> prev;
-
-        public Cell(OpRecord<Ops> record, Cell<Ops> prev) {
-            this.record = record;
-            this.prev = prev;
-        }
-
-        void addTo(LinkedList<? super OpRecord<Ops>> l) {
-            // If we want fifo order we need addFirst
-            l.addFirst(record);
-            if (prev != null) {
-                prev.addTo(l);
-            }
-        }
-    }
-
     static abstract class OpRecord<Ops extends Enum<Ops>> implements Consumer<ProbeImplementation<? super Ops>> {
 
     }
@@ -237,7 +298,15 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
 
     @Override
     public void onStartRequest(Ops op, RoutingContext event) {
-        push(new StartRequestRecord<>(op, event));
+        if (!flyweight) {
+            push(new StartRequestRecord<>(op, event));
+            return;
+        }
+        long pos = claim();
+        if (pos >= 0) {
+            queue.slot(pos).startRequest(op, event);
+            published(pos);
+        }
     }
 
     private static final class StartRequestRecord<Ops extends Enum<Ops>> extends OpRecord<Ops> {
@@ -258,7 +327,21 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
 
     @Override
     public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload) {
-        push(new SendResponseRecord<>(op, event, payload));
+        onBeforeSendResponse(op, event, payload, null);
+    }
+
+    @Override
+    public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload,
+            Buffer serialized) {
+        if (!flyweight) {
+            push(new SendResponseRecord<>(op, event, payload, serialized));
+            return;
+        }
+        long pos = claim();
+        if (pos >= 0) {
+            queue.slot(pos).beforeSendResponse(op, event, payload, serialized);
+            published(pos);
+        }
     }
 
     private static final class SendResponseRecord<Ops extends Enum<Ops>> extends OpRecord<Ops> {
@@ -266,16 +349,22 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
         private final Ops op;
         private final RoutingContext event;
         private final Optional<?> payload;
+        private final Buffer serialized;
 
-        public SendResponseRecord(Ops op, RoutingContext event, Optional<?> payload) {
+        public SendResponseRecord(Ops op, RoutingContext event, Optional<?> payload, Buffer serialized) {
             this.op = op;
             this.event = event;
             this.payload = payload;
+            this.serialized = serialized;
         }
 
         @Override
         public void accept(ProbeImplementation<? super Ops> t) {
-            t.onBeforeSendResponse(op, event, payload);
+            if (serialized == null) {
+                t.onBeforeSendResponse(op, event, payload);
+            } else {
+                t.onBeforeSendResponse(op, event, payload, serialized);
+            }
         }
     }
 
@@ -304,7 +393,15 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
 
     @Override
     public void onResponseCompleted(Ops op, RoutingContext event, int status) {
-        push(new ResponseCompletedRecord<>(op, event, status));
+        if (!flyweight) {
+            push(new ResponseCompletedRecord<>(op, event, status));
+            return;
+        }
+        long pos = claim();
+        if (pos >= 0) {
+            queue.slot(pos).responseCompleted(op, event, status);
+            published(pos);
+        }
     }
 
     private static final class ResponseCompletedRecord<Ops extends Enum<Ops>> extends OpRecord<Ops> {
@@ -363,7 +460,14 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
 
     @Override
     public void onAfterPayloadRead(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> payload) {
-        push(new AfterPayloadReadRecord<>(op, event, handler, payload));
+        push(new AfterPayloadReadRecord<>(op, event, handler, payload, null));
+    }
+
+    @Override
+    public void onAfterPayloadRead(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> payload, Buffer raw) {
+        ByteBuf bb = raw == null ? null : raw.getByteBuf();
+        push(new AfterPayloadReadRecord<>(op, event, handler, payload,
+                bb == null ? null : Buffer.buffer(bb.duplicate())));
     }
 
     private static final class AfterPayloadReadRecord<Ops extends Enum<Ops>> extends OpRecord<Ops> {
@@ -372,17 +476,23 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
         private final RoutingContext event;
         private final Class<? extends Handler<RoutingContext>> handler;
         private final Optional<?> buffer;
+        private final Buffer raw;
 
-        public AfterPayloadReadRecord(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> buffer) {
+        public AfterPayloadReadRecord(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> buffer, Buffer raw) {
             this.op = op;
             this.event = event;
             this.handler = handler;
             this.buffer = buffer;
+            this.raw = raw;
         }
 
         @Override
         public void accept(ProbeImplementation<? super Ops> t) {
-            t.onAfterPayloadRead(op, event, handler, buffer);
+            if (raw == null) {
+                t.onAfterPayloadRead(op, event, handler, buffer);
+            } else {
+                t.onAfterPayloadRead(op, event, handler, buffer, raw);
+            }
         }
     }
 
@@ -480,7 +590,15 @@ final class AsyncProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
 
     @Override
     public void onEnterHandler(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler) {
-        push(new EnterHandlerRecord<>(op, event, handler));
+        if (!flyweight) {
+            push(new EnterHandlerRecord<>(op, event, handler));
+            return;
+        }
+        long pos = claim();
+        if (pos >= 0) {
+            queue.slot(pos).enterHandler(op, event, handler);
+            published(pos);
+        }
     }
 
     private static final class EnterHandlerRecord<Ops extends Enum<Ops>> extends OpRecord<Ops> {
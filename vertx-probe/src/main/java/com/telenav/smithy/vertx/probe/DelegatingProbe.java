@@ -70,11 +70,21 @@ final class DelegatingProbe<Ops extends Enum<Ops>> extends AbstractProbe<Ops> {
         eachDelegate(del -> del.onAfterPayloadRead(op, event, handler, payload));
     }
 
+    @Override
+    public void onAfterPayloadRead(Ops op, RoutingContext event, Class<? extends Handler<RoutingContext>> handler, Optional<?> payload, Buffer raw) {
+        eachDelegate(del -> del.onAfterPayloadRead(op, event, handler, payload, raw));
+    }
+
     @Override
     public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload) {
         eachDelegate(del -> del.onBeforeSendResponse(op, event, payload));
     }
 
+    @Override
+    public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload, Buffer serialized) {
+        eachDelegate(del -> del.onBeforeSendResponse(op, event, payload, serialized));
+    }
+
     public void onAfterSendResponse(Ops op, RoutingContext event, int status) {
         eachDelegate(del -> del.onAfterSendResponse(op, event, status));
     }
@@ -0,0 +1,186 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import com.telenav.smithy.vertx.probe.AsyncProbe.OpRecord;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.ext.web.RoutingContext;
+import java.util.Optional;
+
+/**
+ * One preallocated slot in AsyncProbe's ring buffer, which either holds the
+ * fields of a per-request event, written in place, or a record object for
+ * the less frequent kinds of event.
+ *
+ * @param <Ops> The operation type
+ */
+final class EventSlot<Ops extends Enum<Ops>> implements ProbeEvent<Ops> {
+
+    OpRecord<Ops> record;
+    private ProbeEventKind kind;
+    private Ops op;
+    private long timestamp;
+    private Object requestId;
+    private String uri;
+    private HttpMethod method;
+    private Class<? extends Handler<RoutingContext>> handler;
+    private Optional<?> payload;
+    private Buffer serialized;
+    private int status = -1;
+    private long bytesRead = -1;
+    private long bytesWritten = -1;
+    private RequestTiming timing;
+
+    void record(OpRecord<Ops> record) {
+        this.record = record;
+    }
+
+    private void begin(ProbeEventKind kind, Ops op, RoutingContext ctx) {
+        this.kind = kind;
+        this.op = op;
+        timestamp = System.currentTimeMillis();
+        requestId = ctx.get(Probe.REQUEST_ID_KEY);
+    }
+
+    private void request(RoutingContext ctx) {
+        HttpServerRequest req = ctx.request();
+        uri = req.uri();
+        method = req.method();
+    }
+
+    void startRequest(Ops op, RoutingContext ctx) {
+        begin(ProbeEventKind.START_REQUEST, op, ctx);
+        request(ctx);
+    }
+
+    void enterHandler(Ops op, RoutingContext ctx, Class<? extends Handler<RoutingContext>> handler) {
+        begin(ProbeEventKind.ENTER_HANDLER, op, ctx);
+        request(ctx);
+        this.handler = handler;
+    }
+
+    void beforeSendResponse(Ops op, RoutingContext ctx, Optional<?> payload, Buffer serialized) {
+        begin(ProbeEventKind.BEFORE_SEND_RESPONSE, op, ctx);
+        this.payload = payload;
+        this.serialized = serialized;
+    }
+
+    void responseCompleted(Ops op, RoutingContext ctx, int status) {
+        begin(ProbeEventKind.RESPONSE_COMPLETED, op, ctx);
+        this.status = status;
+        bytesRead = ctx.request().bytesRead();
+        bytesWritten = ctx.response().bytesWritten();
+        timing = RequestTiming.of(ctx);
+    }
+
+    /**
+     * Drop all references, so nothing is retained once the slot has been
+     * emitted.
+     */
+    void clear() {
+        record = null;
+        kind = null;
+        op = null;
+        requestId = null;
+        uri = null;
+        method = null;
+        handler = null;
+        payload = null;
+        serialized = null;
+        status = -1;
+        bytesRead = -1;
+        bytesWritten = -1;
+        timing = null;
+    }
+
+    @Override
+    public ProbeEventKind kind() {
+        return kind;
+    }
+
+    @Override
+    public Ops operation() {
+        return op;
+    }
+
+    @Override
+    public long timestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public Object requestId() {
+        return requestId;
+    }
+
+    @Override
+    public String uri() {
+        return uri;
+    }
+
+    @Override
+    public HttpMethod method() {
+        return method;
+    }
+
+    @Override
+    public Class<? extends Handler<RoutingContext>> handler() {
+        return handler;
+    }
+
+    @Override
+    public Optional<?> payload() {
+        return payload == null ? Optional.empty() : payload;
+    }
+
+    @Override
+    public Optional<Buffer> serializedPayload() {
+        return Optional.ofNullable(serialized);
+    }
+
+    @Override
+    public int status() {
+        return status;
+    }
+
+    @Override
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public long durationNanos() {
+        return timing == null ? -1 : timing.elapsedNanos();
+    }
+
+    @Override
+    public RequestTiming timing() {
+        return timing;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + op + " " + requestId;
+    }
+}
@@ -18,10 +18,9 @@ package com.telenav.smithy.vertx.probe;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.ext.web.RoutingContext;
-import static java.lang.System.currentTimeMillis;
 import java.time.Duration;
 import java.util.Collection;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -33,8 +32,6 @@ import java.util.function.Supplier;
  */
 public class Probe<Ops extends Enum<Ops>> implements ProbeImplementation<Ops> {
 
-    static final String START_KEY = "s" + ThreadLocalRandom.current().nextLong();
-    static final String AGE_KEY = "a" + ThreadLocalRandom.current().nextLong();
     /**
      * Key for use with the stderr probe - any object stored in the request
      * context under this key will be included in log messages.
@@ -60,25 +57,27 @@ public class Probe<Ops extends Enum<Ops>> implements ProbeImplementation<Ops> {
      * This is handled explicitly here, so that asynchronously run probes will
      * report the correct amount of time even if they are run some time later
      * than the response being completed.
+     * </p><p>
+     * The duration has nanosecond precision; the RequestTiming it is computed
+     * from can be obtained with <code>RequestTiming.of(ctx)</code> for the
+     * time spent in each phase of the request.
      *
      * @param ctx A routing context
      * @return A duration
      */
     public static Duration durationOf(RoutingContext ctx) {
-        Long age = ctx.get(AGE_KEY);
-        if (age == null) {
-            Long start = ctx.get(START_KEY, 0L);
-            return Duration.ofMillis(currentTimeMillis() - start);
-        }
-        return Duration.ofMillis(age);
+        return Duration.ofNanos(durationNanosOf(ctx));
+    }
+
+    static long durationNanosOf(RoutingContext ctx) {
+        RequestTiming timing = RequestTiming.of(ctx);
+        return timing == null ? 0 : timing.elapsedNanos();
     }
 
     static void fixAge(RoutingContext ctx) {
-        Long age = ctx.get(AGE_KEY);
-        if (age == null) {
-            Long start = ctx.get(START_KEY, 0L);
-            long elapsed = currentTimeMillis() - start;
-            ctx.put(AGE_KEY, elapsed);
+        RequestTiming timing = RequestTiming.of(ctx);
+        if (timing != null) {
+            timing.finish();
         }
     }
 
@@ -110,6 +109,43 @@ public class Probe<Ops extends Enum<Ops>> implements ProbeImplementation<Ops> {
         return new AsyncProbe<>(this);
     }
 
+    /**
+     * Wrap this instance in one which will have near-zero overhead within the
+     * request cycle, queueing events in a buffer of a fixed size.
+     *
+     * @param capacity The maximum number of events to queue, which is rounded
+     * up to a power of two
+     * @param overflow What to do when the queue is full
+     * @return a wrapper for this or this if it is already an instance of
+     * AsyncProbe.
+     */
+    public final Probe<Ops> async(int capacity, ProbeOverflowPolicy overflow) {
+        if (this instanceof AsyncProbe<?> || this instanceof NoOpProbe<?>) {
+            return this;
+        }
+        return new AsyncProbe<>(this, capacity, overflow);
+    }
+
+    /**
+     * If this probe is asynchronous, get statistics about its queue of
+     * pending events.
+     *
+     * @return The queue, if any
+     */
+    public Optional<ProbeQueue> queue() {
+        return Optional.empty();
+    }
+
+    /**
+     * If this probe samples events, get statistics about the events it has
+     * suppressed.
+     *
+     * @return The sampling statistics, if any
+     */
+    public Optional<ProbeSampling> sampling() {
+        return Optional.empty();
+    }
+
     /**
      * Attaches end and body-end handlers to the context which will call this
      * probe on operation completion, failure and/or response body end.
@@ -118,8 +154,7 @@ public class Probe<Ops extends Enum<Ops>> implements ProbeImplementation<Ops> {
      * @param operation The operation in question
      */
     public final void attachTo(RoutingContext ctx, Ops operation) {
-        long start = currentTimeMillis();
-        ctx.put(START_KEY, start);
+        ctx.put(RequestTiming.KEY, new RequestTiming(System.nanoTime()));
         try {
             onStartRequest(operation, ctx);
         } finally {
@@ -133,6 +168,21 @@ public class Probe<Ops extends Enum<Ops>> implements ProbeImplementation<Ops> {
         }
     }
 
+    /**
+     * Record that a request has moved into a new phase, for the time spent in
+     * each phase to be recorded in its RequestTiming; called by generated
+     * handlers. Does nothing if attachTo() was not called on the context.
+     *
+     * @param ctx A routing context
+     * @param phase The phase the request is entering
+     */
+    public final void enterPhase(RoutingContext ctx, RequestPhase phase) {
+        RequestTiming timing = RequestTiming.of(ctx);
+        if (timing != null) {
+            timing.enter(phase);
+        }
+    }
+
     public <T> Future<T> listen(String failureMessage, Future<T> fut) {
         return fut.andThen(result -> {
             if (result.cause() != null) {
@@ -0,0 +1,133 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.ext.web.RoutingContext;
+import java.util.Optional;
+
+/**
+ * A read-only view of a per-request event, carrying the few things probe
+ * implementations typically log rather than the request's RoutingContext, so
+ * that an asynchronous probe need neither allocate an object per event nor
+ * keep requests alive until its background thread catches up.
+ * <p>
+ * Instances are reused: a ProbeEvent is only valid for the duration of the
+ * call it is passed to, and implementations must copy anything they need to
+ * keep.
+ * </p>
+ *
+ * @param <Ops> The operation type
+ */
+public interface ProbeEvent<Ops extends Enum<Ops>> {
+
+    ProbeEventKind kind();
+
+    Ops operation();
+
+    /**
+     * The time the event occurred, in milliseconds since the epoch.
+     *
+     * @return A timestamp
+     */
+    long timestamp();
+
+    /**
+     * The value stored in the request context under
+     * <code>Probe.REQUEST_ID_KEY</code>, if any.
+     *
+     * @return A request id or null
+     */
+    Object requestId();
+
+    /**
+     * The request URI, for START_REQUEST and ENTER_HANDLER events.
+     *
+     * @return A URI or null
+     */
+    String uri();
+
+    /**
+     * The request method, for START_REQUEST and ENTER_HANDLER events.
+     *
+     * @return A method or null
+     */
+    HttpMethod method();
+
+    /**
+     * The handler being entered, for ENTER_HANDLER events.
+     *
+     * @return A handler type or null
+     */
+    Class<? extends Handler<RoutingContext>> handler();
+
+    /**
+     * The response payload, for BEFORE_SEND_RESPONSE events.
+     *
+     * @return The payload, or empty
+     */
+    Optional<?> payload();
+
+    /**
+     * The JSON the response payload was serialized to, for
+     * BEFORE_SEND_RESPONSE events, if the caller supplied it.
+     *
+     * @return The bytes, or empty
+     */
+    Optional<Buffer> serializedPayload();
+
+    /**
+     * The response status, for RESPONSE_COMPLETED events.
+     *
+     * @return A status, or -1
+     */
+    int status();
+
+    /**
+     * The number of bytes of the request body read, for RESPONSE_COMPLETED
+     * events.
+     *
+     * @return A byte count, or -1
+     */
+    long bytesRead();
+
+    /**
+     * The number of bytes of the response body written, for
+     * RESPONSE_COMPLETED events.
+     *
+     * @return A byte count, or -1
+     */
+    long bytesWritten();
+
+    /**
+     * The duration of the request as computed by
+     * <code>Probe.durationOf()</code> when it completed, for
+     * RESPONSE_COMPLETED events.
+     *
+     * @return A duration in nanoseconds, or -1
+     */
+    long durationNanos();
+
+    /**
+     * The request's timing, for RESPONSE_COMPLETED events; it is finished by
+     * then, so it will not change and may be retained.
+     *
+     * @return A timing, or null
+     */
+    RequestTiming timing();
+}
@@ -85,10 +85,44 @@ public interface ProbeImplementation<Ops extends Enum<Ops>> extends Comparable<P
         // do nothing
     }
 
+    /**
+     * Called by generated handlers once the request payload has been parsed,
+     * with the raw bytes it was parsed from, so probes which log payloads can
+     * log those rather than serializing the parsed payload again. By default,
+     * ignores the bytes and calls the four-argument overload.
+     *
+     * @param op The operation
+     * @param event The context
+     * @param handler The handler
+     * @param payload The parsed payload
+     * @param raw The request body
+     */
+    default void onAfterPayloadRead(Ops op, RoutingContext event,
+            Class<? extends Handler<RoutingContext>> handler, Optional<?> payload, Buffer raw) {
+        onAfterPayloadRead(op, event, handler, payload);
+    }
+
     default void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload) {
         // do nothing
     }
 
+    /**
+     * Called by generated handlers before sending a response payload they
+     * have already serialized, with the JSON bytes which will be sent, so
+     * probes which log payloads can embed those rather than serializing the
+     * payload again. By default, ignores the bytes and calls the three-argument
+     * overload.
+     *
+     * @param op The operation
+     * @param event The context
+     * @param payload The response payload
+     * @param serialized The serialized payload
+     */
+    default void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload,
+            Buffer serialized) {
+        onBeforeSendResponse(op, event, payload);
+    }
+
     default void onAfterSendResponse(Ops op, RoutingContext event, int statusCode) {
         // do nothing
     }
@@ -105,6 +139,31 @@ public interface ProbeImplementation<Ops extends Enum<Ops>> extends Comparable<P
         // do nothing
     }
 
+    /**
+     * If true, asynchronous probes will call <code>onRequestEvent()</code>
+     * instead of <code>onStartRequest()</code>, <code>onEnterHandler()</code>,
+     * <code>onBeforeSendResponse()</code> and
+     * <code>onResponseCompleted()</code>, which lets them record those events
+     * without allocating anything or retaining the request's RoutingContext.
+     * Only used if every probe implementation in use returns true.
+     *
+     * @return false by default
+     */
+    default boolean acceptsRequestEvents() {
+        return false;
+    }
+
+    /**
+     * Called by asynchronous probes in place of the per-request methods, if
+     * <code>acceptsRequestEvents()</code> returns true.
+     *
+     * @param event A view of the event, which is only valid for the duration
+     * of this call
+     */
+    default void onRequestEvent(ProbeEvent<? extends Ops> event) {
+        // do nothing
+    }
+
     /**
      * Pass some adhoc information to the probe - typically something that
      * should be logged, without forcing a dependency on a particular logging
@@ -0,0 +1,34 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+/**
+ * What an asynchronous probe does with an event when its queue is full
+ * because the probe implementations are not keeping up.
+ */
+public enum ProbeOverflowPolicy {
+    /**
+     * Discard the event and count it; the count is available from
+     * <code>Probe.queue()</code>.
+     */
+    DROP,
+    /**
+     * Wait for space in the queue. This preserves every event, at the price
+     * of stalling the caller - which may be an event loop - while probe
+     * implementations catch up.
+     */
+    BLOCK
+}
@@ -0,0 +1,44 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+/**
+ * Statistics about the queue of events an asynchronous probe is waiting to
+ * pass to its probe implementations.
+ */
+public interface ProbeQueue {
+
+    /**
+     * The maximum number of events which can be queued.
+     *
+     * @return The capacity
+     */
+    int capacity();
+
+    /**
+     * The approximate number of events currently queued.
+     *
+     * @return A count
+     */
+    int queued();
+
+    /**
+     * The total number of events discarded because the queue was full.
+     *
+     * @return A count
+     */
+    long dropped();
+}
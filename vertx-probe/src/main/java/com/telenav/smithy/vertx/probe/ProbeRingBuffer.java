@@ -0,0 +1,146 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A bounded multi-producer, single-consumer queue of preallocated, reusable
+ * slots. A producer claims a position, writes into the slot for it, and
+ * publishes it; the consumer is passed each published slot in order, and the
+ * slot is freed for reuse when the consumer returns. Each slot carries a
+ * sequence number which tells a producer whether the slot is free for the
+ * position it claimed, and the consumer whether it has been published, so
+ * producers only contend on the CAS of the tail position, and nothing is
+ * allocated per item.
+ *
+ * @param <T> The slot type
+ */
+final class ProbeRingBuffer<T> {
+
+    private final Object[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final int mask;
+    // Only read and written by the (single) consumer
+    private long head;
+    // Written only by the consumer, read by anyone for size()
+    private volatile long consumed;
+
+    ProbeRingBuffer(int capacity, Supplier<? extends T> slotFactory) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2 but got " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) {
+            throw new IllegalArgumentException("Capacity too large: " + capacity);
+        }
+        mask = size - 1;
+        slots = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotFactory.get();
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    int size() {
+        return (int) Math.max(0, Math.min(capacity(), tail.get() - consumed));
+    }
+
+    boolean isEmpty() {
+        return tail.get() == consumed;
+    }
+
+    /**
+     * Claim the next position, if there is space; the caller must write into
+     * <code>slot(position)</code> and then call <code>publish(position)</code>
+     * promptly, since the consumer cannot pass it until then.
+     *
+     * @return A position, or -1 if the buffer is full
+     */
+    long claim() {
+        long pos = tail.get();
+        for (;;) {
+            long diff = sequences.get((int) (pos & mask)) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // The consumer has not yet freed the slot a full lap ago
+                return -1;
+            } else {
+                // Another producer claimed this position first
+                pos = tail.get();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    T slot(long position) {
+        return (T) slots[(int) (position & mask)];
+    }
+
+    void publish(long position) {
+        sequences.set((int) (position & mask), position + 1);
+    }
+
+    /**
+     * Pass up to a maximum number of published slots, in the order they were
+     * claimed, to a consumer, freeing each for reuse once the consumer has
+     * returned. Must only be called by one thread at a time.
+     *
+     * @param into The consumer
+     * @param max The maximum number to pass
+     * @return The number passed
+     */
+    int drain(Consumer<? super T> into, int max) {
+        int result = 0;
+        long pos = head;
+        try {
+            while (result < max) {
+                int ix = (int) (pos & mask);
+                if (sequences.get(ix) != pos + 1) {
+                    // Empty, or the producer which claimed it has not yet
+                    // published it
+                    break;
+                }
+                try {
+                    into.accept(slot(pos));
+                } finally {
+                    // Frees the slot for the producer one lap later, even if
+                    // the consumer throws
+                    sequences.lazySet(ix, pos + mask + 1);
+                    pos++;
+                    result++;
+                }
+            }
+        } finally {
+            head = pos;
+            consumed = pos;
+        }
+        return result;
+    }
+}
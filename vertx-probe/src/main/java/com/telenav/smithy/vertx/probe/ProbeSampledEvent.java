@@ -0,0 +1,52 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+/**
+ * The kinds of probe call which a sampling probe can thin out; failures,
+ * completed responses, metrics, lifecycle events and non-operation failures
+ * are never sampled, since consumers of those count them.
+ */
+public enum ProbeSampledEvent {
+    START_REQUEST,
+    ENTER_HANDLER,
+    BEFORE_PAYLOAD_READ,
+    AFTER_PAYLOAD_READ,
+    BEFORE_SEND_RESPONSE,
+    AFTER_SEND_RESPONSE,
+    EVENT;
+
+    /**
+     * The name used for this event type in settings keys.
+     *
+     * @return A lower-case, hyphenated name
+     */
+    public String settingsName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * Whether the overall sample rate and limit apply to this event type, or
+     * it is only sampled if settings for the type itself are present -
+     * application-defined events may be counted by their consumers, so they
+     * are not thinned out unless asked for.
+     *
+     * @return true for the trace and payload events
+     */
+    public boolean isSampledByDefault() {
+        return this != EVENT;
+    }
+}
@@ -0,0 +1,38 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+/**
+ * Statistics about the events a sampling probe has suppressed rather than
+ * passing to its probe implementations.
+ */
+public interface ProbeSampling {
+
+    /**
+     * The number of events of one type which have been suppressed.
+     *
+     * @param type An event type
+     * @return A count
+     */
+    long suppressed(ProbeSampledEvent type);
+
+    /**
+     * The total number of events which have been suppressed.
+     *
+     * @return A count
+     */
+    long suppressed();
+}
@@ -0,0 +1,51 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+/**
+ * Phases of handling a request, whose durations are accumulated in the
+ * RequestTiming attached to a request by <code>Probe.attachTo()</code>.
+ * Generated handlers move a request from one phase to the next by calling
+ * <code>Probe.enterPhase()</code>; a request starts in QUEUE_WAIT, and time is
+ * charged to whichever phase it is in until the response has been completely
+ * written.
+ */
+public enum RequestPhase {
+    /**
+     * From the request first being seen until the operation's handler is
+     * entered - waiting for the event loop, for the request body to arrive,
+     * and for any authentication or other handlers which precede it.
+     */
+    QUEUE_WAIT,
+    /**
+     * Deserializing and validating the request payload.
+     */
+    PAYLOAD_READ,
+    /**
+     * Running the operation's implementation (the SPI), until it produces a
+     * response.
+     */
+    EXECUTION,
+    /**
+     * Serializing the response.
+     */
+    SERIALIZATION,
+    /**
+     * Writing the response, until the last byte has been handed to the
+     * connection.
+     */
+    WRITE;
+}
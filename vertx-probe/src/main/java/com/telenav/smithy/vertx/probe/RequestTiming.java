@@ -0,0 +1,142 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import io.vertx.ext.web.RoutingContext;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timing of one request, using <code>System.nanoTime()</code>, which is
+ * attached to the RoutingContext by <code>Probe.attachTo()</code> in place of
+ * boxed start and age values, and which accumulates the time spent in each
+ * RequestPhase. Once the response has ended, the timing is frozen, so probes
+ * which run asynchronously see the same values however late they run.
+ * <p>
+ * Instances are written only by the thread handling the request, and are
+ * not thread-safe; an asynchronous probe which reads one from another thread
+ * relies on the happens-before edge of handing the event to that thread.
+ * </p>
+ */
+public final class RequestTiming {
+
+    static final String KEY = "t" + ThreadLocalRandom.current().nextLong();
+    private static final RequestPhase[] PHASES = RequestPhase.values();
+    private final long start;
+    private final long[] phaseNanos = new long[PHASES.length];
+    private RequestPhase phase = RequestPhase.QUEUE_WAIT;
+    private long phaseStart;
+    private long end = -1;
+
+    RequestTiming(long start) {
+        this.start = start;
+        phaseStart = start;
+    }
+
+    /**
+     * Get the timing attached to a request by <code>Probe.attachTo()</code>.
+     *
+     * @param ctx A routing context
+     * @return The timing, or null if Probe.attachTo() was never called on
+     * the context
+     */
+    public static RequestTiming of(RoutingContext ctx) {
+        return ctx.get(KEY);
+    }
+
+    void enter(RequestPhase next) {
+        if (end < 0 && next != phase) {
+            long now = System.nanoTime();
+            phaseNanos[phase.ordinal()] += now - phaseStart;
+            phase = next;
+            phaseStart = now;
+        }
+    }
+
+    void finish() {
+        if (end < 0) {
+            long now = System.nanoTime();
+            phaseNanos[phase.ordinal()] += now - phaseStart;
+            end = now;
+        }
+    }
+
+    /**
+     * Whether the response has ended, freezing this timing.
+     *
+     * @return true if finished
+     */
+    public boolean isFinished() {
+        return end >= 0;
+    }
+
+    /**
+     * The phase the request is in, or was in when it ended.
+     *
+     * @return A phase
+     */
+    public RequestPhase phase() {
+        return phase;
+    }
+
+    /**
+     * Nanoseconds from the request first being seen until the response
+     * ended, or until now if it has not.
+     *
+     * @return Elapsed nanoseconds
+     */
+    public long elapsedNanos() {
+        return (end < 0 ? System.nanoTime() : end) - start;
+    }
+
+    /**
+     * The elapsed time as a Duration.
+     *
+     * @return A duration
+     */
+    public Duration elapsed() {
+        return Duration.ofNanos(elapsedNanos());
+    }
+
+    /**
+     * Nanoseconds spent in one phase, including the time so far if the
+     * request is still in it.
+     *
+     * @param phase A phase
+     * @return Nanoseconds, zero if the request never entered the phase
+     */
+    public long phaseNanos(RequestPhase phase) {
+        long result = phaseNanos[phase.ordinal()];
+        if (end < 0 && phase == this.phase) {
+            result += System.nanoTime() - phaseStart;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("RequestTiming(")
+                .append(elapsedNanos() / 1000).append("us");
+        for (RequestPhase p : PHASES) {
+            long ns = phaseNanos(p);
+            if (ns > 0) {
+                sb.append(' ').append(p.name().toLowerCase()).append('=')
+                        .append(ns / 1000).append("us");
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
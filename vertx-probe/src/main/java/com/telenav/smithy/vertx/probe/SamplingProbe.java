@@ -0,0 +1,304 @@
+/* 
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import com.mastfrog.settings.Settings;
+import static com.telenav.smithy.vertx.probe.VertxProbeModule.SETTINGS_KEY_SAMPLE_MAX_PER_SECOND;
+import static com.telenav.smithy.vertx.probe.VertxProbeModule.SETTINGS_KEY_SAMPLE_RATE;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
+import io.vertx.core.Verticle;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.web.RoutingContext;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps a probe - typically an AsyncProbe, so suppressed events are never
+ * queued - and passes it only a sample of the events of each type for each
+ * operation, as configured in settings: a fraction of events chosen at
+ * random, and/or at most some number per second, enforced by a lock-free
+ * token bucket. Only the trace and payload events are sampled: failures, 5xx
+ * responses, completed responses and metrics - which operation metrics and
+ * status counts are derived from - and lifecycle and non-operation events are
+ * always passed through. A count of suppressed events of each type is kept,
+ * and passed to the delegate as an event on shutdown.
+ */
+final class SamplingProbe<Ops extends Enum<Ops>> extends Probe<Ops> implements ProbeSampling {
+
+    private static final ProbeSampledEvent[] TYPES = ProbeSampledEvent.values();
+    private final Probe<Ops> delegate;
+    // Indexed by type ordinal * (ops + 1) + op ordinal, with the last slot
+    // for each type used for a null operation; null entries pass everything
+    private final Sampler[] samplers;
+    private final int stride;
+    private final LongAdder[] suppressed = new LongAdder[TYPES.length];
+
+    SamplingProbe(Probe<Ops> delegate, Class<Ops> opType, Settings settings) {
+        this.delegate = delegate;
+        Ops[] ops = opType.getEnumConstants();
+        stride = ops.length + 1;
+        samplers = new Sampler[TYPES.length * stride];
+        for (ProbeSampledEvent type : TYPES) {
+            suppressed[type.ordinal()] = new LongAdder();
+            String rateKey = SETTINGS_KEY_SAMPLE_RATE + '.' + type.settingsName();
+            String maxKey = SETTINGS_KEY_SAMPLE_MAX_PER_SECOND + '.' + type.settingsName();
+            double defaultRate = type.isSampledByDefault()
+                    ? settings.getDouble(SETTINGS_KEY_SAMPLE_RATE, 1) : 1;
+            long defaultMax = type.isSampledByDefault()
+                    ? settings.getLong(SETTINGS_KEY_SAMPLE_MAX_PER_SECOND, 0) : 0;
+            double rate = settings.getDouble(rateKey, defaultRate);
+            long max = settings.getLong(maxKey, defaultMax);
+            int base = type.ordinal() * stride;
+            samplers[base + ops.length] = Sampler.create(rate, max);
+            for (Ops op : ops) {
+                String name = op.name().toLowerCase().replace('_', '-');
+                samplers[base + op.ordinal()] = Sampler.create(
+                        settings.getDouble(rateKey + '.' + name, rate),
+                        settings.getLong(maxKey + '.' + name, max));
+            }
+        }
+    }
+
+    private boolean admit(ProbeSampledEvent type, Ops op) {
+        Sampler sampler = samplers[type.ordinal() * stride
+                + (op == null ? stride - 1 : op.ordinal())];
+        if (sampler == null || sampler.admit()) {
+            return true;
+        }
+        suppressed[type.ordinal()].increment();
+        return false;
+    }
+
+    private static boolean failed(RoutingContext event) {
+        return event.failed() || event.response().getStatusCode() >= 500;
+    }
+
+    @Override
+    public long suppressed(ProbeSampledEvent type) {
+        return suppressed[type.ordinal()].sum();
+    }
+
+    @Override
+    public long suppressed() {
+        long result = 0;
+        for (LongAdder a : suppressed) {
+            result += a.sum();
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<ProbeSampling> sampling() {
+        return Optional.of(this);
+    }
+
+    @Override
+    public Optional<ProbeQueue> queue() {
+        return delegate.queue();
+    }
+
+    @Override
+    public boolean acceptsRequestEvents() {
+        return delegate.acceptsRequestEvents();
+    }
+
+    @Override
+    public void onRequestEvent(ProbeEvent<? extends Ops> event) {
+        delegate.onRequestEvent(event);
+    }
+
+    @Override
+    public void onStartup() {
+        delegate.onStartup();
+    }
+
+    @Override
+    public void onShutdown() {
+        if (suppressed() > 0) {
+            Map<ProbeSampledEvent, Long> counts = new EnumMap<>(ProbeSampledEvent.class);
+            for (ProbeSampledEvent type : TYPES) {
+                counts.put(type, suppressed(type));
+            }
+            delegate.onEvent("probe-events-suppressed", counts);
+        }
+        delegate.onShutdown();
+    }
+
+    @Override
+    public void onLaunched(Verticle verticle, String msg) {
+        delegate.onLaunched(verticle, msg);
+    }
+
+    @Override
+    public void onLaunchFailure(Verticle verticle, DeploymentOptions opts, Throwable thrown) {
+        delegate.onLaunchFailure(verticle, opts, thrown);
+    }
+
+    @Override
+    public void onStartRequest(Ops op, RoutingContext event) {
+        if (admit(ProbeSampledEvent.START_REQUEST, op)) {
+            delegate.onStartRequest(op, event);
+        }
+    }
+
+    @Override
+    public void onEnterHandler(Ops op, RoutingContext event,
+            Class<? extends Handler<RoutingContext>> handler) {
+        if (admit(ProbeSampledEvent.ENTER_HANDLER, op)) {
+            delegate.onEnterHandler(op, event, handler);
+        }
+    }
+
+    @Override
+    public void onBeforePayloadRead(Ops op, RoutingContext event,
+            Class<? extends Handler<RoutingContext>> handler, Buffer buffer) {
+        if (admit(ProbeSampledEvent.BEFORE_PAYLOAD_READ, op)) {
+            delegate.onBeforePayloadRead(op, event, handler, buffer);
+        }
+    }
+
+    @Override
+    public void onAfterPayloadRead(Ops op, RoutingContext event,
+            Class<? extends Handler<RoutingContext>> handler, Optional<?> payload) {
+        if (admit(ProbeSampledEvent.AFTER_PAYLOAD_READ, op)) {
+            delegate.onAfterPayloadRead(op, event, handler, payload);
+        }
+    }
+
+    @Override
+    public void onAfterPayloadRead(Ops op, RoutingContext event,
+            Class<? extends Handler<RoutingContext>> handler, Optional<?> payload, Buffer raw) {
+        if (admit(ProbeSampledEvent.AFTER_PAYLOAD_READ, op)) {
+            delegate.onAfterPayloadRead(op, event, handler, payload, raw);
+        }
+    }
+
+    @Override
+    public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload) {
+        if (failed(event) || admit(ProbeSampledEvent.BEFORE_SEND_RESPONSE, op)) {
+            delegate.onBeforeSendResponse(op, event, payload);
+        }
+    }
+
+    @Override
+    public void onBeforeSendResponse(Ops op, RoutingContext event, Optional<?> payload,
+            Buffer serialized) {
+        if (failed(event) || admit(ProbeSampledEvent.BEFORE_SEND_RESPONSE, op)) {
+            delegate.onBeforeSendResponse(op, event, payload, serialized);
+        }
+    }
+
+    @Override
+    public void onAfterSendResponse(Ops op, RoutingContext event, int statusCode) {
+        if (statusCode >= 500 || admit(ProbeSampledEvent.AFTER_SEND_RESPONSE, op)) {
+            delegate.onAfterSendResponse(op, event, statusCode);
+        }
+    }
+
+    @Override
+    public void onResponseCompleted(Ops op, RoutingContext event, int status) {
+        delegate.onResponseCompleted(op, event, status);
+    }
+
+    @Override
+    public void onFailure(Ops op, RoutingContext event, Throwable thrown) {
+        delegate.onFailure(op, event, thrown);
+    }
+
+    @Override
+    public void onMetric(Ops op, RoutingContext event, String name, Number value) {
+        delegate.onMetric(op, event, name, value);
+    }
+
+    @Override
+    public void onEvent(Ops op, String event, Object payload) {
+        if (admit(ProbeSampledEvent.EVENT, op)) {
+            delegate.onEvent(op, event, payload);
+        }
+    }
+
+    @Override
+    public void onNonOperationFailure(String message, Throwable thrown) {
+        delegate.onNonOperationFailure(message, thrown);
+    }
+
+    @Override
+    public boolean shutdown() throws InterruptedException {
+        return delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "Sampling(" + delegate + ")";
+    }
+
+    /**
+     * Decides whether one kind of event for one operation is passed on - first
+     * at random, then against a token bucket holding up to a second's worth of
+     * events, implemented as a single atomic "theoretical arrival time" which
+     * advances by the interval between permitted events each time one is
+     * admitted (the generic cell rate algorithm).
+     */
+    static final class Sampler {
+
+        private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private final double rate;
+        private final long intervalNanos;
+        private final AtomicLong arrival;
+
+        private Sampler(double rate, long maxPerSecond) {
+            this.rate = rate;
+            intervalNanos = maxPerSecond <= 0 ? 0 : Math.max(1, BURST_NANOS / maxPerSecond);
+            arrival = intervalNanos == 0 ? null : new AtomicLong(System.nanoTime() - BURST_NANOS);
+        }
+
+        static Sampler create(double rate, long maxPerSecond) {
+            if (rate < 0 || rate > 1 || Double.isNaN(rate)) {
+                throw new IllegalArgumentException("Sample rate must be between 0 and 1 but got " + rate);
+            }
+            if (rate == 1 && maxPerSecond <= 0) {
+                return null;
+            }
+            return new Sampler(rate, maxPerSecond);
+        }
+
+        boolean admit() {
+            if (rate < 1 && (rate == 0 || ThreadLocalRandom.current().nextDouble() >= rate)) {
+                return false;
+            }
+            if (arrival == null) {
+                return true;
+            }
+            long now = System.nanoTime();
+            for (;;) {
+                long current = arrival.get();
+                long next = Math.max(current, now - BURST_NANOS) + intervalNanos;
+                if (next - now > 0) {
+                    return false;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
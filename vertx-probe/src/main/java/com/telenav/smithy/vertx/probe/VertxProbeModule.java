@@ -23,6 +23,11 @@ import com.google.inject.Provider;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
 import com.google.inject.util.Providers;
+import com.mastfrog.giulius.annotations.Setting;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.DOUBLE;
+import static com.mastfrog.giulius.annotations.Setting.ValueType.INTEGER;
+import com.mastfrog.settings.Settings;
+import com.mastfrog.shutdown.hooks.ShutdownHooks;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
 import java.lang.reflect.ParameterizedType;
@@ -39,9 +44,27 @@ import java.util.function.Function;
  */
 public final class VertxProbeModule<O extends Enum<O>> extends AbstractModule {
 
+    @Setting(value = "If sampling is enabled with VertxProbeModule.sampled(), the fraction of "
+            + "events between 0 and 1 to pass to probe implementations; may be overridden for "
+            + "one type of event by appending '.' and its name (e.g. after-payload-read), and "
+            + "for one operation by further appending '.' and the operation's lower-case, "
+            + "hyphenated name.  Applies to trace and payload events; application-defined "
+            + "events are only sampled if configured for the 'event' type.  Failures, 5xx and "
+            + "completed responses and metrics are always passed.", type = DOUBLE,
+            defaultValue = "1")
+    public static final String SETTINGS_KEY_SAMPLE_RATE = "probe.sample.rate";
+    @Setting(value = "If sampling is enabled with VertxProbeModule.sampled(), the maximum number "
+            + "of events per second of each type for each operation to pass to probe "
+            + "implementations, after " + SETTINGS_KEY_SAMPLE_RATE + " is applied; zero for no "
+            + "limit.  May be overridden per event type and operation in the same way as "
+            + SETTINGS_KEY_SAMPLE_RATE + ".", type = INTEGER, defaultValue = "0")
+    public static final String SETTINGS_KEY_SAMPLE_MAX_PER_SECOND = "probe.sample.max.per.second";
     private final List<Function<? super Binder, Provider<? extends ProbeImplementation<? super O>>>> all = new ArrayList<>();
     private final Class<O> type;
     private boolean async;
+    private boolean sampled;
+    private int asyncCapacity = AsyncProbe.DEFAULT_CAPACITY;
+    private ProbeOverflowPolicy overflow = ProbeOverflowPolicy.DROP;
     private volatile boolean initialized;
 
     public VertxProbeModule(Class<O> type) {
@@ -61,6 +84,44 @@ public final class VertxProbeModule<O extends Enum<O>> extends AbstractModule {
         return this;
     }
 
+    /**
+     * Make the probe implementation asynchronous, with a queue of pending
+     * events of a specific size and a policy for what to do when it is full.
+     *
+     * @param capacity The maximum number of queued events
+     * @param overflow What to do with events when the queue is full
+     * @return this
+     */
+    public VertxProbeModule<O> async(int capacity, ProbeOverflowPolicy overflow) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2 but got " + capacity);
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("Null overflow policy");
+        }
+        async = true;
+        asyncCapacity = capacity;
+        this.overflow = overflow;
+        return this;
+    }
+
+    /**
+     * Pass probe implementations only a sample of per-request events, as
+     * configured by the settings <code>probe.sample.rate</code> and
+     * <code>probe.sample.max.per.second</code> - useful when probes log
+     * request and response payloads at high request rates. Sampling is applied
+     * on the calling thread, before events are queued if the probe is also
+     * asynchronous. Response completions, metrics, failures and 5xx responses
+     * are never sampled, so probe implementations which derive metrics or
+     * error counts from them see every one.
+     *
+     * @return this
+     */
+    public VertxProbeModule<O> sampled() {
+        sampled = true;
+        return this;
+    }
+
     /**
      * Provide a ProbeImplementation to be called on calls to methods on the
      * bound Probe.
@@ -114,7 +175,9 @@ public final class VertxProbeModule<O extends Enum<O>> extends AbstractModule {
             bind(new TypeLiteral<Probe<?>>() {
             }).toInstance(empty);
         } else {
-            ProbeProvider<O> probeProvider = new ProbeProvider<>(probes, async);
+            ProbeProvider<O> probeProvider = new ProbeProvider<>(probes, async, asyncCapacity,
+                    overflow, type, sampled ? binder().getProvider(Settings.class) : null,
+                    async ? binder().getProvider(ShutdownHooks.class) : null);
             bind(key).toProvider(probeProvider)
                     .asEagerSingleton();
             bind(new TypeLiteral<Probe<?>>() {
@@ -149,13 +212,24 @@ public final class VertxProbeModule<O extends Enum<O>> extends AbstractModule {
 
         private final List<Provider<? extends ProbeImplementation<? super O>>> all;
         private final boolean async;
+        private final int capacity;
+        private final ProbeOverflowPolicy overflow;
+        private final Class<O> type;
+        private final Provider<Settings> sampling;
+        private final Provider<ShutdownHooks> hooks;
         private Probe<O> probe;
         private volatile boolean shutdown;
 
         ProbeProvider(List<Provider<? extends ProbeImplementation<? super O>>> all,
-                boolean async) {
+                boolean async, int capacity, ProbeOverflowPolicy overflow,
+                Class<O> type, Provider<Settings> sampling, Provider<ShutdownHooks> hooks) {
             this.all = all;
             this.async = async;
+            this.capacity = capacity;
+            this.overflow = overflow;
+            this.type = type;
+            this.sampling = sampling;
+            this.hooks = hooks;
         }
 
         private void shutdown() {
@@ -186,9 +260,13 @@ public final class VertxProbeModule<O extends Enum<O>> extends AbstractModule {
             }
             Probe<O> result = Probe.create(impls);
             if (async && !shutdown) {
-                result = result.async();
-                Thread t = new Thread(this::shutdown, "async-probe-shutdown");
-                Runtime.getRuntime().addShutdownHook(t);
+                result = result.async(capacity, overflow);
+                // Drained in order with other hooks - after those which log
+                // on shutdown, before an asynchronous log writer closes
+                hooks.get().add(this::shutdown);
+            }
+            if (sampling != null && !(result instanceof NoOpProbe<?>)) {
+                result = new SamplingProbe<>(result, type, sampling.get());
             }
             probe = result;
             result.onStartup();
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncProbeTest {
+
+    @Test
+    public void testDropPolicyCountsWhatDoesNotFit() throws Exception {
+        Recorder rec = new Recorder();
+        AsyncProbe<Ops> probe = new AsyncProbe<>(Probe.<Ops>create(List.of(rec)), 4,
+                ProbeOverflowPolicy.DROP);
+        probe.onEvent(Ops.ONE, "e", 0);
+        assertTrue(rec.entered.await(10, SECONDS));
+        // The emitter is stuck in the first event, whose slot is not freed
+        // until it returns, so three more fit
+        for (int i = 1; i <= 10; i++) {
+            probe.onEvent(Ops.ONE, "e", i);
+        }
+        assertEquals(4, probe.queued());
+        assertEquals(7, probe.dropped());
+        rec.release.countDown();
+        assertTrue(probe.shutdown());
+        assertEquals(List.of(0, 1, 2, 3), rec.received);
+        assertEquals(0, probe.queued());
+    }
+
+    @Test
+    public void testBlockPolicyWaitsAndLosesNothing() throws Exception {
+        Recorder rec = new Recorder();
+        AsyncProbe<Ops> probe = new AsyncProbe<>(Probe.<Ops>create(List.of(rec)), 4,
+                ProbeOverflowPolicy.BLOCK);
+        probe.onEvent(Ops.ONE, "e", 0);
+        assertTrue(rec.entered.await(10, SECONDS));
+        CountDownLatch done = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            for (int i = 1; i < 20; i++) {
+                probe.onEvent(Ops.ONE, "e", i);
+            }
+            done.countDown();
+        }, "producer");
+        producer.start();
+        assertFalse(done.await(200, MILLISECONDS),
+                "Producer should be blocked on the full queue");
+        rec.release.countDown();
+        assertTrue(done.await(10, SECONDS));
+        assertTrue(probe.shutdown());
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, rec.received);
+        assertEquals(0, probe.dropped());
+    }
+
+    @Test
+    public void testEventsPushedAfterShutdownAreStillDelivered() throws Exception {
+        Recorder rec = new Recorder();
+        rec.release.countDown();
+        AsyncProbe<Ops> probe = new AsyncProbe<>(Probe.<Ops>create(List.of(rec)), 4,
+                ProbeOverflowPolicy.DROP);
+        probe.onEvent(Ops.ONE, "e", 0);
+        assertTrue(probe.shutdown());
+        for (int i = 1; i < 10; i++) {
+            probe.onEvent(Ops.TWO, "e", i);
+        }
+        assertEquals(10, rec.received.size());
+        assertEquals(0, probe.dropped());
+    }
+
+    enum Ops {
+        ONE, TWO
+    }
+
+    static final class Recorder implements ProbeImplementation<Ops> {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Object> received = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onEvent(Ops op, String event, Object payload) {
+            entered.countDown();
+            try {
+                release.await(30, SECONDS);
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+            received.add(payload);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProbeRingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(2, new ProbeRingBuffer<>(2, Holder::new).capacity());
+        assertEquals(8, new ProbeRingBuffer<>(5, Holder::new).capacity());
+        assertEquals(8, new ProbeRingBuffer<>(8, Holder::new).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new ProbeRingBuffer<>(1, Holder::new));
+    }
+
+    @Test
+    public void testWrapsAroundAndRejectsClaimsWhenFull() {
+        ProbeRingBuffer<Holder> ring = new ProbeRingBuffer<>(4, Holder::new);
+        List<Long> drained = new ArrayList<>();
+        long next = 0;
+        for (int lap = 0; lap < 50; lap++) {
+            assertTrue(ring.isEmpty());
+            for (int i = 0; i < 4; i++) {
+                long pos = ring.claim();
+                assertEquals(next + i, pos);
+                ring.slot(pos).value = pos;
+                ring.publish(pos);
+            }
+            assertEquals(4, ring.size());
+            assertEquals(-1, ring.claim(), "Full buffer should refuse a claim");
+            // Drain part of it, so the next lap starts mid-array
+            assertEquals(3, ring.drain(h -> drained.add(h.value), 3));
+            assertEquals(1, ring.size());
+            long pos = ring.claim();
+            assertEquals(next + 4, pos);
+            ring.slot(pos).value = pos;
+            ring.publish(pos);
+            assertEquals(2, ring.drain(h -> drained.add(h.value), 10));
+            next += 5;
+        }
+        assertEquals(250, drained.size());
+        for (int i = 0; i < drained.size(); i++) {
+            assertEquals(i, drained.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testDrainStopsAtAnUnpublishedSlot() {
+        ProbeRingBuffer<Holder> ring = new ProbeRingBuffer<>(4, Holder::new);
+        long first = ring.claim();
+        long second = ring.claim();
+        ring.slot(second).value = 2;
+        ring.publish(second);
+        List<Long> drained = new ArrayList<>();
+        assertEquals(0, ring.drain(h -> drained.add(h.value), 10));
+        ring.slot(first).value = 1;
+        ring.publish(first);
+        assertEquals(2, ring.drain(h -> drained.add(h.value), 10));
+        assertEquals(List.of(1L, 2L), drained);
+    }
+
+    @Test
+    public void testSlotIsFreedIfTheConsumerThrows() {
+        ProbeRingBuffer<Holder> ring = new ProbeRingBuffer<>(2, Holder::new);
+        ring.publish(ring.claim());
+        ring.publish(ring.claim());
+        assertEquals(-1, ring.claim());
+        assertThrows(IllegalStateException.class, () -> ring.drain(h -> {
+            throw new IllegalStateException();
+        }, 10));
+        assertEquals(1, ring.size());
+        assertTrue(ring.claim() >= 0);
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothingAndKeepTheirOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        ProbeRingBuffer<Holder> ring = new ProbeRingBuffer<>(256, Holder::new);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    long pos;
+                    while ((pos = ring.claim()) < 0) {
+                        Thread.yield();
+                    }
+                    ring.slot(pos).value = (producer << 32) | i;
+                    ring.publish(pos);
+                }
+            }, "producer-" + p);
+            t.start();
+            threads.add(t);
+        }
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        AtomicReference<String> failure = new AtomicReference<>();
+        long[] count = new long[1];
+        start.countDown();
+        long total = (long) producers * perProducer;
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (count[0] < total && System.currentTimeMillis() < deadline) {
+            int drained = ring.drain(h -> {
+                int producer = (int) (h.value >>> 32);
+                long seq = h.value & 0xFFFF_FFFFL;
+                if (seq != lastSeen[producer] + 1 && failure.get() == null) {
+                    failure.set("Producer " + producer + " item " + seq + " after " + lastSeen[producer]);
+                }
+                lastSeen[producer] = seq;
+                count[0]++;
+            }, 64);
+            if (drained == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(failure.get(), failure.get());
+        assertEquals(total, count[0]);
+        assertTrue(ring.isEmpty());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(perProducer - 1, lastSeen[p]);
+        }
+    }
+
+    static final class Holder {
+
+        long value;
+    }
+}
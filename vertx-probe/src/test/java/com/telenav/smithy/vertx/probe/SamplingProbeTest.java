@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Telenav.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.telenav.smithy.vertx.probe;
+
+import com.mastfrog.settings.Settings;
+import static com.telenav.smithy.vertx.probe.VertxProbeModule.SETTINGS_KEY_SAMPLE_RATE;
+import io.vertx.core.Handler;
+import io.vertx.ext.web.RoutingContext;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SamplingProbeTest {
+
+    @Test
+    public void testCompletionsAndMetricsAreNeverSampled() throws Exception {
+        Counter counter = new Counter();
+        SamplingProbe<Ops> probe = new SamplingProbe<>(Probe.<Ops>create(List.of(counter)), Ops.class,
+                Settings.builder().add(SETTINGS_KEY_SAMPLE_RATE, "0").build());
+        for (int i = 0; i < 100; i++) {
+            probe.onStartRequest(Ops.ONE, null);
+            probe.onEnterHandler(Ops.ONE, null, null);
+            probe.onMetric(Ops.ONE, null, "m", i);
+            probe.onResponseCompleted(Ops.ONE, null, 200);
+            probe.onEvent(Ops.ONE, "e", i);
+        }
+        assertEquals(0, counter.started.get());
+        assertEquals(0, counter.entered.get());
+        assertEquals(100, counter.metrics.get());
+        assertEquals(100, counter.completed.get());
+        // Application events are only sampled if configured for their type
+        assertEquals(100, counter.events.get());
+        assertEquals(100, probe.suppressed(ProbeSampledEvent.START_REQUEST));
+        assertEquals(100, probe.suppressed(ProbeSampledEvent.ENTER_HANDLER));
+        assertEquals(0, probe.suppressed(ProbeSampledEvent.EVENT));
+        assertEquals(200, probe.suppressed());
+        assertEquals(200, probe.sampling().get().suppressed());
+    }
+
+    @Test
+    public void testPerTypeAndPerOperationSettings() throws Exception {
+        Counter counter = new Counter();
+        String eventKey = SETTINGS_KEY_SAMPLE_RATE + '.' + ProbeSampledEvent.EVENT.settingsName();
+        SamplingProbe<Ops> probe = new SamplingProbe<>(Probe.<Ops>create(List.of(counter)), Ops.class,
+                Settings.builder()
+                        .add(eventKey, "0")
+                        .add(eventKey + ".two", "1")
+                        .build());
+        for (int i = 0; i < 100; i++) {
+            probe.onStartRequest(Ops.ONE, null);
+            probe.onEvent(Ops.ONE, "e", i);
+            probe.onEvent(Ops.TWO, "e", i);
+        }
+        assertEquals(100, counter.started.get());
+        assertEquals(100, counter.events.get());
+        assertEquals(100, probe.suppressed(ProbeSampledEvent.EVENT));
+        assertEquals(100, probe.suppressed());
+    }
+
+    enum Ops {
+        ONE, TWO
+    }
+
+    static final class Counter implements ProbeImplementation<Ops> {
+
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger entered = new AtomicInteger();
+        final AtomicInteger metrics = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger events = new AtomicInteger();
+
+        @Override
+        public void onStartRequest(Ops op, RoutingContext event) {
+            started.incrementAndGet();
+        }
+
+        @Override
+        public void onEnterHandler(Ops op, RoutingContext event,
+                Class<? extends Handler<RoutingContext>> handler) {
+            entered.incrementAndGet();
+        }
+
+        @Override
+        public void onMetric(Ops op, RoutingContext event, String name, Number value) {
+            metrics.incrementAndGet();
+        }
+
+        @Override
+        public void onResponseCompleted(Ops op, RoutingContext event, int status) {
+            completed.incrementAndGet();
+        }
+
+        @Override
+        public void onEvent(Ops op, String event, Object payload) {
+            events.incrementAndGet();
+        }
+    }
+}